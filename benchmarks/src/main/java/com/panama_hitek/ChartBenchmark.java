@@ -0,0 +1,57 @@
+package com.panama_hitek;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Live chart data path: WeightChartPanel.addDataPoint stages a point in its
+ * RingXYDataset and the frame timer flushes it, evicting the oldest points
+ * once the chart is full. One invocation is one frame's worth of samples.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class ChartBenchmark {
+
+    private static final int POINTS_PER_FRAME = 16;
+
+    @Param({"100", "10000"})
+    public int capacity;
+
+    private RingXYDataset dataset;
+    private long timestamp;
+
+    @Setup
+    public void setup() {
+        dataset = new RingXYDataset("Weight", capacity);
+        timestamp = 1749098287000L;
+        // Start full so every frame evicts
+        for (int i = 0; i < capacity; i++) {
+            dataset.append(timestamp += 100, 17.23);
+        }
+        dataset.flush();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS_PER_FRAME)
+    public boolean addDataPointAndFlush() {
+        for (int i = 0; i < POINTS_PER_FRAME; i++) {
+            dataset.append(timestamp += 100, 17.23 + i);
+        }
+        return dataset.flush();
+    }
+}
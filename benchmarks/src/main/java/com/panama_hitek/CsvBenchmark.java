@@ -0,0 +1,53 @@
+package com.panama_hitek;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding of one CSV export row, without the file I/O
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CsvBenchmark {
+
+    private CsvExporter exporter;
+    private ByteBuffer buffer;
+    private long timestamp;
+    private long receiveNanos;
+
+    @Setup
+    public void setup() {
+        exporter = new CsvExporter();
+        buffer = ByteBuffer.allocateDirect(1 << 20);
+        timestamp = 1749098287000L;
+        receiveNanos = System.nanoTime();
+    }
+
+    @Benchmark
+    public void encodeRow() {
+        if (buffer.remaining() < 96) {
+            buffer.clear();
+        }
+        // One sample every 100 ms, so the minute prefix is reused like in a real export
+        exporter.encodeRow(buffer, timestamp += 100, 1723, receiveNanos += 100_000_000L);
+    }
+
+    @Benchmark
+    public String legacyRow() {
+        return new WeightRecord(timestamp += 100, 1723).toString();
+    }
+}
@@ -0,0 +1,68 @@
+package com.panama_hitek;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * DataLogger.addRecord with a number of listeners attached, as when the live
+ * chart and other windows are open. Listener work happens on their own threads;
+ * what is measured is the cost left on the ingest thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DataLoggerBenchmark {
+
+    // Cleared at this size so the columns do not grow for the whole run
+    private static final int MAX_RECORDS = 1 << 20;
+
+    @Param({"0", "1", "4"})
+    public int listeners;
+
+    private DataLogger dataLogger;
+    private final List<DataDispatcher.Subscription> subscriptions = new ArrayList<>();
+    private long timestamp;
+    private int count;
+
+    @Setup
+    public void setup() {
+        dataLogger = new DataLogger();
+        for (int i = 0; i < listeners; i++) {
+            subscriptions.add(dataLogger.addDataListener((time, weight) -> {
+            }));
+        }
+        timestamp = 1749098287000L;
+    }
+
+    @TearDown
+    public void tearDown() {
+        subscriptions.forEach(DataDispatcher.Subscription::close);
+        subscriptions.clear();
+    }
+
+    @Benchmark
+    public void addRecord() {
+        if (++count == MAX_RECORDS) {
+            dataLogger.clearRecords();
+            count = 0;
+        }
+        timestamp += 100;
+        dataLogger.addRecord(timestamp, 1723 + (count & 0xFF));
+    }
+}
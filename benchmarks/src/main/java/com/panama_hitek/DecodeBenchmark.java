@@ -0,0 +1,108 @@
+package com.panama_hitek;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Turning one line or frame of the acquisition process output into a sample:
+ * org.json (what the application used to do) against the byte-level decoders
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DecodeBenchmark {
+
+    private static final String LINE =
+            "{\"timestamp\": 1749098287, \"weight\": 17.23, \"raw\": \"ca0c0100006bbf0000000000000000007c\"}";
+    private static final String TAGGED_LINE = LINE.substring(0, LINE.length() - 1)
+            + ", \"address\": \"50:FB:19:8A:A0:C2\"}";
+
+    private byte[] line;
+    private byte[] taggedLine;
+    private byte[] frame;
+    private JsonLineDecoder jsonDecoder;
+    private BinaryFrameDecoder frameDecoder;
+    private BlackholeSink sink;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        line = (LINE + "\n").getBytes(StandardCharsets.US_ASCII);
+        taggedLine = (TAGGED_LINE + "\n").getBytes(StandardCharsets.US_ASCII);
+
+        byte[] payload = new byte[BinaryFrameDecoder.PAYLOAD_LENGTH];
+        payload[4] = 0x06;
+        payload[5] = (byte) 0xBB;
+        int checksum = 0x10;
+        for (int i = 0; i < payload.length - 1; i++) {
+            checksum ^= payload[i];
+        }
+        payload[payload.length - 1] = (byte) checksum;
+        ByteBuffer buffer = ByteBuffer.allocate(4 + Long.BYTES + payload.length);
+        buffer.put((byte) BinaryFrameDecoder.SYNC_1).put((byte) BinaryFrameDecoder.SYNC_2)
+                .put((byte) BinaryFrameDecoder.TYPE_SAMPLE).put((byte) (Long.BYTES + payload.length))
+                .putLong(1749098287000L).put(payload);
+        frame = buffer.array();
+
+        jsonDecoder = new JsonLineDecoder();
+        frameDecoder = new BinaryFrameDecoder();
+        sink = new BlackholeSink(blackhole);
+    }
+
+    @Benchmark
+    public void jsonObject(Blackhole blackhole) {
+        JSONObject json = new JSONObject(new String(line, 0, line.length - 1, StandardCharsets.UTF_8));
+        blackhole.consume(json.getLong("timestamp") * 1000L);
+        blackhole.consume((int) Math.round(json.getDouble("weight") * 100));
+    }
+
+    @Benchmark
+    public void jsonLineDecoder() {
+        jsonDecoder.decode(line, 0, line.length, sink);
+    }
+
+    @Benchmark
+    public void jsonLineDecoderTagged() {
+        jsonDecoder.decode(taggedLine, 0, taggedLine.length, sink);
+    }
+
+    @Benchmark
+    public void binaryFrameDecoder() {
+        frameDecoder.decode(frame, 0, frame.length, sink);
+    }
+
+    static final class BlackholeSink implements SampleDecoder.Sink {
+        private final Blackhole blackhole;
+
+        BlackholeSink(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void onSample(long device, long timestamp, int centigrams) {
+            blackhole.consume(device);
+            blackhole.consume(timestamp);
+            blackhole.consume(centigrams);
+        }
+
+        @Override
+        public void onMalformed(String reason) {
+            throw new IllegalStateException(reason);
+        }
+    }
+}
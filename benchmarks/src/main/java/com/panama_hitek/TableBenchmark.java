@@ -0,0 +1,55 @@
+package com.panama_hitek;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Table row insertion: a record is appended, the table model picks it up on
+ * its next refresh and the new row's cells are formatted for painting
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class TableBenchmark {
+
+    private static final int MAX_RECORDS = 1 << 20;
+
+    private DataLogger dataLogger;
+    private SampleTableModel model;
+    private long timestamp;
+    private int count;
+
+    @Setup
+    public void setup() {
+        dataLogger = new DataLogger();
+        model = new SampleTableModel(dataLogger);
+        timestamp = 1749098287000L;
+    }
+
+    @Benchmark
+    public void insertRow(Blackhole blackhole) {
+        if (++count == MAX_RECORDS) {
+            dataLogger.clearRecords();
+            count = 0;
+        }
+        dataLogger.addRecord(timestamp += 100, 1723);
+        model.refresh();
+        int row = model.getRowCount() - 1;
+        for (int column = 0; column < model.getColumnCount(); column++) {
+            blackhole.consume(model.getValueAt(row, column));
+        }
+    }
+}
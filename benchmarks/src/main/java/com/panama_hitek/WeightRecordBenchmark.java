@@ -0,0 +1,60 @@
+package com.panama_hitek;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-record accessors and the date, time and weight formatting done for
+ * every visible table cell and for the legacy CSV row
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WeightRecordBenchmark {
+
+    private WeightRecord record;
+    private long timestamp;
+
+    @Setup
+    public void setup() {
+        timestamp = 1749098287000L;
+        record = new WeightRecord(timestamp, 1723);
+    }
+
+    @Benchmark
+    public long getTimestampInMillis() {
+        return record.getTimestampInMillis();
+    }
+
+    @Benchmark
+    public String formatDate() {
+        return WeightRecord.formatDate(timestamp);
+    }
+
+    @Benchmark
+    public String formatTime() {
+        return WeightRecord.formatTime(timestamp);
+    }
+
+    @Benchmark
+    public String formatWeight() {
+        return WeightRecord.formatWeight(1723);
+    }
+
+    @Benchmark
+    public String toCsvRow() {
+        return record.toString();
+    }
+}
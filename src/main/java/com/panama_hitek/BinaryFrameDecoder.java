@@ -0,0 +1,220 @@
+package com.panama_hitek;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Decodes the compact binary frames written by retrieve_data.py --binary.
+ *
+ * Frame layout: A5 5A | type | body length | body
+ * Sample body (type 0x01):        receive timestamp (int64 ms, big-endian) + 17-byte manufacturer payload
+ * Device sample body (type 0x02): 6-byte device address + the sample body
+ * Control body (type 0x03):       part of a UTF-8 reply; the last part ends with '\n'
+ *
+ * The weight is b04 * 256 + b05 centigrams and byte B16 is a checksum equal to
+ * the XOR of bytes B00..B15 with 0x10. Frames failing the checksum are dropped
+ * before they reach the data logger.
+ *
+ * A5 5A may also occur inside a body or in line noise. The type and length of
+ * a frame are checked as soon as they arrive, and after any rejected frame the
+ * scan for the next sync resumes at the byte following the false one, so a
+ * false sync cannot swallow the valid frames behind it.
+ */
+public class BinaryFrameDecoder implements SampleDecoder {
+
+    public static final int SYNC_1 = 0xA5;
+    public static final int SYNC_2 = 0x5A;
+    public static final int TYPE_SAMPLE = 0x01;
+    public static final int TYPE_DEVICE_SAMPLE = 0x02;
+    public static final int TYPE_CONTROL = 0x03;
+    public static final int ADDRESS_LENGTH = 6;
+    public static final int PAYLOAD_LENGTH = 17;
+
+    private static final int CHECKSUM_SEED = 0x10;
+    // Longest control reply kept; a reply without '\n' is dropped beyond it
+    private static final int MAX_CONTROL_LENGTH = 1 << 16;
+
+    private static final int STATE_SYNC_1 = 0;
+    private static final int STATE_SYNC_2 = 1;
+    private static final int STATE_TYPE = 2;
+    private static final int STATE_LENGTH = 3;
+    private static final int STATE_BODY = 4;
+
+    private final byte[] body = new byte[255];
+    private final ByteBuffer bodyView = ByteBuffer.wrap(body);
+
+    // Control reply being reassembled from type 0x03 frames
+    private byte[] control = new byte[512];
+    private int controlLength = 0;
+
+    private int state = STATE_SYNC_1;
+    private int type;
+    private int bodyLength;
+    private int bodyFill;
+
+    private long decodedFrames = 0;
+    private long corruptFrames = 0;
+
+    @Override
+    public void decode(byte[] buffer, int offset, int length, Sink sink) {
+        int i = offset;
+        int end = offset + length;
+        while (i < end) {
+            switch (state) {
+                case STATE_SYNC_1:
+                    if ((buffer[i++] & 0xFF) == SYNC_1) {
+                        state = STATE_SYNC_2;
+                    }
+                    break;
+                case STATE_SYNC_2:
+                    int b = buffer[i++] & 0xFF;
+                    if (b == SYNC_2) {
+                        state = STATE_TYPE;
+                    } else if (b != SYNC_1) {
+                        state = STATE_SYNC_1;
+                    }
+                    break;
+                case STATE_TYPE:
+                    type = buffer[i] & 0xFF;
+                    if (type != TYPE_SAMPLE && type != TYPE_DEVICE_SAMPLE && type != TYPE_CONTROL) {
+                        // False sync: rescan from this byte, which may start the real one
+                        corruptFrames++;
+                        sink.onMalformed("Unknown frame type: " + type);
+                        state = STATE_SYNC_1;
+                        break;
+                    }
+                    i++;
+                    state = STATE_LENGTH;
+                    break;
+                case STATE_LENGTH:
+                    bodyLength = buffer[i] & 0xFF;
+                    if (type != TYPE_CONTROL && bodyLength != sampleOffset(type) + Long.BYTES + PAYLOAD_LENGTH) {
+                        // The type byte cannot start a sync, so rescan from this one
+                        corruptFrames++;
+                        sink.onMalformed("Unexpected sample frame length: " + bodyLength);
+                        state = STATE_SYNC_1;
+                        break;
+                    }
+                    i++;
+                    bodyFill = 0;
+                    state = STATE_BODY;
+                    if (bodyLength == 0) {
+                        endFrame(sink);
+                    }
+                    break;
+                default:
+                    int n = Math.min(bodyLength - bodyFill, end - i);
+                    System.arraycopy(buffer, i, body, bodyFill, n);
+                    bodyFill += n;
+                    i += n;
+                    if (bodyFill == bodyLength) {
+                        endFrame(sink);
+                    }
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        state = STATE_SYNC_1;
+        controlLength = 0;
+    }
+
+    /**
+     * @return Number of frames that passed validation
+     */
+    public long getDecodedFrames() {
+        return decodedFrames;
+    }
+
+    /**
+     * @return Number of frames dropped for a bad type, length or checksum
+     */
+    public long getCorruptFrames() {
+        return corruptFrames;
+    }
+
+    // Position of the timestamp in a sample body of a checked type
+    private static int sampleOffset(int type) {
+        return type == TYPE_DEVICE_SAMPLE ? ADDRESS_LENGTH : 0;
+    }
+
+    // Type and length were checked on arrival
+    private void endFrame(Sink sink) {
+        state = STATE_SYNC_1;
+        if (type == TYPE_CONTROL) {
+            endControlFrame(sink);
+            return;
+        }
+        int sample = sampleOffset(type);
+        int payload = sample + Long.BYTES;
+        if (!isChecksumValid(body, payload)) {
+            corruptFrames++;
+            sink.onMalformed("Payload checksum mismatch");
+            rescan(sink);
+            return;
+        }
+        long device = DeviceRegistry.UNTAGGED;
+        for (int i = 0; i < sample; i++) {
+            device = (device << 8) | (body[i] & 0xFF);
+        }
+        long timestamp = bodyView.getLong(sample);
+        decodedFrames++;
+        sink.onSample(device, timestamp, decodeCentigrams(body, payload));
+    }
+
+    // Feed the bytes after a false sync through the decoder again; the real
+    // sync may be among them. A copy, since decoding reuses the body buffer.
+    private void rescan(Sink sink) {
+        byte[] replay = new byte[2 + bodyLength];
+        replay[0] = (byte) type;
+        replay[1] = (byte) bodyLength;
+        System.arraycopy(body, 0, replay, 2, bodyLength);
+        decode(replay, 0, replay.length, sink);
+    }
+
+    private void endControlFrame(Sink sink) {
+        if (controlLength + bodyLength > MAX_CONTROL_LENGTH) {
+            corruptFrames++;
+            sink.onMalformed("Control reply longer than " + MAX_CONTROL_LENGTH + " bytes without a line end");
+            controlLength = 0;
+            return;
+        }
+        if (controlLength + bodyLength > control.length) {
+            control = Arrays.copyOf(control, Math.max(control.length * 2, controlLength + bodyLength));
+        }
+        System.arraycopy(body, 0, control, controlLength, bodyLength);
+        controlLength += bodyLength;
+        if (controlLength > 0 && control[controlLength - 1] == '\n') {
+            String message = new String(control, 0, controlLength - 1, StandardCharsets.UTF_8);
+            controlLength = 0;
+            sink.onControl(message);
+        }
+    }
+
+    /**
+     * Extract the weight from a manufacturer payload
+     * @param payload Buffer holding the payload
+     * @param offset Position of byte B00
+     * @return Weight in centigrams (b04 * 256 + b05)
+     */
+    public static int decodeCentigrams(byte[] payload, int offset) {
+        return ((payload[offset + 4] & 0xFF) << 8) | (payload[offset + 5] & 0xFF);
+    }
+
+    /**
+     * Validate the B16 checksum of a manufacturer payload
+     * @param payload Buffer holding the payload
+     * @param offset Position of byte B00
+     * @return true if B16 matches the XOR of B00..B15 with 0x10
+     */
+    public static boolean isChecksumValid(byte[] payload, int offset) {
+        int x = CHECKSUM_SEED;
+        for (int i = 0; i < PAYLOAD_LENGTH - 1; i++) {
+            x ^= payload[offset + i];
+        }
+        return (x & 0xFF) == (payload[offset + PAYLOAD_LENGTH - 1] & 0xFF);
+    }
+}
@@ -0,0 +1,107 @@
+package com.panama_hitek;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, lock-free single-producer/single-consumer ring of preallocated byte
+ * chunks. The reader thread fills a claimed slot straight from the process
+ * stream and publishes it; the parser thread polls, decodes and releases it.
+ * No chunk is ever allocated after construction.
+ */
+final class ByteChunkRing {
+
+    private final byte[][] slots;
+    private final int[] lengths;
+    // System.nanoTime() at which each slot was filled
+    private final long[] receivedNanos;
+    private final int mask;
+
+    // Next sequence the consumer will read
+    private final AtomicLong head = new AtomicLong();
+    // Next sequence the producer will write
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Create a ring
+     * @param capacity Number of slots, rounded up to a power of two
+     * @param chunkSize Size in bytes of every slot
+     */
+    ByteChunkRing(int capacity, int chunkSize) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new byte[size][chunkSize];
+        lengths = new int[size];
+        receivedNanos = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Producer side: get the next free slot without publishing it
+     * @return The slot buffer, or null if the ring is full
+     */
+    byte[] claim() {
+        long t = tail.get();
+        if (t - head.get() >= slots.length) {
+            return null;
+        }
+        return slots[(int) (t & mask)];
+    }
+
+    /**
+     * Producer side: publish the slot returned by the last {@link #claim()}
+     * @param length Number of valid bytes written to the slot
+     * @param nanos System.nanoTime() at which the bytes were read
+     */
+    void publish(int length, long nanos) {
+        long t = tail.get();
+        lengths[(int) (t & mask)] = length;
+        receivedNanos[(int) (t & mask)] = nanos;
+        tail.lazySet(t + 1);
+    }
+
+    /**
+     * Consumer side: get the oldest published slot without releasing it
+     * @return The slot buffer, or null if the ring is empty
+     */
+    byte[] poll() {
+        long h = head.get();
+        if (h >= tail.get()) {
+            return null;
+        }
+        return slots[(int) (h & mask)];
+    }
+
+    /**
+     * Consumer side: number of valid bytes in the slot returned by the last {@link #poll()}
+     */
+    int polledLength() {
+        return lengths[(int) (head.get() & mask)];
+    }
+
+    /**
+     * Consumer side: System.nanoTime() at which the slot returned by the last {@link #poll()} was read
+     */
+    long polledNanos() {
+        return receivedNanos[(int) (head.get() & mask)];
+    }
+
+    /**
+     * Consumer side: hand the slot returned by the last {@link #poll()} back to the producer
+     */
+    void release() {
+        head.lazySet(head.get() + 1);
+    }
+
+    /**
+     * @return Number of published slots not yet released
+     */
+    int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * @return Total number of slots
+     */
+    int capacity() {
+        return slots.length;
+    }
+}
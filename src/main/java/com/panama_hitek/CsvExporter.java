@@ -0,0 +1,318 @@
+package com.panama_hitek;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+
+/**
+ * Streams a DataLogger snapshot to a CSV file without touching the EDT.
+ *
+ * Rows are encoded byte by byte into a large direct buffer that is written
+ * through a FileChannel. The date and the "HH:mm:" part of the time are
+ * formatted once per minute of data; seconds, milliseconds, the fixed-point
+ * weight and the receive delay are written with plain integer arithmetic. The file is written under a temporary
+ * name and only moved into place when the export completes, so a cancelled
+ * export leaves nothing behind. {@link #exportSummary} writes one row per
+ * rollup bucket instead, for ranges too long to be useful sample by sample.
+ */
+public class CsvExporter {
+
+    // Progress callback, called from the exporting thread
+    public interface ProgressListener {
+        void onProgress(int rowsWritten, int totalRows);
+    }
+
+    // Receive delay: time from the capture timestamp to the bytes reaching this
+    // process; empty for records that were replayed or imported
+    public static final String HEADER = "Date,Time,Weight (kg),Receive delay (ms)";
+    // One row per bucket, Time is the start of the bucket
+    public static final String SUMMARY_HEADER = "Date,Time,Samples,Min (kg),Max (kg),Mean (kg),Last (kg)";
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int MAX_ROW_SIZE = 96;
+    private static final int PROGRESS_INTERVAL = 1 << 16;
+
+    private final ZoneId zone;
+    private final byte[] lineSeparator = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+    private volatile boolean cancelled = false;
+
+    // "yyyy-MM-dd,HH:mm:" for the minute currently being written
+    private final byte[] minutePrefix = new byte[17];
+    private long minuteStart = Long.MAX_VALUE;
+    private long minuteEnd = Long.MIN_VALUE;
+    private final byte[] digits = new byte[20];
+
+    public CsvExporter() {
+        this(ZoneId.systemDefault());
+    }
+
+    /**
+     * @param zone Time zone used for the Date and Time columns
+     */
+    public CsvExporter(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * Request the running export to stop at the next row
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Write the snapshot to a CSV file
+     * @param snapshot Stable view of the records to export
+     * @param target Destination file, replaced if it exists
+     * @param progress Progress callback, may be null
+     * @return true if the export completed, false if it was cancelled
+     * @throws IOException if the file cannot be written
+     */
+    public boolean export(DataLogger.Snapshot snapshot, Path target, ProgressListener progress) throws IOException {
+        Path partial = target.resolveSibling(target.getFileName() + ".part");
+        int total = snapshot.size();
+        boolean completed = false;
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.put(HEADER.getBytes(StandardCharsets.US_ASCII)).put(lineSeparator);
+
+            for (int i = 0; i < total; i++) {
+                if (buffer.remaining() < MAX_ROW_SIZE) {
+                    drain(buffer, channel);
+                }
+                encodeRow(buffer, snapshot.getTimestamp(i), snapshot.getCentigrams(i), snapshot.getReceiveNanos(i));
+
+                if ((i & (PROGRESS_INTERVAL - 1)) == 0) {
+                    if (cancelled || Thread.currentThread().isInterrupted()) {
+                        return false;
+                    }
+                    if (progress != null) {
+                        progress.onProgress(i, total);
+                    }
+                }
+            }
+            drain(buffer, channel);
+            channel.force(false);
+            completed = true;
+        } finally {
+            if (!completed) {
+                Files.deleteIfExists(partial);
+            }
+        }
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+        if (progress != null) {
+            progress.onProgress(total, total);
+        }
+        return true;
+    }
+
+    /**
+     * Write the logger's rollup buckets to a CSV file, one row per bucket of
+     * the coarsest level not longer than the resolution
+     * @param dataLogger Store to summarize
+     * @param resolutionMillis Longest bucket wanted, at least 1000
+     * @param target Destination file, replaced if it exists
+     * @param progress Progress callback, may be null
+     * @return true if the export completed, false if it was cancelled
+     * @throws IOException if the file cannot be written
+     */
+    public boolean exportSummary(DataLogger dataLogger, long resolutionMillis, Path target, ProgressListener progress)
+            throws IOException {
+        // Copied out first: the logger calls back under its lock, which ingest needs
+        Buckets buckets = new Buckets();
+        if (dataLogger.readRollups(resolutionMillis, Long.MIN_VALUE, Long.MAX_VALUE, buckets) == 0) {
+            throw new IllegalArgumentException("No rollup level fits a resolution of " + resolutionMillis + " ms");
+        }
+        Path partial = target.resolveSibling(target.getFileName() + ".part");
+        int total = buckets.size;
+        boolean completed = false;
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.put(SUMMARY_HEADER.getBytes(StandardCharsets.US_ASCII)).put(lineSeparator);
+
+            for (int i = 0; i < total; i++) {
+                if (buffer.remaining() < MAX_ROW_SIZE) {
+                    drain(buffer, channel);
+                }
+                long start = buckets.start[i];
+                if (start < minuteStart || start >= minuteEnd) {
+                    startMinute(start);
+                }
+                buffer.put(minutePrefix);
+                int second = (int) ((start - minuteStart) / 1000);
+                buffer.put((byte) ('0' + second / 10)).put((byte) ('0' + second % 10)).put((byte) ',');
+                putWhole(buffer, buckets.count[i]);
+                buffer.put((byte) ',');
+                putCentigrams(buffer, buckets.min[i]);
+                buffer.put((byte) ',');
+                putCentigrams(buffer, buckets.max[i]);
+                buffer.put((byte) ',');
+                putCentigrams(buffer, buckets.mean[i]);
+                buffer.put((byte) ',');
+                putCentigrams(buffer, buckets.last[i]);
+                buffer.put(lineSeparator);
+
+                if ((i & (PROGRESS_INTERVAL - 1)) == 0) {
+                    if (cancelled || Thread.currentThread().isInterrupted()) {
+                        return false;
+                    }
+                    if (progress != null) {
+                        progress.onProgress(i, total);
+                    }
+                }
+            }
+            drain(buffer, channel);
+            channel.force(false);
+            completed = true;
+        } finally {
+            if (!completed) {
+                Files.deleteIfExists(partial);
+            }
+        }
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+        if (progress != null) {
+            progress.onProgress(total, total);
+        }
+        return true;
+    }
+
+    // Growable columns of rollup buckets
+    private static final class Buckets implements RollupPyramid.BucketConsumer {
+        long[] start = new long[256];
+        int[] count = new int[256];
+        int[] min = new int[256];
+        int[] max = new int[256];
+        int[] mean = new int[256];
+        int[] last = new int[256];
+        int size = 0;
+
+        @Override
+        public void onBucket(long bucketStart, long minTimestamp, int minCentigrams, long maxTimestamp,
+                int maxCentigrams, double meanCentigrams, int samples, int lastCentigrams) {
+            if (size == start.length) {
+                int capacity = size * 2;
+                start = Arrays.copyOf(start, capacity);
+                count = Arrays.copyOf(count, capacity);
+                min = Arrays.copyOf(min, capacity);
+                max = Arrays.copyOf(max, capacity);
+                mean = Arrays.copyOf(mean, capacity);
+                last = Arrays.copyOf(last, capacity);
+            }
+            start[size] = bucketStart;
+            count[size] = samples;
+            min[size] = minCentigrams;
+            max[size] = maxCentigrams;
+            mean[size] = (int) Math.round(meanCentigrams);
+            last[size] = lastCentigrams;
+            size++;
+        }
+    }
+
+    private static void drain(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Encode "yyyy-MM-dd,HH:mm:ss.SSS,W.WW,D.DDD" plus the line separator
+     * @param receiveNanos Receive stamp, or DataLogger.NOT_RECEIVED to leave the delay empty
+     */
+    void encodeRow(ByteBuffer out, long timestamp, int centigrams, long receiveNanos) {
+        if (timestamp < minuteStart || timestamp >= minuteEnd) {
+            startMinute(timestamp);
+        }
+        out.put(minutePrefix);
+        int millis = (int) (timestamp - minuteStart);
+        int second = millis / 1000;
+        millis %= 1000;
+        out.put((byte) ('0' + second / 10)).put((byte) ('0' + second % 10));
+        out.put((byte) '.').put((byte) ('0' + millis / 100)).put((byte) ('0' + millis / 10 % 10))
+                .put((byte) ('0' + millis % 10));
+        out.put((byte) ',');
+        putCentigrams(out, centigrams);
+        out.put((byte) ',');
+        if (receiveNanos != DataLogger.NOT_RECEIVED) {
+            putFixed(out, DataLogger.receiveEpochMicros(receiveNanos) - timestamp * 1000, 1000, 3);
+        }
+        out.put(lineSeparator);
+    }
+
+    /**
+     * Write a weight in centigrams as a decimal number with two fraction digits
+     */
+    void putCentigrams(ByteBuffer out, int centigrams) {
+        putFixed(out, centigrams, 100, 2);
+    }
+
+    /**
+     * Write value / unit as a decimal number
+     * @param unit 10 to the power of fractionDigits
+     */
+    private void putFixed(ByteBuffer out, long value, int unit, int fractionDigits) {
+        if (value < 0) {
+            out.put((byte) '-');
+            value = -value;
+        }
+        putWhole(out, value / unit);
+        out.put((byte) '.');
+        long fraction = value % unit;
+        for (int i = fractionDigits - 1; i >= 0; i--) {
+            digits[i] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        out.put(digits, 0, fractionDigits);
+    }
+
+    // Non-negative integer
+    private void putWhole(ByteBuffer out, long value) {
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (n > 0) {
+            out.put(digits[--n]);
+        }
+    }
+
+    private void startMinute(long timestamp) {
+        ZonedDateTime time = Instant.ofEpochMilli(timestamp).atZone(zone);
+        minuteStart = timestamp - time.getSecond() * 1000L - time.getNano() / 1_000_000;
+        minuteEnd = minuteStart + 60_000L;
+        putNumber(minutePrefix, 0, time.getYear(), 4);
+        minutePrefix[4] = '-';
+        putNumber(minutePrefix, 5, time.getMonthValue(), 2);
+        minutePrefix[7] = '-';
+        putNumber(minutePrefix, 8, time.getDayOfMonth(), 2);
+        minutePrefix[10] = ',';
+        putNumber(minutePrefix, 11, time.getHour(), 2);
+        minutePrefix[13] = ':';
+        putNumber(minutePrefix, 14, time.getMinute(), 2);
+        minutePrefix[16] = ':';
+    }
+
+    private static void putNumber(byte[] target, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            target[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.panama_hitek;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Delivers new samples to DataLogger subscribers without running them on the
+ * ingest thread.
+ *
+ * Every subscriber owns a bounded queue of primitive slots and a single-thread
+ * executor that drains it, so a slow consumer only delays itself. What
+ * happens when its queue is full is chosen per subscriber. The registry is
+ * copy-on-write: publishing iterates a stable array and never takes a lock
+ * shared with subscribe or close.
+ */
+public class DataDispatcher {
+
+    public enum Policy {
+        /** Make the publisher wait for room; nothing is lost */
+        BLOCK,
+        /** Discard the oldest queued sample to make room */
+        DROP_OLDEST,
+        /** Keep only the most recent sample; for consumers that show a current value */
+        CONFLATE_LATEST
+    }
+
+    // Handle returned by subscribe
+    public interface Subscription extends AutoCloseable {
+        /**
+         * Stop delivery and remove the subscriber. Queued samples are discarded.
+         */
+        @Override
+        void close();
+
+        /**
+         * @return Number of samples discarded because the queue was full
+         */
+        long getDroppedCount();
+    }
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Register a listener with its own queue and delivery thread
+     * @param listener Receiver of new samples, called on the subscriber's thread
+     * @param policy What to do when the queue is full
+     * @param capacity Queue length; CONFLATE_LATEST always uses 1
+     * @return Handle used to unsubscribe
+     */
+    public Subscription subscribe(DataLogger.DataListener listener, Policy policy, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        Subscriber subscriber = new Subscriber(listener, policy,
+                policy == Policy.CONFLATE_LATEST ? 1 : capacity);
+        subscribers.add(subscriber);
+        subscriber.executor.execute(subscriber);
+        return subscriber;
+    }
+
+    /**
+     * Remove every subscription of a listener
+     * @param listener The listener to remove
+     * @return true if a subscription was removed
+     */
+    public boolean unsubscribe(DataLogger.DataListener listener) {
+        boolean removed = false;
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.listener == listener) {
+                subscriber.close();
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Queue a sample for every subscriber. Only BLOCK subscribers can make this wait.
+     * @param timestamp Timestamp in milliseconds since epoch
+     * @param centigrams Weight in hundredths of a gram
+     */
+    public void publish(long timestamp, int centigrams) {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(timestamp, centigrams);
+        }
+    }
+
+    /**
+     * @return Number of active subscriptions
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * @return Samples waiting in all subscriber queues
+     */
+    public long getQueuedCount() {
+        long queued = 0;
+        for (Subscriber subscriber : subscribers) {
+            queued += subscriber.getQueued();
+        }
+        return queued;
+    }
+
+    /**
+     * @return Samples dropped so far by the active subscriptions
+     */
+    public long getDroppedCount() {
+        long dropped = 0;
+        for (Subscriber subscriber : subscribers) {
+            dropped += subscriber.getDroppedCount();
+        }
+        return dropped;
+    }
+
+    private final class Subscriber implements Subscription, Runnable {
+        private final DataLogger.DataListener listener;
+        private final Policy policy;
+        private final ExecutorService executor;
+
+        // Circular queue, guarded by lock
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final Condition notFull = lock.newCondition();
+        private final long[] timestamps;
+        private final int[] centigrams;
+        private int head = 0;
+        private int count = 0;
+        private boolean closed = false;
+        private volatile long dropped = 0;
+        private final PipelineMetrics metrics = Metrics.pipeline();
+
+        Subscriber(DataLogger.DataListener listener, Policy policy, int capacity) {
+            this.listener = listener;
+            this.policy = policy;
+            this.timestamps = new long[capacity];
+            this.centigrams = new int[capacity];
+            this.executor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "data-subscriber-" + THREAD_COUNTER.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        void offer(long timestamp, int weightCentigrams) {
+            lock.lock();
+            try {
+                int capacity = timestamps.length;
+                if (count == capacity) {
+                    if (policy == Policy.BLOCK) {
+                        while (count == capacity && !closed) {
+                            notFull.await();
+                        }
+                    } else {
+                        // Drop the oldest; with a single slot this conflates to the latest
+                        head = (head + 1) % capacity;
+                        count--;
+                        dropped++;
+                        metrics.recordListenerDrop();
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                int slot = (head + count) % capacity;
+                timestamps[slot] = timestamp;
+                centigrams[slot] = weightCentigrams;
+                count++;
+                notEmpty.signal();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            long[] batchTimestamps = new long[timestamps.length];
+            int[] batchCentigrams = new int[timestamps.length];
+            while (true) {
+                int n;
+                lock.lock();
+                try {
+                    while (count == 0 && !closed) {
+                        notEmpty.await();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                    // Take everything queued so far and release the publisher
+                    n = count;
+                    for (int i = 0; i < n; i++) {
+                        int slot = (head + i) % timestamps.length;
+                        batchTimestamps[i] = timestamps[slot];
+                        batchCentigrams[i] = centigrams[slot];
+                    }
+                    head = (head + n) % timestamps.length;
+                    count = 0;
+                    notFull.signalAll();
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    lock.unlock();
+                }
+
+                for (int i = 0; i < n; i++) {
+                    try {
+                        listener.onNewData(batchTimestamps[i], batchCentigrams[i] / 100.0);
+                    } catch (RuntimeException e) {
+                        System.err.println("Data listener failed: " + e);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            subscribers.remove(this);
+            lock.lock();
+            try {
+                closed = true;
+                notEmpty.signalAll();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            executor.shutdown();
+        }
+
+        @Override
+        public long getDroppedCount() {
+            return dropped;
+        }
+
+        int getQueued() {
+            lock.lock();
+            try {
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
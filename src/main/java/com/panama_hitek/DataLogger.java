@@ -1,94 +1,440 @@
 package com.panama_hitek;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
 import java.util.List;
-import javax.swing.JFileChooser;
-import javax.swing.JFrame;
-import javax.swing.filechooser.FileNameExtensionFilter;
-import javax.swing.JOptionPane;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * DataLogger class for storing and exporting weight measurements
+ *
+ * Records are kept in timestamp order, which range lookups, the spill cutoff
+ * and the sliding-window statistics rely on. A live record older than the
+ * newest stored one is stored at the newest time instead, and a batch that
+ * would go back in time is rejected by {@link #addRecords}.
+ *
+ * With a retention limit (-Dsmartscale.retention) only a hot window of recent
+ * records stays in the heap; older ones are spilled to compressed segments in
+ * a {@link SpillStore}. Snapshots span both tiers, so table, chart history and
+ * exports still see every record. The HeapPressureMonitor shrinks the hot
+ * window when the heap stays full after garbage collection.
  */
 public class DataLogger {
     
-    // Data class to hold weight measurements
-    public static class WeightRecord {
-        private String date;
-        private String time;
-        private double weight;
-        
-        public WeightRecord(String date, String time, double weight) {
-            this.date = date;
-            this.time = time;
-            this.weight = weight;
+    // Interface for data listeners
+    public interface DataListener {
+        void onNewData(long timestamp, double weight);
+    }
+    
+    private static final int INITIAL_CAPACITY = 1024;
+    
+    /** Receive stamp of records that were not received live, e.g. replayed or imported */
+    public static final long NOT_RECEIVED = Long.MIN_VALUE;
+    
+    // Wall clock and monotonic clock read together once, to place receive stamps in time
+    private static final long CLOCK_ANCHOR_MILLIS = System.currentTimeMillis();
+    private static final long CLOCK_ANCHOR_NANOS = System.nanoTime();
+    
+    // Columnar storage: capture time (epoch millis from the source), weight in
+    // centigrams and receive time (System.nanoTime() when the bytes were read).
+    // Appended by the ingest thread and read by the EDT, guarded by this.
+    // Hot records are [hotStart, end) of the arrays; slots before hotStart were spilled
+    // and are only kept for snapshots taken earlier, until the next compaction.
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    private int[] centigrams = new int[INITIAL_CAPACITY];
+    private long[] receivedNanos = new long[INITIAL_CAPACITY];
+    private int hotStart = 0;
+    private int end = 0;
+    // Timestamp of the newest record, no record may be stored before it
+    private long newestTimestamp = Long.MIN_VALUE;
+    // Incremented by clearRecords and attachJournal so readers can tell a reset from an append
+    private long generation = 0;
+    
+    // Min/max/mean/count/last per 1 s, 10 s, 1 min and 10 min bucket, kept in step with the columns
+    private final RollupPyramid rollups = new RollupPyramid();
+    
+    // Session and last-N-seconds statistics, kept in step with the columns
+    private static final long STATS_WINDOW_MILLIS = Long.getLong("smartscale.statsWindowMs", 10_000L);
+    private final RunningStats stats = new RunningStats(STATS_WINDOW_MILLIS);
+    
+    // Queue length for listeners registered without an explicit policy
+    private static final int DEFAULT_LISTENER_QUEUE = 8192;
+    
+    // Delivers new records to listeners on their own threads
+    private final DataDispatcher dispatcher = new DataDispatcher();
+    
+    // Optional durable backend, appended under the same lock as the columns. A
+    // journal shared by the stores of a DeviceRegistry tags records with the device.
+    private SampleJournal journal;
+    private boolean journalShared = false;
+    // Address journaled for records added without one, set by DeviceRegistry.bind
+    private long device = DeviceRegistry.UNTAGGED;
+    
+    // Hot window limits, and spill batches between MIN_SPILL and MAX_SEGMENT records
+    private static final Retention DEFAULT_RETENTION = Retention.fromSystemProperties();
+    private static final int MIN_SPILL = 4096;
+    private static final int MAX_SEGMENT = 1 << 16;
+    /** Most records {@link #addRecords} appends before spilling; larger batches are split */
+    public static final int IMPORT_CHUNK = MAX_SEGMENT;
+    // Smallest hot window heap pressure can shrink to
+    static final int MIN_HOT_RECORDS = 4 * MIN_SPILL;
+    private int maxHotRecords = DEFAULT_RETENTION.maxRecords;
+    private final long maxHotMillis = DEFAULT_RETENTION.maxMillis;
+    
+    // Cold tier, created on the first spill
+    private SpillStore spillStore;
+    private SpillStore.Segments cold = SpillStore.Segments.EMPTY;
+    // Segments planned on the ingest path are written here, never on the parser thread
+    private static final ExecutorService SPILLER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "spill-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // A segment is being written outside the lock; its records stay readable in the hot window until installed
+    private boolean spilling = false;
+    private boolean spillFailed = false;
+    
+    public DataLogger() {
+        HeapPressureMonitor.register(this);
+    }
+    
+    /**
+     * Add a new weight measurement record, received now
+     * @param timestamp Timestamp in milliseconds since epoch
+     * @param weightCentigrams Weight in hundredths of a gram
+     */
+    public void addRecord(long timestamp, int weightCentigrams) {
+        addRecord(timestamp, weightCentigrams, System.nanoTime());
+    }
+    
+    /**
+     * Add a new weight measurement record
+     * @param timestamp Capture time in milliseconds since epoch
+     * @param weightCentigrams Weight in hundredths of a gram
+     * @param receiveNanos System.nanoTime() when the sample reached this process
+     */
+    public void addRecord(long timestamp, int weightCentigrams, long receiveNanos) {
+        addRecord(timestamp, weightCentigrams, receiveNanos, DeviceRegistry.UNTAGGED, 0);
+    }
+    
+    /**
+     * Add a new weight measurement record
+     * @param timestamp Capture time in milliseconds since epoch
+     * @param weightCentigrams Weight in hundredths of a gram
+     * @param receiveNanos System.nanoTime() when the sample reached this process
+     * @param device Address the sample was tagged with, or DeviceRegistry.UNTAGGED for the store's own
+     * @param flags SampleJournal flags describing the sample, e.g. {@link SampleJournal#FLAG_SMOOTHED}
+     */
+    public void addRecord(long timestamp, int weightCentigrams, long receiveNanos, long device, int flags) {
+        Snapshot spill;
+        synchronized (this) {
+            timestamp = appendColumns(timestamp, weightCentigrams, receiveNanos);
+            spill = planSpill();
+            
+            appendToJournal(timestamp, weightCentigrams, device, flags);
         }
         
-        // Getters
-        public String getDate() { return date; }
-        public String getTime() { return time; }
-        public double getWeight() { return weight; }
-        
-        // For CSV formatting
-        @Override
-        public String toString() {
-            return date + "," + time + "," + String.format("%.2f", weight);
+        // Notify listeners; they run on their own threads, not on the ingest thread
+        dispatcher.publish(timestamp, weightCentigrams);
+        if (spill != null) {
+            SPILLER.execute(() -> spillAll(spill));
         }
-        
-        public long getTimestampInMillis() {
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    }
+    
+    // Caller holds the lock. A failing journal must not take the ingest thread
+    // down with it, so any failure drops back to memory only.
+    private void appendToJournal(long timestamp, int weightCentigrams, long tag, int flags) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.append(timestamp, weightCentigrams, tag != DeviceRegistry.UNTAGGED ? tag : device, flags);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Journal append failed, continuing in memory only: " + e);
+            journal = null;
+        }
+    }
+    
+    // Caller holds the lock. Returns the stored timestamp, raised to the newest
+    // one if the source clock stepped back.
+    private long appendColumns(long timestamp, int weightCentigrams, long receiveNanos) {
+        if (end == timestamps.length) {
+            ensureCapacity(1);
+        }
+        timestamp = Math.max(timestamp, newestTimestamp);
+        newestTimestamp = timestamp;
+        timestamps[end] = timestamp;
+        centigrams[end] = weightCentigrams;
+        receivedNanos[end] = receiveNanos;
+        end++;
+        rollups.add(timestamp, weightCentigrams);
+        stats.add(timestamp, weightCentigrams);
+        return timestamp;
+    }
+    
+    // Caller holds the lock. Moves the hot records to the front of new arrays with
+    // room for at least extra more, so spilled slots are dropped while growing.
+    private void ensureCapacity(int extra) {
+        int hot = end - hotStart;
+        if (end + extra <= timestamps.length) {
+            return;
+        }
+        reallocate(Math.max(INITIAL_CAPACITY, Math.max(hot * 2, hot + extra)));
+    }
+    
+    // Caller holds the lock. Copies the hot records to the front of new arrays.
+    private void reallocate(int capacity) {
+        int hot = end - hotStart;
+        long[] newTimestamps = new long[capacity];
+        int[] newCentigrams = new int[capacity];
+        long[] newReceived = new long[capacity];
+        System.arraycopy(timestamps, hotStart, newTimestamps, 0, hot);
+        System.arraycopy(centigrams, hotStart, newCentigrams, 0, hot);
+        System.arraycopy(receivedNanos, hotStart, newReceived, 0, hot);
+        timestamps = newTimestamps;
+        centigrams = newCentigrams;
+        receivedNanos = newReceived;
+        hotStart = 0;
+        end = hot;
+    }
+    
+    // Caller holds the lock. Picks the oldest hot records beyond the retention
+    // limits and reserves them for spilling, or returns null.
+    private Snapshot planSpill() {
+        if (spilling || spillFailed) {
+            return null;
+        }
+        int hot = end - hotStart;
+        int excess = maxHotRecords == Integer.MAX_VALUE ? 0 : hot - maxHotRecords;
+        if (maxHotMillis > 0 && hot > MIN_SPILL) {
+            long cutoff = timestamps[end - 1] - maxHotMillis;
+            // Cheap check first; the binary search only runs when a full batch is old enough
+            if (timestamps[hotStart + MIN_SPILL - 1] < cutoff) {
+                excess = Math.max(excess, hotSnapshot().indexOf(cutoff) - cold.count());
+            }
+        }
+        if (excess < MIN_SPILL) {
+            return null;
+        }
+        if (spillStore == null) {
             try {
-                Date date = sdf.parse(this.date + " " + this.time);
-                return date.getTime();
-            } catch (Exception e) {
-                return 0;
+                spillStore = SpillStore.createDefault();
+            } catch (IOException e) {
+                System.out.println("Cannot create spill directory, keeping every record in memory: " + e.getMessage());
+                spillFailed = true;
+                return null;
             }
         }
+        spilling = true;
+        return hotSnapshot().slice(cold.count(), cold.count() + Math.min(excess, MAX_SEGMENT));
     }
     
-    // Interface for data listeners
-    public interface DataListener {
-        void onNewData(long timestamp, double weight);
+    // Write planned segments one after another, without holding the lock. Called
+    // on the spill writer for live records; recovery, imports and heap pressure
+    // call it directly so they cannot run ahead of the disk.
+    private void spillAll(Snapshot records) {
+        while (records != null) {
+            SpillStore store;
+            synchronized (this) {
+                store = spillStore;
+            }
+            SpillStore.Segment segment;
+            try {
+                segment = store.write(records);
+            } catch (IOException e) {
+                System.out.println("Spill to disk failed, keeping every record in memory: " + e.getMessage());
+                synchronized (this) {
+                    spilling = false;
+                    spillFailed = true;
+                }
+                return;
+            }
+            synchronized (this) {
+                spilling = false;
+                if (records.getGeneration() != generation) {
+                    // Cleared or rebuilt while writing
+                    store.delete(segment);
+                    records = null;
+                } else {
+                    cold = cold.append(store, segment);
+                    hotStart += records.size();
+                    // The 1 s rollups of spilled time would otherwise grow with the session
+                    rollups.dropFinest(hotStart < end ? timestamps[hotStart] : newestTimestamp);
+                    records = planSpill();
+                    int hot = end - hotStart;
+                    if (records == null && timestamps.length > INITIAL_CAPACITY && hot * 4 < timestamps.length) {
+                        // A shrunk window gives its arrays back; earlier snapshots keep the old ones
+                        reallocate(Math.max(INITIAL_CAPACITY, hot * 2));
+                    }
+                }
+            }
+        }
     }
     
-    private List<WeightRecord> records = new ArrayList<>();
-    private final List<DataListener> listeners = new ArrayList<>();
+    // Caller holds the lock
+    private Snapshot hotSnapshot() {
+        return new Snapshot(cold, timestamps, centigrams, receivedNanos, hotStart - cold.count(),
+                0, cold.count() + end - hotStart, generation);
+    }
     
     /**
-     * Constructor to initialize the records list
+     * Halve the hot window, spilling the records that no longer fit. Called by
+     * the HeapPressureMonitor; the window stays small for the rest of the session.
+     * @return New maximum number of records kept in the heap
      */
-    public DataLogger() {
-        records = new ArrayList<>();
+    public int shrinkHotWindow() {
+        Snapshot spill;
+        int limit;
+        synchronized (this) {
+            int hot = end - hotStart;
+            maxHotRecords = Math.max(MIN_HOT_RECORDS, Math.min(maxHotRecords, hot) / 2);
+            limit = maxHotRecords;
+            spill = planSpill();
+        }
+        spillAll(spill);
+        return limit;
+    }
+    
+    // Current hot window limit, for the HeapPressureMonitor
+    synchronized int getHotWindowLimit() {
+        return maxHotRecords;
     }
     
     /**
-     * Add a new weight measurement record
-     * @param date Date of measurement
-     * @param time Time of measurement
-     * @param weight Weight value in kg
+     * @return Records currently held in the heap
      */
-    public void addRecord(String date, String time, double weight) {
-        WeightRecord record = new WeightRecord(date, time, weight);
-        records.add(record);
-        
-        // Notify listeners
-        for (DataListener listener : listeners) {
-            listener.onNewData(record.getTimestampInMillis(), weight);
+    public synchronized int getHotRecordCount() {
+        return end - hotStart;
+    }
+    
+    /**
+     * @return Records moved to disk segments
+     */
+    public synchronized int getSpilledRecordCount() {
+        return cold.count();
+    }
+    
+    /**
+     * Attach a journal used by this store alone: its recovered records are
+     * loaded in front of the current ones and every new record is appended to
+     * it from now on. Stores of a DeviceRegistry share one journal through
+     * {@link DeviceRegistry#attachJournal} instead.
+     * @param journal Journal to replay and append to
+     * @return Number of records recovered from the journal
+     * @throws IOException if the journal cannot be replayed
+     */
+    public long attachJournal(SampleJournal journal) throws IOException {
+        Snapshot pending = beginRecovery();
+        long recovered = journal.replay((timestamp, weightCentigrams, tag, flags) -> recover(timestamp,
+                weightCentigrams, flags));
+        endRecovery(journal, false, pending);
+        return recovered;
+    }
+    
+    // Recovery: beginRecovery, recover for every journal record, then endRecovery.
+    // The columns are rebuilt fresh so snapshots taken before keep their contents.
+    // Records go through the retention limits one at a time, so a journal larger
+    // than the heap is recovered into the hot window plus spilled segments.
+    synchronized Snapshot beginRecovery() {
+        Snapshot pending = snapshot();
+        resetColumns();
+        return pending;
+    }
+    
+    // nanoTime does not survive a restart, so recovered records carry no receive stamp
+    void recover(long timestamp, int weightCentigrams, int flags) {
+        Snapshot spill;
+        synchronized (this) {
+            if ((flags & SampleJournal.FLAG_CLEARED) != 0) {
+                resetColumns();
+            } else {
+                appendColumns(timestamp, weightCentigrams, NOT_RECEIVED);
+            }
+            spill = planSpill();
         }
+        spillAll(spill);
+    }
+    
+    // Records taken before the journal was attached follow the recovered ones. Their
+    // old segments are deleted by the SpillStore once no snapshot reads them.
+    void endRecovery(SampleJournal journal, boolean shared, Snapshot pending) {
+        synchronized (this) {
+            this.journal = journal;
+            this.journalShared = shared;
+        }
+        if (pending == null) {
+            return;
+        }
+        for (int i = 0; i < pending.size(); i++) {
+            Snapshot spill;
+            synchronized (this) {
+                appendColumns(pending.getTimestamp(i), pending.getCentigrams(i), pending.getReceiveNanos(i));
+                appendToJournal(pending.getTimestamp(i), pending.getCentigrams(i), DeviceRegistry.UNTAGGED, 0);
+                spill = planSpill();
+            }
+            spillAll(spill);
+        }
+    }
+    
+    // Caller holds the lock
+    private void resetColumns() {
+        timestamps = new long[INITIAL_CAPACITY];
+        centigrams = new int[INITIAL_CAPACITY];
+        receivedNanos = new long[INITIAL_CAPACITY];
+        hotStart = 0;
+        end = 0;
+        newestTimestamp = Long.MIN_VALUE;
+        cold = SpillStore.Segments.EMPTY;
+        generation++;
+        rollups.clear();
+        stats.clear();
+    }
+    
+    /**
+     * Stop appending to the journal, flushing it first
+     */
+    public void detachJournal() {
+        SampleJournal detached = releaseJournal();
+        if (detached != null) {
+            detached.close();
+        }
+    }
+    
+    // Stop appending without closing, for a journal shared with other stores
+    synchronized SampleJournal releaseJournal() {
+        SampleJournal detached = journal;
+        journal = null;
+        return detached;
+    }
+    
+    // Address recorded in the journal for samples that are not tagged with one
+    synchronized void setDevice(long device) {
+        this.device = device;
+    }
+    
+    /**
+     * Add a listener to be notified when new data arrives. It is called on its
+     * own thread; if it falls behind by more than DEFAULT_LISTENER_QUEUE samples
+     * the oldest pending ones are dropped.
+     * @param listener The listener to add
+     * @return Handle used to unsubscribe
+     */
+    public DataDispatcher.Subscription addDataListener(DataListener listener) {
+        return subscribe(listener, DataDispatcher.Policy.DROP_OLDEST, DEFAULT_LISTENER_QUEUE);
     }
     
     /**
-     * Add a listener to be notified when new data arrives
+     * Add a listener with its own bounded queue and delivery thread
      * @param listener The listener to add
+     * @param policy What to do when the listener falls behind
+     * @param capacity Queue length
+     * @return Handle used to unsubscribe
      */
-    public void addDataListener(DataListener listener) {
-        listeners.add(listener);
+    public DataDispatcher.Subscription subscribe(DataListener listener, DataDispatcher.Policy policy, int capacity) {
+        return dispatcher.subscribe(listener, policy, capacity);
     }
     
     /**
@@ -96,84 +442,518 @@ public class DataLogger {
      * @param listener The listener to remove
      */
     public void removeDataListener(DataListener listener) {
-        listeners.remove(listener);
+        dispatcher.unsubscribe(listener);
+    }
+    
+    /**
+     * @return Samples waiting to be delivered to listeners
+     */
+    public long getListenerQueueDepth() {
+        return dispatcher.getQueuedCount();
+    }
+    
+    /**
+     * @return Samples listeners missed because their queue was full
+     */
+    public long getListenerDrops() {
+        return dispatcher.getDroppedCount();
     }
     
     /**
      * Clear all stored records
      */
-    public void clearRecords() {
-        records.clear();
+    public synchronized void clearRecords() {
+        resetColumns();
+        if (spillStore != null) {
+            // Snapshots taken before still read the dropped segments until they are collected
+            spillStore.clear();
+        }
+        
+        // A cleared log must not come back on the next start. A shared journal
+        // still holds other devices, so it gets a marker instead.
+        if (journal != null && journalShared) {
+            appendToJournal(System.currentTimeMillis(), 0, DeviceRegistry.UNTAGGED, SampleJournal.FLAG_CLEARED);
+        } else if (journal != null) {
+            try {
+                journal.clear();
+            } catch (IOException e) {
+                System.out.println("Failed to clear journal: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * @return Number of stored records
+     */
+    public synchronized int size() {
+        return cold.count() + end - hotStart;
+    }
+    
+    /**
+     * @param index Record index, 0 is the oldest
+     * @return Timestamp in milliseconds since epoch
+     */
+    public long getTimestamp(int index) {
+        return snapshot().getTimestamp(index);
+    }
+    
+    /**
+     * @param index Record index, 0 is the oldest
+     * @return Weight in hundredths of a gram
+     */
+    public int getCentigrams(int index) {
+        return snapshot().getCentigrams(index);
+    }
+    
+    /**
+     * @param index Record index, 0 is the oldest
+     * @return System.nanoTime() when the record was received, or {@link #NOT_RECEIVED}
+     */
+    public long getReceiveNanos(int index) {
+        return snapshot().getReceiveNanos(index);
+    }
+    
+    /**
+     * Place a receive stamp on the wall clock
+     * @param receiveNanos System.nanoTime() value from this JVM
+     * @return Microseconds since epoch
+     */
+    public static long receiveEpochMicros(long receiveNanos) {
+        return CLOCK_ANCHOR_MILLIS * 1000 + (receiveNanos - CLOCK_ANCHOR_NANOS) / 1000;
     }
     
     /**
      * Get current records
      * @return Copy of the records list
+     * @deprecated Copies every record into objects; read a {@link #snapshot()} or {@link #range} instead
      */
+    @Deprecated
     public List<WeightRecord> getRecords() {
-        return new ArrayList<>(records); // Return a copy to prevent modification
+        Snapshot snapshot = snapshot();
+        List<WeightRecord> records = new ArrayList<>(snapshot.size());
+        for (int i = 0; i < snapshot.size(); i++) {
+            records.add(new WeightRecord(snapshot.getTimestamp(i), snapshot.getCentigrams(i)));
+        }
+        return records;
+    }
+    
+    /**
+     * Take a stable view of the records stored so far. Appends never touch
+     * existing slots, growth copies into new arrays and spilled records stay in
+     * the old slots, so the snapshot stays consistent while ingest continues.
+     * @return Snapshot of the current records
+     */
+    public synchronized Snapshot snapshot() {
+        return hotSnapshot();
+    }
+    
+    /**
+     * Take a stable view of the records stored so far within a time range,
+     * found by binary search without copying
+     * @param from Inclusive lower bound in milliseconds since epoch
+     * @param to Exclusive upper bound in milliseconds since epoch
+     * @return Snapshot of the records in [from, to)
+     */
+    public Snapshot range(long from, long to) {
+        return snapshot().between(from, to);
+    }
+    
+    /**
+     * Session count, min, max, mean and standard deviation, and the same over
+     * the last smartscale.statsWindowMs of data. Maintained on append, so this
+     * costs the same however many records are stored.
+     * @return Current statistics
+     */
+    public synchronized RunningStats.Summary getStatistics() {
+        return stats.summary();
+    }
+    
+    /**
+     * Read precomputed aggregates instead of raw samples. The coarsest rollup level
+     * whose buckets are not longer than the requested resolution is used. The
+     * 1 s level only covers the records still in the heap.
+     * @param resolutionMillis Longest usable bucket, e.g. the time covered by one pixel
+     * @param from Inclusive lower bound in milliseconds since epoch
+     * @param to Exclusive upper bound in milliseconds since epoch
+     * @param consumer Receiver of the buckets, called under the logger lock
+     * @return Bucket length used in milliseconds, or 0 if the resolution is finer
+     *         than any level covering the range and the raw samples should be read instead
+     */
+    public synchronized long readRollups(long resolutionMillis, long from, long to,
+            RollupPyramid.BucketConsumer consumer) {
+        int level = rollups.levelFor(resolutionMillis);
+        if (level < 0 || (level == 0 && from < rollups.finestStart() && cold.count() > 0)) {
+            return 0;
+        }
+        rollups.query(level, from, to, consumer);
+        return RollupPyramid.LEVEL_MILLIS[level];
     }
     
     /**
-     * Export data to CSV file
-     * @param parent Parent component for dialog boxes
-     * @return true if export was successful, false otherwise
+     * Count, min, max and mean of the records in a time range, however long.
+     * The rollup buckets lying completely inside the range are read at the
+     * coarsest level that fits, and raw records only for the partial buckets
+     * at the two ends, so a day costs a few hundred buckets and at most two
+     * seconds of records instead of every record.
+     * @param from Inclusive lower bound in milliseconds since epoch
+     * @param to Exclusive upper bound in milliseconds since epoch
+     * @return Summary of the records in [from, to)
      */
-    public boolean exportToCSV(JFrame parent) {
-        if (records.isEmpty()) {
-            JOptionPane.showMessageDialog(parent, 
-                    "No data to export", 
-                    "Export Error", 
-                    JOptionPane.WARNING_MESSAGE);
-            return false;
+    public RangeSummary summarize(long from, long to) {
+        RangeSummary summary = new RangeSummary();
+        // Up to two partial ranges per level, read from the snapshot outside the lock
+        long[] edges = new long[4 * RollupPyramid.LEVEL_MILLIS.length];
+        int[] edgeCount = {0};
+        Snapshot raw;
+        synchronized (this) {
+            raw = snapshot();
+            if (newestTimestamp != Long.MIN_VALUE) {
+                cover(Math.max(from, rollups.firstBucketStart()), Math.min(to, newestTimestamp + 1),
+                        RollupPyramid.LEVEL_MILLIS.length - 1, summary, edges, edgeCount);
+            }
+        }
+        for (int e = 0; e < edgeCount[0]; e += 2) {
+            Snapshot part = raw.between(edges[e], edges[e + 1]);
+            for (int i = 0; i < part.size(); i++) {
+                summary.add(part.getCentigrams(i));
+            }
+        }
+        return summary;
+    }
+    
+    // Caller holds the lock. Whole buckets of this level, finer levels for the ends.
+    // The 1 s level no longer covers spilled time, whose ends are read raw instead.
+    private void cover(long from, long to, int level, RangeSummary summary, long[] edges, int[] edgeCount) {
+        if (from >= to) {
+            return;
+        }
+        if (level < 0 || (level == 0 && to <= rollups.finestStart())) {
+            edges[edgeCount[0]++] = from;
+            edges[edgeCount[0]++] = to;
+            return;
+        }
+        if (level == 0 && from < rollups.finestStart()) {
+            cover(from, rollups.finestStart(), -1, summary, edges, edgeCount);
+            cover(rollups.finestStart(), to, 0, summary, edges, edgeCount);
+            return;
+        }
+        long width = RollupPyramid.LEVEL_MILLIS[level];
+        long first = Math.floorDiv(from, width) * width;
+        if (first < from) {
+            first += width;
+        }
+        long last = Math.floorDiv(to, width) * width;
+        if (first >= last) {
+            cover(from, to, level - 1, summary, edges, edgeCount);
+            return;
+        }
+        cover(from, first, level - 1, summary, edges, edgeCount);
+        rollups.query(level, first, last, summary);
+        cover(last, to, level - 1, summary, edges, edgeCount);
+    }
+    
+    /**
+     * @return Timestamp of the newest record in milliseconds since epoch, Long.MIN_VALUE if there is none
+     */
+    public synchronized long getNewestTimestamp() {
+        return newestTimestamp;
+    }
+    
+    /**
+     * Append many records at once, e.g. when loading an archive. Listeners are
+     * not notified per record and the records carry no receive stamp. Batches
+     * go through the retention limits {@link #IMPORT_CHUNK} records at a time,
+     * so a caller streaming a large archive in such batches never holds more
+     * than one of them in the heap besides the hot window.
+     * @param newTimestamps Timestamps in milliseconds since epoch, in order
+     * @param newCentigrams Weights in hundredths of a gram
+     * @param count Number of records to take from the arrays
+     * @throws IllegalArgumentException if the records are out of order or older than the newest stored one
+     */
+    public void addRecords(long[] newTimestamps, int[] newCentigrams, int count) {
+        synchronized (this) {
+            long previous = newestTimestamp;
+            for (int i = 0; i < count; i++) {
+                if (newTimestamps[i] < previous) {
+                    throw new IllegalArgumentException(i == 0
+                            ? "Records start before the newest stored record"
+                            : "Records are not in timestamp order at index " + i);
+                }
+                previous = newTimestamps[i];
+            }
+        }
+        for (int from = 0; from < count; from += IMPORT_CHUNK) {
+            int to = Math.min(count, from + IMPORT_CHUNK);
+            Snapshot spill;
+            synchronized (this) {
+                appendBatch(newTimestamps, newCentigrams, from, to);
+                spill = planSpill();
+            }
+            spillAll(spill);
+        }
+    }
+    
+    // Caller holds the lock. Records [from, to) of the arrays, already checked to be in order.
+    private void appendBatch(long[] newTimestamps, int[] newCentigrams, int from, int to) {
+        int count = to - from;
+        // Another writer may have stored a newer record since the check
+        long first = Math.max(newTimestamps[from], newestTimestamp);
+        ensureCapacity(count);
+        System.arraycopy(newTimestamps, from, timestamps, end, count);
+        System.arraycopy(newCentigrams, from, centigrams, end, count);
+        Arrays.fill(receivedNanos, end, end + count, NOT_RECEIVED);
+        for (int i = end; i < end + count && timestamps[i] < first; i++) {
+            timestamps[i] = first;
+        }
+        for (int i = end; i < end + count; i++) {
+            rollups.add(timestamps[i], centigrams[i]);
+            stats.add(timestamps[i], centigrams[i]);
+            appendToJournal(timestamps[i], centigrams[i], DeviceRegistry.UNTAGGED, SampleJournal.FLAG_IMPORTED);
+        }
+        end += count;
+        newestTimestamp = timestamps[end - 1];
+    }
+    
+    /**
+     * Immutable view of a contiguous run of records, by default the first
+     * {@link #size()} ones. Views share the logger's columns and spilled
+     * segments; narrowing one with {@link #between} or {@link #slice} copies
+     * nothing. Index 0 is the first record of the view.
+     */
+    public static final class Snapshot {
+        // Records [0, cold.count()) of the logger are spilled, record i after them
+        // is at i + hotShift in the columns. offset and size use the logger's indices.
+        private final SpillStore.Segments cold;
+        private final long[] timestamps;
+        private final int[] centigrams;
+        private final long[] receivedNanos;
+        private final int hotShift;
+        private final int offset;
+        private final int size;
+        private final long generation;
+        
+        private Snapshot(SpillStore.Segments cold, long[] timestamps, int[] centigrams, long[] receivedNanos,
+                int hotShift, int offset, int size, long generation) {
+            this.cold = cold;
+            this.timestamps = timestamps;
+            this.centigrams = centigrams;
+            this.receivedNanos = receivedNanos;
+            this.hotShift = hotShift;
+            this.offset = offset;
+            this.size = size;
+            this.generation = generation;
         }
         
-        JFileChooser fileChooser = new JFileChooser();
-        fileChooser.setDialogTitle("Save Weight Data");
+        public int size() {
+            return size;
+        }
+        
+        /**
+         * @return Number of times the logger had been cleared when the snapshot was taken
+         */
+        public long getGeneration() {
+            return generation;
+        }
         
-        // Set default file name with timestamp
-        SimpleDateFormat formatter = new SimpleDateFormat("yyyyMMdd_HHmmss");
-        String defaultFileName = "weight_data_" + formatter.format(new Date()) + ".csv";
-        fileChooser.setSelectedFile(new File(defaultFileName));
+        public long getTimestamp(int index) {
+            int record = offset + Objects.checkIndex(index, size);
+            return record < cold.count() ? cold.getTimestamp(record) : timestamps[record + hotShift];
+        }
         
-        // Set filter for CSV files
-        FileNameExtensionFilter filter = new FileNameExtensionFilter("CSV Files (*.csv)", "csv");
-        fileChooser.setFileFilter(filter);
+        public int getCentigrams(int index) {
+            int record = offset + Objects.checkIndex(index, size);
+            return record < cold.count() ? cold.getCentigrams(record) : centigrams[record + hotShift];
+        }
         
-        int userSelection = fileChooser.showSaveDialog(parent);
+        /**
+         * @return System.nanoTime() when the record was received, or {@link DataLogger#NOT_RECEIVED}
+         *         for imported and recovered records
+         */
+        public long getReceiveNanos(int index) {
+            int record = offset + Objects.checkIndex(index, size);
+            return record < cold.count() ? cold.getReceiveNanos(record) : receivedNanos[record + hotShift];
+        }
         
-        if (userSelection == JFileChooser.APPROVE_OPTION) {
-            File fileToSave = fileChooser.getSelectedFile();
-            
-            // Add .csv extension if not already present
-            if (!fileToSave.getAbsolutePath().toLowerCase().endsWith(".csv")) {
-                fileToSave = new File(fileToSave.getAbsolutePath() + ".csv");
+        /**
+         * @param index Record index
+         * @return true if reading the record needs no disk access, false if it is
+         *         in a spilled segment that would have to be decoded first
+         */
+        public boolean isInMemory(int index) {
+            int record = offset + Objects.checkIndex(index, size);
+            return record >= cold.count() || cold.isDecoded(record);
+        }
+        
+        /**
+         * Binary search for a time; records are in timestamp order
+         * @param timestamp Time in milliseconds since epoch
+         * @return Index of the first record at or after the timestamp, size() if there is none
+         */
+        public int indexOf(long timestamp) {
+            int split = Math.min(Math.max(cold.count(), offset), offset + size);
+            if (offset < split) {
+                int found = cold.indexOf(timestamp, offset, split);
+                if (found < split) {
+                    return found - offset;
+                }
             }
-            
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(fileToSave))) {
-                // Write header
-                writer.write("Date,Time,Weight (kg)");
-                writer.newLine();
-                
-                // Write data
-                for (WeightRecord record : records) {
-                    writer.write(record.toString());
-                    writer.newLine();
+            int low = split + hotShift;
+            int high = offset + size + hotShift;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (timestamps[mid] < timestamp) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
                 }
-                
-                JOptionPane.showMessageDialog(parent, 
-                        "Data exported successfully to:\n" + fileToSave.getPath(), 
-                        "Export Complete", 
-                        JOptionPane.INFORMATION_MESSAGE);
-                return true;
-            } catch (IOException e) {
-                JOptionPane.showMessageDialog(parent, 
-                        "Error exporting data: " + e.getMessage(), 
-                        "Export Error", 
-                        JOptionPane.ERROR_MESSAGE);
-                return false;
             }
+            return low - hotShift - offset;
+        }
+        
+        /**
+         * Narrow the view to a time range
+         * @param from Inclusive lower bound in milliseconds since epoch
+         * @param to Exclusive upper bound in milliseconds since epoch
+         * @return View of the records in [from, to), empty if there are none
+         */
+        public Snapshot between(long from, long to) {
+            int first = indexOf(from);
+            return slice(first, Math.max(first, indexOf(to)));
+        }
+        
+        /**
+         * Narrow the view to a run of records
+         * @param fromIndex Inclusive first index
+         * @param toIndex Exclusive last index
+         * @return View of records [fromIndex, toIndex) of this view
+         */
+        public Snapshot slice(int fromIndex, int toIndex) {
+            Objects.checkFromToIndex(fromIndex, toIndex, size);
+            return new Snapshot(cold, timestamps, centigrams, receivedNanos, hotShift, offset + fromIndex,
+                    toIndex - fromIndex, generation);
+        }
+    }
+    
+    /**
+     * Count, min, max and mean over a time range, in grams. Min, max and mean
+     * are 0 when the range holds no records.
+     */
+    public static final class RangeSummary implements RollupPyramid.BucketConsumer {
+        private long count = 0;
+        private long sum = 0;
+        private int min = Integer.MAX_VALUE;
+        private int max = Integer.MIN_VALUE;
+        
+        private RangeSummary() {
+        }
+        
+        @Override
+        public void onBucket(long start, long minTimestamp, int minCentigrams, long maxTimestamp, int maxCentigrams,
+                double meanCentigrams, int count, int lastCentigrams) {
+            this.count += count;
+            sum += Math.round(meanCentigrams * count);
+            min = Math.min(min, minCentigrams);
+            max = Math.max(max, maxCentigrams);
+        }
+        
+        private void add(int centigrams) {
+            count++;
+            sum += centigrams;
+            min = Math.min(min, centigrams);
+            max = Math.max(max, centigrams);
+        }
+        
+        /**
+         * @return Records in the range
+         */
+        public long getCount() {
+            return count;
+        }
+        
+        public double getMin() {
+            return count > 0 ? min / 100.0 : 0;
+        }
+        
+        public double getMax() {
+            return count > 0 ? max / 100.0 : 0;
+        }
+        
+        public double getMean() {
+            return count > 0 ? sum / 100.0 / count : 0;
+        }
+    }
+    
+    /**
+     * Hot window limits parsed from -Dsmartscale.retention, e.g.
+     * "samples:500000", "duration:3600000", "bytes:64m" or several of them
+     * comma separated, where the tightest wins. "none" keeps everything in the heap.
+     */
+    static final class Retention {
+        // Columns take 20 bytes per record and up to twice that while growing. The
+        // 1 s rollups only cover the hot window, so they stay a fraction of that.
+        private static final int BYTES_PER_RECORD = 40;
+        
+        final int maxRecords;
+        final long maxMillis;
+        
+        private Retention(int maxRecords, long maxMillis) {
+            this.maxRecords = maxRecords;
+            this.maxMillis = maxMillis;
+        }
+        
+        static Retention fromSystemProperties() {
+            String spec = System.getProperty("smartscale.retention");
+            try {
+                return parse(spec);
+            } catch (IllegalArgumentException e) {
+                System.out.println("Ignoring smartscale.retention=" + spec + ": " + e.getMessage());
+                return parse(null);
+            }
+        }
+        
+        static Retention parse(String spec) {
+            int maxRecords = Integer.MAX_VALUE;
+            long maxMillis = 0;
+            if (spec == null || spec.isBlank() || spec.trim().equalsIgnoreCase("none")) {
+                return new Retention(maxRecords, maxMillis);
+            }
+            for (String limit : spec.split(",")) {
+                String[] parts = limit.trim().split(":", 2);
+                if (parts.length < 2) {
+                    throw new IllegalArgumentException("Retention limit needs a value: " + limit);
+                }
+                String value = parts[1].trim().toLowerCase();
+                switch (parts[0].trim().toLowerCase()) {
+                    case "samples":
+                        maxRecords = Math.min(maxRecords, Integer.parseInt(value));
+                        break;
+                    case "duration":
+                        long millis = Long.parseLong(value);
+                        maxMillis = maxMillis == 0 ? millis : Math.min(maxMillis, millis);
+                        break;
+                    case "bytes":
+                        long multiplier = 1;
+                        if (value.endsWith("k")) {
+                            multiplier = 1L << 10;
+                        } else if (value.endsWith("m")) {
+                            multiplier = 1L << 20;
+                        } else if (value.endsWith("g")) {
+                            multiplier = 1L << 30;
+                        }
+                        if (multiplier > 1) {
+                            value = value.substring(0, value.length() - 1);
+                        }
+                        long records = Long.parseLong(value) * multiplier / BYTES_PER_RECORD;
+                        maxRecords = (int) Math.min(maxRecords, records);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown retention limit: " + parts[0]);
+                }
+            }
+            if (maxRecords < MIN_SPILL || maxMillis < 0) {
+                throw new IllegalArgumentException("Retention keeps too little in memory: " + spec);
+            }
+            return new Retention(maxRecords, maxMillis);
         }
-                return false; // User canceled
     }
 }
@@ -0,0 +1,164 @@
+package com.panama_hitek;
+
+/**
+ * Reduces a range of stored samples to roughly one point per horizontal pixel.
+ *
+ * LTTB (Largest-Triangle-Three-Buckets) keeps the points that preserve the
+ * visual shape of the line; MIN_MAX keeps the lowest and highest sample of
+ * each pixel column so that no spike is lost. Both run in a single pass over
+ * the primitive columns of a snapshot and write into caller-provided arrays.
+ */
+public class Decimator {
+
+    public enum Mode {
+        LTTB,
+        MIN_MAX
+    }
+
+    private Decimator() {
+    }
+
+    /**
+     * @param mode Decimation mode
+     * @param pixels Target width in pixels
+     * @return Size the output arrays must have
+     */
+    public static int maxOutput(Mode mode, int pixels) {
+        return mode == Mode.MIN_MAX ? pixels * 2 + 2 : Math.max(pixels, 3);
+    }
+
+    /**
+     * Decimate records [from, to) of a snapshot
+     * @param mode Decimation mode
+     * @param snapshot Records in timestamp order
+     * @param from First record index, inclusive
+     * @param to Last record index, exclusive
+     * @param pixels Target width in pixels
+     * @param outX Receives timestamps in milliseconds, at least maxOutput(mode, pixels) long
+     * @param outY Receives weights (centigrams / 100, as plotted by the chart), same length as outX
+     * @return Number of points written
+     */
+    public static int decimate(Mode mode, DataLogger.Snapshot snapshot, int from, int to, int pixels,
+            double[] outX, double[] outY) {
+        if (mode == Mode.MIN_MAX) {
+            return minMax(snapshot, from, to, pixels, outX, outY);
+        }
+        return lttb(snapshot, from, to, Math.max(pixels, 3), outX, outY);
+    }
+
+    /**
+     * Largest-Triangle-Three-Buckets down to the given number of points
+     */
+    static int lttb(DataLogger.Snapshot snapshot, int from, int to, int threshold, double[] outX, double[] outY) {
+        int length = to - from;
+        if (length <= threshold) {
+            return copy(snapshot, from, to, outX, outY);
+        }
+        // Work relative to the first timestamp to keep the areas well inside double precision
+        long origin = snapshot.getTimestamp(from);
+        double every = (double) (length - 2) / (threshold - 2);
+        int n = 0;
+        int a = from;
+        outX[n] = snapshot.getTimestamp(a);
+        outY[n++] = snapshot.getCentigrams(a) / 100.0;
+
+        for (int i = 0; i < threshold - 2; i++) {
+            // Average of the next bucket is the third corner of the triangle
+            int avgFrom = from + (int) ((i + 1) * every) + 1;
+            int avgTo = Math.min(from + (int) ((i + 2) * every) + 1, to);
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = avgFrom; j < avgTo; j++) {
+                avgX += snapshot.getTimestamp(j) - origin;
+                avgY += snapshot.getCentigrams(j);
+            }
+            int avgCount = avgTo - avgFrom;
+            if (avgCount > 0) {
+                avgX /= avgCount;
+                avgY /= avgCount;
+            } else {
+                avgX = snapshot.getTimestamp(to - 1) - origin;
+                avgY = snapshot.getCentigrams(to - 1);
+            }
+
+            int rangeFrom = from + (int) (i * every) + 1;
+            int rangeTo = from + (int) ((i + 1) * every) + 1;
+            double ax = snapshot.getTimestamp(a) - origin;
+            double ay = snapshot.getCentigrams(a);
+            double maxArea = -1;
+            int chosen = rangeFrom;
+            for (int j = rangeFrom; j < rangeTo; j++) {
+                double area = Math.abs((ax - avgX) * (snapshot.getCentigrams(j) - ay)
+                        - (ax - (snapshot.getTimestamp(j) - origin)) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = j;
+                }
+            }
+            outX[n] = snapshot.getTimestamp(chosen);
+            outY[n++] = snapshot.getCentigrams(chosen) / 100.0;
+            a = chosen;
+        }
+
+        outX[n] = snapshot.getTimestamp(to - 1);
+        outY[n++] = snapshot.getCentigrams(to - 1) / 100.0;
+        return n;
+    }
+
+    /**
+     * Lowest and highest sample of every pixel column, in time order
+     */
+    static int minMax(DataLogger.Snapshot snapshot, int from, int to, int pixels, double[] outX, double[] outY) {
+        if (to - from <= pixels * 2) {
+            return copy(snapshot, from, to, outX, outY);
+        }
+        long start = snapshot.getTimestamp(from);
+        long span = snapshot.getTimestamp(to - 1) - start + 1;
+        int n = 0;
+        int bucket = -1;
+        int minIndex = from;
+        int maxIndex = from;
+        for (int i = from; i < to; i++) {
+            int b = (int) ((snapshot.getTimestamp(i) - start) * pixels / span);
+            if (b != bucket) {
+                if (bucket >= 0) {
+                    n = emitMinMax(snapshot, minIndex, maxIndex, outX, outY, n);
+                }
+                bucket = b;
+                minIndex = i;
+                maxIndex = i;
+            } else {
+                int centigrams = snapshot.getCentigrams(i);
+                if (centigrams < snapshot.getCentigrams(minIndex)) {
+                    minIndex = i;
+                }
+                if (centigrams > snapshot.getCentigrams(maxIndex)) {
+                    maxIndex = i;
+                }
+            }
+        }
+        return emitMinMax(snapshot, minIndex, maxIndex, outX, outY, n);
+    }
+
+    private static int emitMinMax(DataLogger.Snapshot snapshot, int minIndex, int maxIndex,
+            double[] outX, double[] outY, int n) {
+        int first = Math.min(minIndex, maxIndex);
+        int second = Math.max(minIndex, maxIndex);
+        outX[n] = snapshot.getTimestamp(first);
+        outY[n++] = snapshot.getCentigrams(first) / 100.0;
+        if (second != first) {
+            outX[n] = snapshot.getTimestamp(second);
+            outY[n++] = snapshot.getCentigrams(second) / 100.0;
+        }
+        return n;
+    }
+
+    private static int copy(DataLogger.Snapshot snapshot, int from, int to, double[] outX, double[] outY) {
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            outX[n] = snapshot.getTimestamp(i);
+            outY[n++] = snapshot.getCentigrams(i) / 100.0;
+        }
+        return n;
+    }
+}
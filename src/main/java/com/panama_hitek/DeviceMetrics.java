@@ -0,0 +1,122 @@
+package com.panama_hitek;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-scale ingest counters. Rates are derived once per second by the
+ * registry's ticker from a history of the sample count.
+ */
+public class DeviceMetrics implements DeviceMetricsMBean {
+
+    private static final int HISTORY_SECONDS = 60;
+
+    private final long address;
+    private final DataLogger dataLogger;
+    private final LongAdder samplesStored = new LongAdder();
+
+    // Sample count at each of the last ticks, guarded by this
+    private final long[] history = new long[HISTORY_SECONDS + 1];
+    private int ticks = 0;
+
+    DeviceMetrics(long address, DataLogger dataLogger) {
+        this.address = address;
+        this.dataLogger = dataLogger;
+    }
+
+    public void recordStored() {
+        samplesStored.increment();
+    }
+
+    // Called once per second by the registry
+    synchronized void tick() {
+        history[ticks % history.length] = samplesStored.sum();
+        ticks++;
+    }
+
+    DataLogger getDataLogger() {
+        return dataLogger;
+    }
+
+    @Override
+    public String getAddress() {
+        return address == DeviceRegistry.UNTAGGED ? "untagged" : DeviceRegistry.formatAddress(address);
+    }
+
+    @Override
+    public long getSamplesStored() {
+        return samplesStored.sum();
+    }
+
+    @Override
+    public synchronized double getSamplesPerSecond() {
+        return rateOver(1);
+    }
+
+    @Override
+    public synchronized double getSamplesPerSecondLastMinute() {
+        return rateOver(HISTORY_SECONDS);
+    }
+
+    // Caller holds the lock
+    private double rateOver(int seconds) {
+        int span = Math.min(seconds, ticks - 1);
+        if (span <= 0) {
+            return 0;
+        }
+        long newest = history[(ticks - 1) % history.length];
+        long oldest = history[(ticks - 1 - span) % history.length];
+        return (newest - oldest) / (double) span;
+    }
+
+    @Override
+    public int getRecords() {
+        return dataLogger.size();
+    }
+
+    @Override
+    public int getSpilledRecords() {
+        return dataLogger.getSpilledRecordCount();
+    }
+
+    @Override
+    public long getListenerQueueDepth() {
+        return dataLogger.getListenerQueueDepth();
+    }
+
+    @Override
+    public long getListenerDrops() {
+        return dataLogger.getListenerDrops();
+    }
+
+    // Weights in grams, from the logger's running statistics
+
+    @Override
+    public double getWeightMean() {
+        return dataLogger.getStatistics().getMean();
+    }
+
+    @Override
+    public double getWeightStdDev() {
+        return dataLogger.getStatistics().getStdDev();
+    }
+
+    @Override
+    public double getWindowWeightMin() {
+        return dataLogger.getStatistics().getWindowMin();
+    }
+
+    @Override
+    public double getWindowWeightMax() {
+        return dataLogger.getStatistics().getWindowMax();
+    }
+
+    @Override
+    public double getWindowWeightMean() {
+        return dataLogger.getStatistics().getWindowMean();
+    }
+
+    @Override
+    public double getWindowWeightStdDev() {
+        return dataLogger.getStatistics().getWindowStdDev();
+    }
+}
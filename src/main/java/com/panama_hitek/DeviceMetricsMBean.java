@@ -0,0 +1,35 @@
+package com.panama_hitek;
+
+/**
+ * Ingest statistics of one scale, published as com.panama_hitek:type=Device,address=...
+ */
+public interface DeviceMetricsMBean {
+
+    String getAddress();
+
+    long getSamplesStored();
+
+    double getSamplesPerSecond();
+
+    double getSamplesPerSecondLastMinute();
+
+    int getRecords();
+
+    int getSpilledRecords();
+
+    long getListenerQueueDepth();
+
+    long getListenerDrops();
+
+    double getWeightMean();
+
+    double getWeightStdDev();
+
+    double getWindowWeightMin();
+
+    double getWindowWeightMax();
+
+    double getWindowWeightMean();
+
+    double getWindowWeightStdDev();
+}
@@ -0,0 +1,218 @@
+package com.panama_hitek;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Per-device stores for a multiplexed acquisition.
+ *
+ * One scanner process reports samples from several scales, each tagged with
+ * the scale's Bluetooth address. The ingest pipeline asks the registry for the
+ * DataLogger of every address it sees; stores are created on first use, so
+ * every device ingests, charts and exports independently. Addresses are held
+ * as 48-bit numbers so looking one up allocates nothing. All stores append to
+ * one shared journal, tagged by address, which is replayed into the matching
+ * stores on the next start.
+ */
+public class DeviceRegistry {
+
+    // Notified when a device reports its first sample, on the ingest thread
+    public interface DeviceListener {
+        void onDeviceAdded(long address, DataLogger dataLogger);
+    }
+
+    /** Address of samples that carry no device tag */
+    public static final long UNTAGGED = 0;
+
+    private final DataLogger primary;
+    private final Map<Long, DataLogger> loggers = new ConcurrentHashMap<>();
+    private final List<DeviceListener> listeners = new CopyOnWriteArrayList<>();
+    // Shared by every store once attached
+    private volatile SampleJournal journal;
+
+    /**
+     * @param primary Store for untagged samples and for addresses bound to it
+     */
+    public DeviceRegistry(DataLogger primary) {
+        this.primary = primary;
+    }
+
+    /**
+     * Route a device to an existing store
+     * @param address Device address
+     * @param dataLogger Store receiving its samples
+     */
+    public void bind(long address, DataLogger dataLogger) {
+        dataLogger.setDevice(address);
+        loggers.put(address, dataLogger);
+    }
+
+    /**
+     * @param address Device address, or UNTAGGED
+     * @return Store of the device, created if it reports for the first time
+     */
+    public DataLogger loggerFor(long address) {
+        if (address == UNTAGGED) {
+            return primary;
+        }
+        DataLogger dataLogger = loggers.get(address);
+        if (dataLogger != null) {
+            return dataLogger;
+        }
+        DataLogger created = new DataLogger();
+        created.setDevice(address);
+        dataLogger = loggers.putIfAbsent(address, created);
+        if (dataLogger != null) {
+            return dataLogger;
+        }
+        SampleJournal shared = journal;
+        if (shared != null) {
+            created.endRecovery(shared, true, null);
+        }
+        for (DeviceListener listener : listeners) {
+            listener.onDeviceAdded(address, created);
+        }
+        return created;
+    }
+
+    /**
+     * @param address Device address
+     * @return Store of the device, or null if it has not reported yet
+     */
+    public DataLogger get(long address) {
+        return address == UNTAGGED ? primary : loggers.get(address);
+    }
+
+    /**
+     * Recover every store from a journal shared by all devices and keep
+     * appending to it. Records are routed by the address stored with them, so
+     * stores are created for devices that have not reported yet; untagged
+     * records go to the primary store. Records stored before are kept after
+     * the recovered ones.
+     * @param journal Journal to replay and append to
+     * @return Number of records recovered
+     * @throws IOException if the journal cannot be replayed
+     */
+    public synchronized long attachJournal(SampleJournal journal) throws IOException {
+        Map<DataLogger, DataLogger.Snapshot> pending = new IdentityHashMap<>();
+        pending.put(primary, primary.beginRecovery());
+        for (DataLogger dataLogger : loggers.values()) {
+            if (!pending.containsKey(dataLogger)) {
+                pending.put(dataLogger, dataLogger.beginRecovery());
+            }
+        }
+        // Devices report in runs, so the last store is cached
+        long[] lastAddress = {UNTAGGED};
+        DataLogger[] last = {primary};
+        long recovered = journal.replay((timestamp, centigrams, address, flags) -> {
+            if (address != lastAddress[0]) {
+                last[0] = loggerFor(address);
+                lastAddress[0] = address;
+            }
+            last[0].recover(timestamp, centigrams, flags);
+        });
+        this.journal = journal;
+        for (DataLogger dataLogger : loggers.values()) {
+            pending.putIfAbsent(dataLogger, null);
+        }
+        for (Map.Entry<DataLogger, DataLogger.Snapshot> entry : pending.entrySet()) {
+            entry.getKey().endRecovery(journal, true, entry.getValue());
+        }
+        return recovered;
+    }
+
+    /**
+     * Stop appending to the shared journal and close it
+     */
+    public synchronized void detachJournal() {
+        SampleJournal attached = journal;
+        if (attached == null) {
+            return;
+        }
+        journal = null;
+        primary.releaseJournal();
+        for (DataLogger dataLogger : loggers.values()) {
+            dataLogger.releaseJournal();
+        }
+        attached.close();
+    }
+
+    public DataLogger getPrimary() {
+        return primary;
+    }
+
+    /**
+     * @return Addresses with a store, in no particular order
+     */
+    public long[] getAddresses() {
+        return loggers.keySet().stream().mapToLong(Long::longValue).toArray();
+    }
+
+    public void addDeviceListener(DeviceListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeDeviceListener(DeviceListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Parse a Bluetooth address such as "50:FB:19:8A:A0:C2"
+     * @param text Address with ':' or '-' separators
+     * @return The 48-bit address
+     */
+    public static long parseAddress(String text) {
+        byte[] b = text.trim().getBytes(StandardCharsets.US_ASCII);
+        long address = parseAddress(b, 0, b.length);
+        if (address < 0) {
+            throw new IllegalArgumentException("Invalid device address: " + text);
+        }
+        return address;
+    }
+
+    /**
+     * Parse a Bluetooth address in place, without allocating
+     * @param b Buffer holding the text
+     * @param from Index of the first character
+     * @param to Index after the last character
+     * @return The 48-bit address, or -1 if the text is not an address
+     */
+    public static long parseAddress(byte[] b, int from, int to) {
+        if (to - from != 17) {
+            return -1;
+        }
+        long address = 0;
+        for (int i = 0; i < 6; i++) {
+            int p = from + i * 3;
+            int high = Character.digit(b[p], 16);
+            int low = Character.digit(b[p + 1], 16);
+            if (high < 0 || low < 0 || (i < 5 && b[p + 2] != ':' && b[p + 2] != '-')) {
+                return -1;
+            }
+            address = (address << 8) | (high << 4) | low;
+        }
+        return address;
+    }
+
+    /**
+     * @param address 48-bit address
+     * @return Upper-case text form, e.g. "50:FB:19:8A:A0:C2"
+     */
+    public static String formatAddress(long address) {
+        StringBuilder text = new StringBuilder(17);
+        for (int shift = 40; shift >= 0; shift -= 8) {
+            if (text.length() > 0) {
+                text.append(':');
+            }
+            int octet = (int) (address >>> shift) & 0xFF;
+            text.append(Character.toUpperCase(Character.forDigit(octet >> 4, 16)))
+                    .append(Character.toUpperCase(Character.forDigit(octet & 0xF, 16)));
+        }
+        return text.toString();
+    }
+}
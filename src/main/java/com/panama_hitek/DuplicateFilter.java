@@ -0,0 +1,169 @@
+package com.panama_hitek;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Change-detection stage between the decoder and the data logger.
+ *
+ * The scale re-broadcasts the same payload several times per second, so most
+ * advertisements carry no new information. Depending on the policy this filter
+ * drops those repeats, keeping storage, table, chart and export proportional to
+ * real weight changes. Every device is tracked separately, so scales sharing a
+ * scanner do not suppress each other. Driven only by the pipeline's parser
+ * thread.
+ */
+public class DuplicateFilter {
+
+    public enum Policy {
+        /** Keep every sample */
+        NONE,
+        /** Drop samples repeating the last kept weight less than the window after it */
+        EXACT_WINDOW,
+        /** Keep the first sample of every time bucket */
+        TIME_BUCKET,
+        /** Keep a sample when the weight changes or the heartbeat interval has elapsed */
+        ON_CHANGE
+    }
+
+    private final Policy policy;
+    private final long intervalMillis;
+
+    // Per-device state; the most recent device is cached since samples come in runs
+    private final Map<Long, DeviceState> devices = new HashMap<>();
+    private long cachedDevice = DeviceRegistry.UNTAGGED;
+    private DeviceState cached = new DeviceState();
+
+    private volatile long passed = 0;
+    private volatile long suppressed = 0;
+
+    /**
+     * @param policy Suppression policy
+     * @param intervalMillis Window, bucket or heartbeat length depending on the policy
+     */
+    public DuplicateFilter(Policy policy, long intervalMillis) {
+        if (policy != Policy.NONE && intervalMillis <= 0) {
+            throw new IllegalArgumentException("Interval must be positive: " + intervalMillis);
+        }
+        this.policy = policy;
+        this.intervalMillis = intervalMillis;
+        devices.put(cachedDevice, cached);
+    }
+
+    /**
+     * Build a filter from a specification such as "exact:1000", "bucket:1000",
+     * "change:5000" or "none"
+     * @param spec Policy name and interval in milliseconds
+     * @return The configured filter
+     */
+    public static DuplicateFilter parse(String spec) {
+        if (spec == null || spec.isBlank() || spec.trim().equalsIgnoreCase("none")) {
+            return new DuplicateFilter(Policy.NONE, 0);
+        }
+        String[] parts = spec.trim().split(":", 2);
+        long interval = parts.length > 1 ? Long.parseLong(parts[1].trim()) : 1000;
+        switch (parts[0].trim().toLowerCase()) {
+            case "exact":
+                return new DuplicateFilter(Policy.EXACT_WINDOW, interval);
+            case "bucket":
+                return new DuplicateFilter(Policy.TIME_BUCKET, interval);
+            case "change":
+                return new DuplicateFilter(Policy.ON_CHANGE, interval);
+            default:
+                throw new IllegalArgumentException("Unknown duplicate policy: " + parts[0]);
+        }
+    }
+
+    /**
+     * Decide whether an untagged sample is kept
+     * @param timestamp Sample timestamp in milliseconds since epoch
+     * @param centigrams Weight in hundredths of a gram
+     * @return true if the sample should be stored
+     */
+    public boolean accept(long timestamp, int centigrams) {
+        return accept(DeviceRegistry.UNTAGGED, timestamp, centigrams);
+    }
+
+    /**
+     * Decide whether a sample is kept, compared with earlier samples of the same device
+     * @param device Device address, or DeviceRegistry.UNTAGGED
+     * @param timestamp Sample timestamp in milliseconds since epoch
+     * @param centigrams Weight in hundredths of a gram
+     * @return true if the sample should be stored
+     */
+    public boolean accept(long device, long timestamp, int centigrams) {
+        DeviceState state = stateOf(device);
+        boolean keep;
+        if (!state.hasLast) {
+            keep = true;
+        } else {
+            switch (policy) {
+                case EXACT_WINDOW:
+                    // Measured from the last kept sample, so a steady weight is still stored once per window
+                    keep = centigrams != state.lastCentigrams || timestamp - state.lastTimestamp >= intervalMillis;
+                    break;
+                case TIME_BUCKET:
+                    keep = Math.floorDiv(timestamp, intervalMillis) != Math.floorDiv(state.lastTimestamp, intervalMillis);
+                    break;
+                case ON_CHANGE:
+                    keep = centigrams != state.lastCentigrams || timestamp - state.lastTimestamp >= intervalMillis;
+                    break;
+                default:
+                    keep = true;
+                    break;
+            }
+        }
+        if (keep) {
+            state.hasLast = true;
+            state.lastTimestamp = timestamp;
+            state.lastCentigrams = centigrams;
+            passed++;
+        } else {
+            suppressed++;
+        }
+        return keep;
+    }
+
+    private DeviceState stateOf(long device) {
+        if (device != cachedDevice) {
+            cached = devices.computeIfAbsent(device, d -> new DeviceState());
+            cachedDevice = device;
+        }
+        return cached;
+    }
+
+    /**
+     * Forget the last kept sample of every device, e.g. on a new connection
+     */
+    public void reset() {
+        devices.clear();
+        cachedDevice = DeviceRegistry.UNTAGGED;
+        cached = new DeviceState();
+        devices.put(cachedDevice, cached);
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return Number of samples kept
+     */
+    public long getPassedCount() {
+        return passed;
+    }
+
+    /**
+     * @return Number of samples dropped as duplicates
+     */
+    public long getSuppressedCount() {
+        return suppressed;
+    }
+
+    private static final class DeviceState {
+        // Last kept sample
+        boolean hasLast = false;
+        long lastTimestamp;
+        int lastCentigrams;
+    }
+}
@@ -7,104 +7,94 @@ import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
-import javax.swing.SwingUtilities;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 
 public class EnvironmentChecker {
 
     private static final String PYTHON_FOLDER_PREFIX = "python/";
 
+    // Fingerprint of the python/ entries, written after extraction and checkup succeeded
+    private static final String MANIFEST_FILE = "python/.manifest";
+    private static final int COPY_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
 
+
+    /**
+     * Extract and validate the Python environment. Runs on a background thread
+     * while the main window is already showing; exits the application on failure.
+     */
     public static void checkEnvironment() {
-        final JFrameProgress progressDialog = new JFrameProgress();
-        // Show the progress dialog on the EDT
-        SwingUtilities.invokeLater(() -> progressDialog.setVisible(true));
+        System.out.println("Checking for resources in the JAR...");
+        // Check resources root in classpath
+        checkClasspathResources();
         try {
-            System.out.println("Checking for resources in the JAR...");
-            // Check resources root in classpath
-            checkClasspathResources();
-            try {
-                URL codeSourceUrl = EnvironmentChecker.class.getProtectionDomain().getCodeSource().getLocation();
-                System.out.println("Code source URL: " + codeSourceUrl);
-
-                File jarFile = getJarFile(codeSourceUrl);
-                System.out.println("JAR file path: " + jarFile.getAbsolutePath());
+            URL codeSourceUrl = EnvironmentChecker.class.getProtectionDomain().getCodeSource().getLocation();
+            System.out.println("Code source URL: " + codeSourceUrl);
 
-                if (jarFile.getName().endsWith(".jar")) {
-                    System.out.println("Running from JAR: " + jarFile.getAbsolutePath());
+            File jarFile = getJarFile(codeSourceUrl);
+            System.out.println("JAR file path: " + jarFile.getAbsolutePath());
 
-                    // Get the directory where the JAR is located
-                    File outputDir = jarFile.getParentFile();
-                    System.out.println("Python files directory: " + outputDir.getAbsolutePath());
+            if (jarFile.getName().endsWith(".jar")) {
+                System.out.println("Running from JAR: " + jarFile.getAbsolutePath());
 
-                    // Check if Python environment is already set up properly
-                    boolean extractionPerformed = false;
-                    if (isPythonEnvironmentReady(outputDir)) {
-                        System.out.println("Python environment is already set up properly. Skipping extraction.");
+                // Get the directory where the JAR is located
+                File outputDir = jarFile.getParentFile();
+                System.out.println("Python files directory: " + outputDir.getAbsolutePath());
+
+                try (JarFile jar = new JarFile(jarFile)) {
+                    // CRCs and sizes come from the JAR's central directory, nothing is decompressed
+                    Map<String, String> fingerprint = fingerprint(jar);
+                    Map<String, String> manifest = readManifest(outputDir);
+                    if (isUpToDate(outputDir, fingerprint, manifest)) {
+                        System.out.println("Python environment unchanged since the last successful check. "
+                                + "Skipping extraction and checkup.");
                     } else {
-                        System.out.println("Python environment check failed. Proceeding with extraction.");
-                        // Extract Python files from JAR
-                        extractPythonFiles(jarFile, outputDir);
-                        extractionPerformed = true;
-                    }
-
-                    // List resources in JAR for debugging only if extraction was performed
-                    if (extractionPerformed) {
-                        listJarResources(jarFile);
+                        List<JarEntry> changed = changedEntries(jar, fingerprint, manifest, outputDir);
+                        System.out.println("Python environment changed: extracting " + changed.size()
+                                + " of " + fingerprint.size() + " files.");
+                        extractEntries(jar, changed, outputDir);
+                        isPythonEnvironmentReady(outputDir);
+                        writeManifest(outputDir, fingerprint);
                     }
-                } else {
-                    System.out.println("Not running from a JAR file. Running in development environment.");
-
-                    try {
-                        String executionPath = new File(".").getCanonicalPath();
-                     
-                        executionPath = executionPath + File.separator + "target";
-                      String pythonFolder = new File(".").getCanonicalPath() + File.separator + "src" + File.separator + "main" + File.separator + "resources" + File.separator + "python";
-
-     
-    File sourceDir = new File(pythonFolder);
-    File destDir = new File(executionPath + File.separator + "python");
-
-    if (sourceDir.exists() && sourceDir.isDirectory()) {
-        System.out.println("Copying Python folder from: " + sourceDir.getAbsolutePath() + " to " + destDir.getAbsolutePath());
-
-        // Recursively copy files
-        java.nio.file.Files.walk(sourceDir.toPath()).forEach(sourcePath -> {
-            try {
-                java.nio.file.Path targetPath = destDir.toPath().resolve(sourceDir.toPath().relativize(sourcePath));
-                if (sourcePath.toFile().isDirectory()) {
-                    if (!targetPath.toFile().exists()) {
-                        java.nio.file.Files.createDirectories(targetPath);
-                    }
-                } else {
-                    java.nio.file.Files.copy(sourcePath, targetPath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
                 }
-            } catch (IOException e) {
-                System.out.println("Failed to copy file: " + sourcePath + " - " + e.getMessage());
-                System.exit(1);
-            }
-        });
-        System.out.println("Python folder copied successfully.");
-    } else {
-        System.out.println("Source Python folder does not exist: " + sourceDir.getAbsolutePath());
-        System.exit(1);
-    }
-
-                    } catch (IOException e) {
-                        System.out.println("Failed to get execution path: " + e.getMessage());
-                    }
-
+            } else {
+                System.out.println("Not running from a JAR file. Running in development environment.");
+
+                String projectPath = new File(".").getCanonicalPath();
+                File sourceDir = new File(projectPath + File.separator + "src" + File.separator + "main"
+                        + File.separator + "resources" + File.separator + "python");
+                File destDir = new File(projectPath + File.separator + "target" + File.separator + "python");
+
+                if (sourceDir.exists() && sourceDir.isDirectory()) {
+                    System.out.println("Syncing Python folder from: " + sourceDir.getAbsolutePath() + " to " + destDir.getAbsolutePath());
+                    int copied = syncDirectory(sourceDir.toPath(), destDir.toPath());
+                    System.out.println("Python folder synced, " + copied + " files copied.");
+                } else {
+                    System.out.println("Source Python folder does not exist: " + sourceDir.getAbsolutePath());
+                    System.exit(1);
                 }
-            } catch (Exception e) {
-                System.out.println("Unexpected error: " + e.getMessage());
-                e.printStackTrace();
-                System.exit(1);
             }
-        } finally {
-            // Dispose the progress dialog on the EDT
-            SwingUtilities.invokeLater(progressDialog::dispose);
+        } catch (Exception e) {
+            System.out.println("Unexpected error: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
         }
     }
 
@@ -200,29 +190,10 @@ public class EnvironmentChecker {
     }
 
     private static void extractPythonFiles(File jarFile, File outputDir) {
-
- 
-
         try (JarFile jar = new JarFile(jarFile)) {
-            System.out.println("\nExtracting Python resources from JAR:");
-            Enumeration<JarEntry> entries = jar.entries();
-            int extractedCount = 0;
-
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                String entryName = entry.getName();
-
-                // Check if it's a Python-related file we want to extract
-                if (entryName.startsWith(PYTHON_FOLDER_PREFIX) && !entry.isDirectory()) {
-                    System.out.println("Extracting: " + entryName);
-                    extractFile(jar, entry, outputDir, entryName);
-                    extractedCount++;
-                }
-            }
-
-            System.out.println("\nExtracted " + extractedCount + " Python files to: " + outputDir.getAbsolutePath());
-
-   
+            Map<String, String> fingerprint = fingerprint(jar);
+            List<JarEntry> changed = changedEntries(jar, fingerprint, readManifest(outputDir), outputDir);
+            extractEntries(jar, changed, outputDir);
         } catch (IOException e) {
             System.out.println("Error extracting files from JAR: " + e.getMessage());
             e.printStackTrace();
@@ -230,65 +201,174 @@ public class EnvironmentChecker {
         }
     }
 
-    private static void extractFile(JarFile jar, JarEntry entry, File outputDir, String entryName) throws IOException {
-        // Create the target file with directories
-        File targetFile = new File(outputDir, entryName);
-
-        // Ensure parent directories exist
-        File parent = targetFile.getParentFile();
-        if (!parent.exists() && !parent.mkdirs()) {
-            throw new IOException("Failed to create directory " + parent);
+    /**
+     * @return "crc:size" of every file under python/ in the JAR, by entry name
+     */
+    private static Map<String, String> fingerprint(JarFile jar) {
+        Map<String, String> fingerprint = new TreeMap<>();
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            JarEntry entry = entries.nextElement();
+            if (entry.getName().startsWith(PYTHON_FOLDER_PREFIX) && !entry.isDirectory()) {
+                fingerprint.put(entry.getName(), Long.toHexString(entry.getCrc()) + ":" + entry.getSize());
+            }
         }
+        return fingerprint;
+    }
 
-        // Extract the file
-        try (InputStream is = jar.getInputStream(entry);
-             FileOutputStream fos = new FileOutputStream(targetFile)) {
-
-            byte[] buffer = new byte[4096];
-            int bytesRead;
-            while ((bytesRead = is.read(buffer)) != -1) {
-                fos.write(buffer, 0, bytesRead);
+    /**
+     * @return Fingerprint saved after the last successful setup, empty if there is none
+     */
+    private static Map<String, String> readManifest(File outputDir) {
+        Map<String, String> manifest = new TreeMap<>();
+        Path file = outputDir.toPath().resolve(MANIFEST_FILE);
+        if (!Files.exists(file)) {
+            return manifest;
+        }
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                int tab = line.lastIndexOf('\t');
+                if (tab > 0) {
+                    manifest.put(line.substring(0, tab), line.substring(tab + 1));
+                }
             }
-            fos.flush();
         } catch (IOException e) {
-            System.out.println("Failed to extract file: " + entryName + " - " + e.getMessage());
-            System.exit(1);
+            System.out.println("Ignoring unreadable manifest: " + e.getMessage());
+            manifest.clear();
         }
+        return manifest;
     }
 
-    private static void listJarResources(File jarFile) {
-        try (JarFile jar = new JarFile(jarFile)) {
-            System.out.println("\nListing resources in JAR:");
-            Enumeration<JarEntry> entries = jar.entries();
-            boolean foundResources = false;
-            int resourceCount = 0;
-
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                String entryName = entry.getName();
-
-                if (entryName.startsWith("src/main/resources/") ||
-                    // Also check for resources directly at the root level (typical for Maven)
-                    (!entryName.startsWith("META-INF/") &&
-                     !entryName.startsWith("com/") &&
-                     !entry.isDirectory())) {
+    private static void writeManifest(File outputDir, Map<String, String> fingerprint) {
+        Path file = outputDir.toPath().resolve(MANIFEST_FILE);
+        Path partial = file.resolveSibling(file.getFileName() + ".part");
+        List<String> lines = new ArrayList<>(fingerprint.size());
+        fingerprint.forEach((name, value) -> lines.add(name + "\t" + value));
+        try {
+            Files.createDirectories(file.getParent());
+            Files.write(partial, lines, StandardCharsets.UTF_8);
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // Only costs a full check on the next start
+            System.out.println("Failed to write manifest: " + e.getMessage());
+        }
+    }
 
+    /**
+     * The environment is unchanged if the JAR still matches the manifest and no file was removed or resized
+     */
+    private static boolean isUpToDate(File outputDir, Map<String, String> fingerprint, Map<String, String> manifest) {
+        if (manifest.isEmpty() || !manifest.equals(fingerprint)) {
+            return false;
+        }
+        for (Map.Entry<String, String> entry : fingerprint.entrySet()) {
+            File file = new File(outputDir, entry.getKey());
+            String value = entry.getValue();
+            if (file.length() != Long.parseLong(value.substring(value.indexOf(':') + 1)) || !file.isFile()) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-                    foundResources = true;
-                    resourceCount++;
+    /**
+     * Entries whose extracted copy is missing or differs. With a manifest the
+     * recorded CRC is trusted; without one, files of the right size are checked
+     * by computing their CRC once.
+     */
+    private static List<JarEntry> changedEntries(JarFile jar, Map<String, String> fingerprint,
+            Map<String, String> manifest, File outputDir) {
+        List<JarEntry> changed = new ArrayList<>();
+        for (Map.Entry<String, String> entry : fingerprint.entrySet()) {
+            String name = entry.getKey();
+            JarEntry jarEntry = jar.getJarEntry(name);
+            File target = new File(outputDir, name);
+            if (!target.isFile() || target.length() != jarEntry.getSize()) {
+                changed.add(jarEntry);
+            } else if (manifest.isEmpty()) {
+                if (crcOf(target.toPath()) != jarEntry.getCrc()) {
+                    changed.add(jarEntry);
                 }
+            } else if (!entry.getValue().equals(manifest.get(name))) {
+                changed.add(jarEntry);
             }
+        }
+        return changed;
+    }
 
-            System.out.println("Total resources found: " + resourceCount);
+    private static long crcOf(Path file) {
+        CRC32 crc = new CRC32();
+        try (InputStream in = new CheckedInputStream(Files.newInputStream(file), crc)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            return -1;
+        }
+        return crc.getValue();
+    }
 
-            if (!foundResources) {
-                System.out.println("No resources found with src/main/resources path.");
-                System.out.println("\nNote: Maven typically places resources directly at the root of the JAR, not in src/main/resources/");
+    /**
+     * Extract entries in parallel; JarFile supports concurrent readers
+     */
+    private static void extractEntries(JarFile jar, List<JarEntry> entries, File outputDir) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(COPY_THREADS);
+        try {
+            List<Future<?>> copies = new ArrayList<>(entries.size());
+            for (JarEntry entry : entries) {
+                copies.add(pool.submit(() -> {
+                    Path target = outputDir.toPath().resolve(entry.getName());
+                    Files.createDirectories(target.getParent());
+                    try (InputStream is = jar.getInputStream(entry)) {
+                        Files.copy(is, target, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                    return null;
+                }));
             }
-        } catch (IOException e) {
-            System.out.println("Error reading JAR file: " + e.getMessage());
-            e.printStackTrace();
-            System.exit(1);
+            for (int i = 0; i < copies.size(); i++) {
+                try {
+                    copies.get(i).get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Failed to extract file: " + entries.get(i).getName()
+                            + " - " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+            System.out.println("Extracted " + entries.size() + " Python files to: " + outputDir.getAbsolutePath());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Extraction interrupted", e);
+        } finally {
+            pool.shutdownNow();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Copy files that are missing or differ in size or modification time, in parallel
+     * @return Number of files copied
+     */
+    private static int syncDirectory(Path sourceDir, Path destDir) throws IOException {
+        List<Path> changed;
+        try (Stream<Path> files = Files.walk(sourceDir)) {
+            changed = files.filter(Files::isRegularFile).filter(source -> {
+                Path target = destDir.resolve(sourceDir.relativize(source));
+                try {
+                    return !Files.exists(target)
+                            || Files.size(target) != Files.size(source)
+                            || !Files.getLastModifiedTime(target).equals(Files.getLastModifiedTime(source));
+                } catch (IOException e) {
+                    return true;
+                }
+            }).collect(Collectors.toList());
+        }
+        changed.parallelStream().forEach(source -> {
+            Path target = destDir.resolve(sourceDir.relativize(source));
+            try {
+                Files.createDirectories(target.getParent());
+                // Keeping the modification time is what lets the next start skip the file
+                Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            } catch (IOException e) {
+                System.out.println("Failed to copy file: " + source + " - " + e.getMessage());
+                System.exit(1);
+            }
+        });
+        return changed.size();
+    }
+}
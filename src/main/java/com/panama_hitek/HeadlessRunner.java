@@ -0,0 +1,252 @@
+package com.panama_hitek;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Collection without a display: java -jar SmartScale.jar --headless [--stdout | --settled] [MAC ...]
+ *
+ * Runs the environment check, connects to the given scales (or those in
+ * -Dsmartscale.devices, comma separated) and keeps streaming them into the
+ * stores, the journal (-Dsmartscale.journal) and, with --stdout, to standard
+ * output as "address,date,time,weight" lines. With --settled only stable
+ * weights found by the SettleDetector are written. The source is restarted when it
+ * exits or goes silent. Nothing in here, or in the classes it uses, touches
+ * javax.swing, java.awt or org.jfree, so none of them is loaded.
+ */
+public class HeadlessRunner {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+    private static final long RESTART_DELAY_MILLIS = 5000;
+    private static final long FLUSH_INTERVAL_MILLIS = 200;
+    private static final int STDOUT_QUEUE = 1 << 16;
+
+    // Duplicate advertisement policy, same property as the GUI
+    private static final String DEDUP_POLICY = System.getProperty("smartscale.dedup", "none");
+    // Smoothing and stable-weight detection, same properties as the GUI
+    private static final String SMOOTHING = System.getProperty("smartscale.smoothing", "none");
+    private static final String SETTLE = System.getProperty("smartscale.settle");
+    private static final String DEFAULT_SETTLE = "10:0.05";
+
+    private final ScaleSource scaleSource;
+    private final List<String> addresses;
+    private final boolean toStdout;
+    private final boolean settledOnly;
+    private final DataLogger dataLogger = new DataLogger();
+    private final DeviceRegistry devices = new DeviceRegistry(dataLogger);
+    private final CountDownLatch shutdown = new CountDownLatch(1);
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "headless-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private PrintStream samplesOut;
+    // "address," for every bound device, used by settled weights
+    private final Map<Long, String> prefixes = new HashMap<>();
+
+    private HeadlessRunner(ScaleSource scaleSource, List<String> addresses, boolean toStdout, boolean settledOnly) {
+        this.scaleSource = scaleSource;
+        this.addresses = addresses;
+        this.toStdout = toStdout || settledOnly;
+        this.settledOnly = settledOnly;
+    }
+
+    /**
+     * @param args --headless, optionally --stdout or --settled, then MAC addresses
+     */
+    public static void main(String[] args) {
+        boolean toStdout = false;
+        boolean settledOnly = false;
+        List<String> addresses = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--stdout")) {
+                toStdout = true;
+            } else if (arg.equals("--settled")) {
+                settledOnly = true;
+            } else if (!arg.equals("--headless")) {
+                addresses.add(arg);
+            }
+        }
+        String configured = System.getProperty("smartscale.devices");
+        if (addresses.isEmpty() && configured != null) {
+            for (String address : configured.split(",")) {
+                if (!address.isBlank()) {
+                    addresses.add(address.trim());
+                }
+            }
+        }
+        for (String address : addresses) {
+            // Fails early on a typo instead of at the first sample
+            DeviceRegistry.parseAddress(address);
+        }
+
+        if (toStdout || settledOnly) {
+            // Diagnostics go to stderr so stdout carries only samples
+            System.setOut(System.err);
+        }
+        long start = System.nanoTime();
+        ScaleSource source = ScaleSource.fromSystemProperties();
+        if (source.needsPythonEnvironment()) {
+            EnvironmentChecker.checkEnvironment();
+        }
+        HeadlessRunner runner = new HeadlessRunner(source, addresses, toStdout, settledOnly);
+        try {
+            runner.prepare();
+        } catch (IOException | InterruptedException e) {
+            System.err.println("Cannot start: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println("Headless collection ready after " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        runner.run();
+    }
+
+    /**
+     * Resolve the scales, open the journal and the stdout stream
+     */
+    private void prepare() throws IOException, InterruptedException {
+        if (addresses.isEmpty()) {
+            // The simulator lists its virtual scales without hardware; a BLE scan works too
+            JSONObject scan = new JSONObject(scaleSource.scan());
+            JSONArray found = scan.optJSONArray("devices");
+            for (int i = 0; found != null && i < found.length(); i++) {
+                addresses.add(found.getJSONObject(i).getString("address"));
+            }
+            if (addresses.isEmpty()) {
+                throw new IOException("No scale addresses given and none found: " + scan.optString("error", "no devices"));
+            }
+        }
+        System.out.println("Collecting from: " + String.join(", ", addresses));
+
+        if (toStdout) {
+            samplesOut = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16),
+                    false, "US-ASCII");
+            timer.scheduleAtFixedRate(samplesOut::flush, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        }
+
+        // The first scale uses the primary store, like in the GUI
+        for (int i = 0; i < addresses.size(); i++) {
+            long key = DeviceRegistry.parseAddress(addresses.get(i));
+            DataLogger store = i == 0 ? dataLogger : devices.loggerFor(key);
+            devices.bind(key, store);
+            String prefix = DeviceRegistry.formatAddress(key) + ",";
+            prefixes.put(key, prefix);
+            if (samplesOut != null && !settledOnly) {
+                // Stdout is the point of this mode: ingest waits rather than losing lines
+                store.subscribe((timestamp, weight) -> printSample(prefix, timestamp, weight),
+                        DataDispatcher.Policy.BLOCK, STDOUT_QUEUE);
+            }
+        }
+
+        // After binding, so every scale's records are replayed into its own store
+        String journalDir = System.getProperty("smartscale.journal");
+        if (journalDir != null) {
+            long recovered = devices.attachJournal(new SampleJournal(new File(journalDir)));
+            System.out.println("Journal " + journalDir + ": recovered " + recovered + " records");
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "headless-shutdown"));
+    }
+
+    private void printSample(String prefix, long timestamp, double weight) {
+        PrintStream out = samplesOut;
+        synchronized (out) {
+            out.print(prefix);
+            out.print(WeightRecord.formatDate(timestamp));
+            out.print(',');
+            out.print(WeightRecord.formatTime(timestamp));
+            out.print(',');
+            out.println(WeightRecord.formatWeight((int) Math.round(weight * 100)));
+        }
+    }
+
+    /**
+     * Stream until the JVM shuts down, restarting the source when it ends or goes silent
+     */
+    private void run() {
+        while (shutdown.getCount() > 0) {
+            ScaleIngestPipeline pipeline = addresses.size() > 1
+                    ? new ScaleIngestPipeline(devices, scaleSource.createDecoder())
+                    : new ScaleIngestPipeline(dataLogger, scaleSource.createDecoder());
+            pipeline.setDuplicateFilter(DuplicateFilter.parse(DEDUP_POLICY));
+            pipeline.setSmoothingFilter(SmoothingFilter.parse(SMOOTHING));
+            pipeline.setSettleDetector(SettleDetector.parse(SETTLE != null ? SETTLE : settledOnly ? DEFAULT_SETTLE : null));
+            pipeline.addSampleListener(new ScaleIngestPipeline.SampleListener() {
+                @Override
+                public void onSample(long timestamp, double weight) {
+                }
+
+                @Override
+                public void onSettled(long device, long timestamp, double weight) {
+                    // A single-scale pipeline reports untagged samples
+                    String prefix = prefixes.get(device == DeviceRegistry.UNTAGGED
+                            ? DeviceRegistry.parseAddress(addresses.get(0)) : device);
+                    if (settledOnly && prefix != null) {
+                        printSample(prefix, timestamp, weight);
+                    } else {
+                        System.out.println("Settled " + prefix + WeightRecord.formatTime(timestamp) + "," + weight);
+                    }
+                }
+
+                @Override
+                public void onError(String message) {
+                    System.err.println(message);
+                }
+            });
+            try {
+                InputStream output = scaleSource.start(addresses);
+                pipeline.start(output);
+                final long startedAt = System.currentTimeMillis();
+                ScheduledFuture<?> watchdog = timer.scheduleAtFixedRate(() -> {
+                    long lastSample = Math.max(startedAt, pipeline.getLastSampleTimestamp());
+                    if (System.currentTimeMillis() - lastSample > TIMEOUT_MILLIS) {
+                        System.out.println("No data received for " + TIMEOUT_MILLIS / 1000 + " seconds, restarting");
+                        scaleSource.stop();
+                    }
+                }, 1, 1, TimeUnit.SECONDS);
+                int exitCode = scaleSource.waitFor();
+                watchdog.cancel(false);
+                pipeline.stop();
+                pipeline.awaitTermination(2000);
+                System.out.println("Scale source exited with code: " + exitCode);
+            } catch (IOException e) {
+                System.err.println("Could not start the scale source: " + e.getMessage());
+                pipeline.stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            try {
+                shutdown.await(RESTART_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    private void shutdown() {
+        shutdown.countDown();
+        scaleSource.stop();
+        if (samplesOut != null) {
+            samplesOut.flush();
+        }
+        devices.detachJournal();
+    }
+}
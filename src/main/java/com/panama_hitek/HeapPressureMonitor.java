@@ -0,0 +1,180 @@
+package com.panama_hitek;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.NotificationEmitter;
+
+/**
+ * Shrinks the hot window of every DataLogger when the heap stays full after
+ * garbage collection.
+ *
+ * Sets a collection usage threshold (-Dsmartscale.heapThreshold, a fraction of
+ * the maximum, 0 disables) on the old generation pool. The JVM reports when a
+ * collection leaves the pool above it, which is the point where long sessions
+ * would otherwise run into an OutOfMemoryError; every logger then halves its
+ * hot window and spills the rest. The JVM reports a crossing only once, so
+ * after each halving the pool is checked again after the next collection, and
+ * the windows keep halving until it is below the threshold or they cannot
+ * shrink any further. Loggers are held weakly, so registering one does not
+ * keep it alive.
+ */
+public final class HeapPressureMonitor {
+
+    private static final double THRESHOLD = Double.parseDouble(System.getProperty("smartscale.heapThreshold", "0.8"));
+    // How often to look for a collection after a halving
+    private static final long RECHECK_MILLIS = 1000;
+    private static final HeapPressureMonitor INSTANCE = new HeapPressureMonitor();
+
+    // Guarded by itself
+    private final List<WeakReference<DataLogger>> loggers = new ArrayList<>();
+    // Spilling writes files, so it runs off the JMX notification thread. Only
+    // this thread touches the fields below.
+    private final ScheduledExecutorService shrinker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "heap-pressure");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private MemoryPoolMXBean tenured;
+    private final List<GarbageCollectorMXBean> collectors = new ArrayList<>();
+    // Collections of the pool counted at the last halving, -1 when no check is pending
+    private long collectionsAtShrink = -1;
+    // Set once the windows cannot shrink further, so that is reported only once
+    private boolean exhausted = false;
+    private final boolean enabled;
+
+    private HeapPressureMonitor() {
+        enabled = THRESHOLD > 0 && install();
+    }
+
+    private boolean install() {
+        tenured = findOldGeneration();
+        if (tenured == null) {
+            System.out.println("No heap pool supports usage thresholds, heap pressure is not monitored");
+            return false;
+        }
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (Arrays.asList(collector.getMemoryPoolNames()).contains(tenured.getName())) {
+                collectors.add(collector);
+            }
+        }
+        tenured.setCollectionUsageThreshold((long) (tenured.getUsage().getMax() * Math.min(THRESHOLD, 1)));
+        NotificationEmitter emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+        emitter.addNotificationListener((notification, handback) -> {
+            if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+                shrinker.execute(this::relieve);
+            }
+        }, null, null);
+        return true;
+    }
+
+    // The heap pool holding long-lived objects: "G1 Old Gen", "PS Old Gen", "Tenured Gen",
+    // or the single pool of collectors without generations. Eden and survivor spaces
+    // are emptied by every young collection, so their usage says nothing about pressure.
+    private static MemoryPoolMXBean findOldGeneration() {
+        MemoryPoolMXBean found = null;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            String name = pool.getName();
+            if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported()
+                    || pool.getUsage().getMax() <= 0 || name.contains("Eden") || name.contains("Survivor")) {
+                continue;
+            }
+            if (name.contains("Old") || name.contains("Tenured")) {
+                return pool;
+            }
+            if (found == null) {
+                found = pool;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Watch a logger
+     * @param dataLogger Logger whose hot window shrinks under heap pressure
+     */
+    static void register(DataLogger dataLogger) {
+        if (!INSTANCE.enabled) {
+            return;
+        }
+        synchronized (INSTANCE.loggers) {
+            INSTANCE.loggers.removeIf(ref -> ref.get() == null);
+            INSTANCE.loggers.add(new WeakReference<>(dataLogger));
+        }
+    }
+
+    // Halve every window, then check the pool again once it was collected
+    private void relieve() {
+        if (collectionsAtShrink >= 0) {
+            // A check is already pending; it halves again if needed
+            return;
+        }
+        if (!shrinkAll()) {
+            if (!exhausted) {
+                System.out.println("Heap above " + Math.round(THRESHOLD * 100)
+                        + "% after collection, but every store is at its smallest window");
+            }
+            exhausted = true;
+            return;
+        }
+        if (collectors.isEmpty()) {
+            // No collection count to wait for; the next crossing is reported again
+            return;
+        }
+        collectionsAtShrink = collections();
+        shrinker.schedule(this::recheck, RECHECK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void recheck() {
+        if (collections() == collectionsAtShrink) {
+            // The pool was not collected since, so its collection usage is still the old one
+            shrinker.schedule(this::recheck, RECHECK_MILLIS, TimeUnit.MILLISECONDS);
+            return;
+        }
+        collectionsAtShrink = -1;
+        if (tenured.getCollectionUsage().getUsed() >= tenured.getCollectionUsageThreshold()) {
+            relieve();
+        }
+    }
+
+    private long collections() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    // Returns true if a window was halved
+    private boolean shrinkAll() {
+        List<DataLogger> live = new ArrayList<>();
+        synchronized (loggers) {
+            for (WeakReference<DataLogger> ref : loggers) {
+                DataLogger dataLogger = ref.get();
+                if (dataLogger != null) {
+                    live.add(dataLogger);
+                }
+            }
+        }
+        boolean shrunk = false;
+        for (DataLogger dataLogger : live) {
+            if (dataLogger.getHotWindowLimit() <= DataLogger.MIN_HOT_RECORDS) {
+                continue;
+            }
+            int limit = dataLogger.shrinkHotWindow();
+            System.out.println("Heap above " + Math.round(THRESHOLD * 100) + "% after collection, keeping "
+                    + limit + " records in memory, " + dataLogger.getSpilledRecordCount() + " on disk");
+            shrunk = true;
+        }
+        return shrunk;
+    }
+}
@@ -0,0 +1,79 @@
+package com.panama_hitek;
+
+import java.util.Arrays;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.xy.AbstractXYDataset;
+
+/**
+ * Single-series XYDataset holding a decimated view of the stored history.
+ *
+ * The whole point set is replaced at once by {@link #setPoints}, which fires
+ * exactly one change event. Only used on the EDT.
+ */
+public class HistoryXYDataset extends AbstractXYDataset {
+
+    private final Comparable<?> seriesKey;
+    private double[] xValues = new double[0];
+    private double[] yValues = new double[0];
+    private int count = 0;
+
+    /**
+     * @param seriesKey Name of the series
+     */
+    public HistoryXYDataset(Comparable<?> seriesKey) {
+        this.seriesKey = seriesKey;
+    }
+
+    /**
+     * Replace all points
+     * @param x Timestamps in milliseconds, ascending
+     * @param y Values
+     * @param count Number of points to take from the arrays
+     */
+    public void setPoints(double[] x, double[] y, int count) {
+        this.xValues = Arrays.copyOf(x, count);
+        this.yValues = Arrays.copyOf(y, count);
+        this.count = count;
+        fireDatasetChanged();
+    }
+
+    @Override
+    public int getSeriesCount() {
+        return 1;
+    }
+
+    @Override
+    public Comparable<?> getSeriesKey(int series) {
+        return seriesKey;
+    }
+
+    @Override
+    public DomainOrder getDomainOrder() {
+        return DomainOrder.ASCENDING;
+    }
+
+    @Override
+    public int getItemCount(int series) {
+        return count;
+    }
+
+    @Override
+    public double getXValue(int series, int item) {
+        return xValues[item];
+    }
+
+    @Override
+    public double getYValue(int series, int item) {
+        return yValues[item];
+    }
+
+    @Override
+    public Number getX(int series, int item) {
+        return xValues[item];
+    }
+
+    @Override
+    public Number getY(int series, int item) {
+        return yValues[item];
+    }
+}
@@ -2,7 +2,6 @@
 package com.panama_hitek;
 
 import java.awt.BorderLayout;
-import java.util.List;
 
 /**
  *
@@ -12,6 +11,8 @@ public class JFrameLiveChart extends javax.swing.JFrame {
 
     private WeightChartPanel chartPanel;
     private DataLogger dataLogger;
+    // Live feed from the data logger, closed together with the window
+    private DataDispatcher.Subscription liveSubscription;
 
     /**
      * Creates new form JFrameLiveChart
@@ -30,33 +31,50 @@ public class JFrameLiveChart extends javax.swing.JFrame {
         jPanel1.setLayout(new BorderLayout());
         jPanel1.add(chartPanel, BorderLayout.CENTER);
         
+        // Stop receiving samples once the window is disposed
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosed(java.awt.event.WindowEvent e) {
+                unsubscribe();
+            }
+        });
+        
         // Load historical data if available
         loadHistoricalData();
     }
     
     /**
-     * Links this chart to a data logger to get historical data
+     * Links this chart to a data logger to get historical data and new samples
      * @param dataLogger The data logger containing weight records
      */
     public void setDataLogger(DataLogger dataLogger) {
+        unsubscribe();
         this.dataLogger = dataLogger;
         loadHistoricalData();
+        if (dataLogger != null) {
+            // The chart only needs the recent points; a lagging chart drops the oldest
+            liveSubscription = dataLogger.subscribe(this::addDataPoint, DataDispatcher.Policy.DROP_OLDEST, 4096);
+        }
+    }
+    
+    private void unsubscribe() {
+        if (liveSubscription != null) {
+            liveSubscription.close();
+            liveSubscription = null;
+        }
     }
     
     /**
-     * Loads historical data from the data logger if available
+     * Shows the historical data of the data logger, decimated to the chart width
      */
     private void loadHistoricalData() {
-        if (dataLogger != null) {
-            List<DataLogger.WeightRecord> records = dataLogger.getRecords();
-            for (DataLogger.WeightRecord record : records) {
-                addDataPoint(record.getTimestampInMillis(), record.getWeight());
-            }
+        if (chartPanel != null) {
+            chartPanel.setDataLogger(dataLogger);
         }
     }
     
     /**
-     * Adds a new data point to the chart
+     * Adds a new data point to the chart. May be called from any thread
      * @param timestamp Timestamp in milliseconds
      * @param weight Weight measurement
      */
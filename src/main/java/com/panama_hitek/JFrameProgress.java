@@ -34,6 +34,15 @@ public class JFrameProgress extends javax.swing.JDialog {
         this.worker = worker;
     }
 
+    /**
+     * Switch to a determinate bar showing the given percentage
+     */
+    public void setProgress(int percent) {
+        jProgressBar1.setIndeterminate(false);
+        jProgressBar1.setStringPainted(true);
+        jProgressBar1.setValue(percent);
+    }
+
     /**
      * This method is called from within the constructor to initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is always
@@ -1,11 +1,5 @@
 package com.panama_hitek;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import javax.swing.JProgressBar;
 import javax.swing.SwingWorker;
 import org.json.JSONArray;
@@ -16,75 +10,235 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import javax.swing.SwingUtilities;
-import javax.swing.table.DefaultTableModel;
 
 public class JFrameWindow extends javax.swing.JFrame {
 
     String scriptPath = "python/scan_ble.py";
+    
+    // Keep one sidecar.py process for scans and connections (-Dsmartscale.sidecar=false spawns per action)
+    private static final boolean USE_SIDECAR = !"false".equalsIgnoreCase(System.getProperty("smartscale.sidecar"));
+    
+    // Duplicate advertisement policy, e.g. -Dsmartscale.dedup=exact:1000, bucket:1000 or change:5000
+    private static final String DEDUP_POLICY = System.getProperty("smartscale.dedup", "none");
+    
+    // Smoothing applied before storing, e.g. -Dsmartscale.smoothing=median:5, mean:5, ema:0.3 or kalman:0.5:0.05
+    private static final String SMOOTHING = System.getProperty("smartscale.smoothing", "none");
+    
+    // Stable-weight detection, e.g. -Dsmartscale.settle=10:0.05 (samples, standard deviation in grams)
+    private static final String SETTLE = System.getProperty("smartscale.settle", "none");
 
     JProgressBar jProgressBar1 = new JProgressBar();
     
+    // Scans and streams the scales: the Python scripts, or the simulator (-Dsmartscale.source=sim:...)
+    private final ScaleSource scaleSource;
     // Add these missing class variables
-    private Process pythonProcess;
     private SwingWorker<Void, String> dataWorker;
     private final AtomicBoolean connectionActive = new AtomicBoolean(false);
     private ScheduledExecutorService timeoutChecker;
-    private long lastDataTimestamp = 0;
+    private volatile ScaleIngestPipeline ingestPipeline;
+    // Started in the background at launch; null until it answers, or if it is disabled or failed
+    private volatile PythonSidecar sidecar;
+    // True while the current connection streams through the sidecar rather than its own process
+    private volatile boolean sidecarConnection = false;
     // Add DataLogger instance
     private DataLogger dataLogger;
+    // One store per scale; the first scale connected uses dataLogger. All share the journal.
+    private DeviceRegistry devices;
+    // Store shown by the table and used by chart, export, import and clean
+    private DataLogger currentLogger;
+    private String currentDeviceName = "";
+    
+    // Combo box entry that connects every scanned scale through one scanner process
+    private static final String ALL_DEVICES = "All devices";
+    
+    // Table backed directly by the data logger, refreshed once per frame
+    private SampleTableModel tableModel;
+    
+    // Reports decode errors from the ingest pipeline thread; samples reach the table through the logger
+    private final ScaleIngestPipeline.SampleListener errorReporter = new ScaleIngestPipeline.SampleListener() {
+        @Override
+        public void onSample(long timestamp, double weight) {
+        }
+        
+        @Override
+        public void onError(String message) {
+            System.err.println(message);
+        }
+        
+        @Override
+        public void onSettled(long device, long timestamp, double weight) {
+            String scale = device == DeviceRegistry.UNTAGGED ? currentDeviceName : DeviceRegistry.formatAddress(device);
+            System.out.println("Settled " + scale + " at " + WeightRecord.formatTime(timestamp) + ": " + weight + " g");
+        }
+    };
 
     public JFrameWindow() {
+        this(ScaleSource.fromSystemProperties());
+    }
+
+    /**
+     * @param scaleSource Source of scans and samples
+     */
+    public JFrameWindow(ScaleSource scaleSource) {
+        this.scaleSource = scaleSource;
         initComponents();
-        ((DefaultTableModel)jTable1.getModel()).setRowCount(0);
         jProgressBar1 = new javax.swing.JProgressBar();
         jProgressBar1.setIndeterminate(true);
         jProgressBar1.setVisible(false);  // Hidden by default
         
         // Initialize the data logger
         dataLogger = new DataLogger();
+        devices = new DeviceRegistry(dataLogger);
+        currentLogger = dataLogger;
+        
+        // Optional crash-safe journal (-Dsmartscale.journal=<directory>)
+        String journalDir = System.getProperty("smartscale.journal");
+        if (journalDir != null) {
+            openJournal(new java.io.File(journalDir));
+        }
+        
+        // Replace the designer's placeholder model with one that reads the logger
+        showDevice(dataLogger, "");
+        
+        // Scanning needs the Python environment; StartupOrchestrator enables it once checked
+        jButton1.setEnabled(false);
+        jButton1.setToolTipText("Checking the Python environment...");
+        
+        // Picking a scale in the combo box shows its own store
+        jComboBox1.addActionListener(e -> onDeviceSelected());
         
         // Set row height to 20 pixels
         jTable1.setRowHeight(20);
     }
+    
+    /**
+     * Bind the table to a device's store
+     */
+    private void showDevice(DataLogger logger, String name) {
+        currentDeviceName = name;
+        if (tableModel != null && logger == currentLogger) {
+            return;
+        }
+        currentLogger = logger;
+        if (tableModel != null) {
+            tableModel.stop();
+        }
+        tableModel = new SampleTableModel(logger);
+        tableModel.setAppendListener(this::scrollToLastRow);
+        jTable1.setModel(tableModel);
+        for (int i = 0; i < jTable1.getColumnCount(); i++) {
+            jTable1.getColumnModel().getColumn(i).setResizable(false);
+        }
+        tableModel.start();
+    }
+    
+    private void onDeviceSelected() {
+        Object selected = jComboBox1.getSelectedItem();
+        String address = selected == null ? null : addressOf(selected.toString());
+        if (address == null) {
+            return;
+        }
+        DataLogger logger = devices.get(DeviceRegistry.parseAddress(address));
+        if (logger != null) {
+            showDevice(logger, selected.toString());
+        }
+    }
+    
+    /**
+     * @param item Combo box entry, "DeviceName - MAC_ADDRESS"
+     * @return The MAC address, or null if the entry is not a device
+     */
+    private static String addressOf(String item) {
+        int macIndex = item.lastIndexOf(" - ");
+        if (macIndex == -1) {
+            return null;
+        }
+        String address = item.substring(macIndex + 3);
+        return DeviceRegistry.parseAddress(address.getBytes(java.nio.charset.StandardCharsets.US_ASCII), 0,
+                address.length()) < 0 ? null : address;
+    }
+    
+    /**
+     * @return Store of a scale; the first scale ever connected uses the primary store
+     */
+    private DataLogger storeOf(String address) {
+        long key = DeviceRegistry.parseAddress(address);
+        DataLogger logger = devices.get(key);
+        if (logger == null) {
+            logger = devices.getAddresses().length == 0 ? dataLogger : devices.loggerFor(key);
+            devices.bind(key, logger);
+        }
+        return logger;
+    }
 
-    public String runBleScanScript() {
+    /**
+     * Recover previous samples from the journal and keep appending to it
+     */
+    private void openJournal(java.io.File directory) {
         try {
+            SampleJournal journal = new SampleJournal(directory);
+            long recovered = devices.attachJournal(journal);
+            System.out.println("Journal " + directory.getAbsolutePath() + ": recovered " + recovered + " records");
+            Runtime.getRuntime().addShutdownHook(new Thread(devices::detachJournal, "journal-close"));
+        } catch (java.io.IOException e) {
+            System.out.println("Failed to open journal: " + e.getMessage());
+            JOptionPane.showMessageDialog(this,
+                    "Could not open the journal, data will only be kept in memory:\n" + e.getMessage(),
+                    "Journal Error",
+                    JOptionPane.WARNING_MESSAGE);
+        }
+    }
 
-            Path basePath = Paths.get(JFrameWindow.class
-                    .getProtectionDomain()
-                    .getCodeSource()
-                    .getLocation()
-                    .toURI())
-                    .getParent();
-
-            Path scriptPath = basePath.resolve("python").resolve("scan_ble.py");
-
-            if (!Files.exists(scriptPath)) {
-                return "{\"found\": false, \"error\": \"scan_ble.py not found at: " + scriptPath.toString() + "\"}";
-            }
-
-            ProcessBuilder builder = new ProcessBuilder("python", scriptPath.toString());
-            builder.redirectErrorStream(true);
-            Process process = builder.start();
+    /**
+     * Called on the EDT once the Python environment is in place: enables
+     * scanning and starts warming up the sidecar
+     */
+    public void onEnvironmentReady() {
+        jButton1.setEnabled(true);
+        jButton1.setToolTipText(null);
+        if (USE_SIDECAR && scaleSource instanceof PythonScaleSource) {
+            startSidecar((PythonScaleSource) scaleSource);
+        }
+    }
 
-            StringBuilder output = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    output.append(line);
-                }
+    /**
+     * Warm up sidecar.py (interpreter, bleak, BLE adapter) off the EDT
+     */
+    private void startSidecar(PythonScaleSource python) {
+        Thread starter = new Thread(() -> {
+            try {
+                long start = System.currentTimeMillis();
+                PythonSidecar started = PythonSidecar.launch(python.getPythonExecutable(),
+                        python.getScript("sidecar.py"), devices, python.isBinaryFrames());
+                started.getPipeline().setDuplicateFilter(DuplicateFilter.parse(DEDUP_POLICY));
+                started.getPipeline().setSmoothingFilter(SmoothingFilter.parse(SMOOTHING));
+                started.getPipeline().setSettleDetector(SettleDetector.parse(SETTLE));
+                started.getPipeline().addSampleListener(errorReporter);
+                Runtime.getRuntime().addShutdownHook(new Thread(started::close, "sidecar-close"));
+                sidecar = started;
+                System.out.println("Sidecar ready in " + (System.currentTimeMillis() - start) + " ms");
+            } catch (Exception e) {
+                System.out.println("Sidecar unavailable, using one process per action: " + e.getMessage());
             }
+        }, "sidecar-start");
+        starter.setDaemon(true);
+        starter.start();
+    }
 
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                return "{\"found\": false, \"error\": \"Python script exited with code " + exitCode + "\"}";
+    public String runBleScanScript() {
+        // The warm sidecar answers from its running scanner
+        PythonSidecar activeSidecar = sidecar;
+        if (activeSidecar != null && activeSidecar.isAlive()) {
+            try {
+                return activeSidecar.scan(5.0).get(15, TimeUnit.SECONDS).toString();
+            } catch (Exception e) {
+                System.out.println("Sidecar scan failed, falling back to scan_ble.py: " + e.getMessage());
             }
-
-            return output.toString().trim();
-
+        }
+        try {
+            return scaleSource.scan();
         } catch (Exception e) {
-            return "{\"found\": false, \"error\": \"" + e.getMessage().replace("\"", "'") + "\"}";
+            return "{\"found\": false, \"error\": \"" + String.valueOf(e.getMessage()).replace("\"", "'") + "\"}";
         }
     }
 
@@ -100,6 +254,7 @@ public class JFrameWindow extends javax.swing.JFrame {
         jButton4 = new javax.swing.JButton();
         jButton5 = new javax.swing.JButton();
         jButton6 = new javax.swing.JButton();
+        jButton7 = new javax.swing.JButton();
 
         setDefaultCloseOperation(javax.swing.WindowConstants.EXIT_ON_CLOSE);
         setTitle("SmartScale v1.0.0");
@@ -175,6 +330,14 @@ public class JFrameWindow extends javax.swing.JFrame {
             }
         });
 
+        jButton7.setFont(new java.awt.Font("Segoe UI", 0, 14)); // NOI18N
+        jButton7.setText("Import Log");
+        jButton7.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                jButton7ActionPerformed(evt);
+            }
+        });
+
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(getContentPane());
         getContentPane().setLayout(layout);
         layout.setHorizontalGroup(
@@ -198,7 +361,9 @@ public class JFrameWindow extends javax.swing.JFrame {
                                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                                 .addComponent(jButton6, javax.swing.GroupLayout.PREFERRED_SIZE, 160, javax.swing.GroupLayout.PREFERRED_SIZE)
                                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
-                                .addComponent(jButton5, javax.swing.GroupLayout.PREFERRED_SIZE, 160, javax.swing.GroupLayout.PREFERRED_SIZE)))
+                                .addComponent(jButton5, javax.swing.GroupLayout.PREFERRED_SIZE, 160, javax.swing.GroupLayout.PREFERRED_SIZE)
+                                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                                .addComponent(jButton7, javax.swing.GroupLayout.PREFERRED_SIZE, 160, javax.swing.GroupLayout.PREFERRED_SIZE)))
                         .addGap(0, 6, Short.MAX_VALUE))))
         );
         layout.setVerticalGroup(
@@ -215,7 +380,8 @@ public class JFrameWindow extends javax.swing.JFrame {
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(jButton4, javax.swing.GroupLayout.PREFERRED_SIZE, 30, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(jButton5, javax.swing.GroupLayout.PREFERRED_SIZE, 30, javax.swing.GroupLayout.PREFERRED_SIZE)
-                    .addComponent(jButton6, javax.swing.GroupLayout.PREFERRED_SIZE, 30, javax.swing.GroupLayout.PREFERRED_SIZE))
+                    .addComponent(jButton6, javax.swing.GroupLayout.PREFERRED_SIZE, 30, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(jButton7, javax.swing.GroupLayout.PREFERRED_SIZE, 30, javax.swing.GroupLayout.PREFERRED_SIZE))
                 .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
         );
 
@@ -224,84 +390,70 @@ public class JFrameWindow extends javax.swing.JFrame {
 
     private void jButton2ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButton2ActionPerformed
     if (jButton2.getText().equals("Connect")) {
-         ((DefaultTableModel)jTable1.getModel()).setRowCount(0);
-   jButton2.setText("Stop");
-  
-   
-        // Extract MAC address from selected item
+        // Extract MAC addresses from the selected item; "All devices" follows every scanned scale
         String selectedDevice = jComboBox1.getSelectedItem().toString();
-        // Format is typically "DeviceName - MAC_ADDRESS"
-        int macIndex = selectedDevice.lastIndexOf(" - ");
-        if (macIndex == -1) {
+        final java.util.List<String> macAddresses = new java.util.ArrayList<>();
+        if (selectedDevice.startsWith(ALL_DEVICES)) {
+            for (int i = 0; i < jComboBox1.getItemCount(); i++) {
+                String address = addressOf(jComboBox1.getItemAt(i));
+                if (address != null) {
+                    macAddresses.add(address);
+                }
+            }
+        } else if (addressOf(selectedDevice) != null) {
+            macAddresses.add(addressOf(selectedDevice));
+        }
+        if (macAddresses.isEmpty()) {
             JOptionPane.showMessageDialog(this, "Invalid device selection", "Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
+        System.out.println("Connecting to: " + String.join(", ", macAddresses));
         
-        final String macAddress = selectedDevice.substring(macIndex + 3);
-        System.out.println("Connecting to: " + macAddress);
+        // Every scale gets its own store; the table follows the first one
+        final DataLogger firstStore = storeOf(macAddresses.get(0));
+        for (String address : macAddresses) {
+            storeOf(address);
+        }
+        showDevice(firstStore, selectedDevice.startsWith(ALL_DEVICES) ? jComboBox1.getItemAt(0) : selectedDevice);
+        // Start the table at the first sample of this connection
+        tableModel.setFirstIndex(firstStore.size());
         
         // Change button text and set connection state
         jButton2.setText("Stop");
         connectionActive.set(true);
         
-        // Start a worker thread to manage the Python process
+        // Reconnecting through the running sidecar is a single command
+        PythonSidecar activeSidecar = sidecar;
+        if (activeSidecar != null && activeSidecar.isAlive()) {
+            connectThroughSidecar(activeSidecar, macAddresses);
+            return;
+        }
+        
+        // Start a worker thread to manage the source (the Python process or the simulator)
         dataWorker = new SwingWorker<Void, String>() {
             @Override
             protected Void doInBackground() throws Exception {
                 try {
-                    Path basePath = Paths.get(JFrameWindow.class
-                            .getProtectionDomain()
-                            .getCodeSource()
-                            .getLocation()
-                            .toURI())
-                            .getParent();
-                    
-                    // Use virtual environment Python executable
-                    Path pythonExePath = basePath.resolve("python").resolve("venv").resolve("python.exe");
-                    Path scriptPath = basePath.resolve("python").resolve("retrieve_data.py");
-                    
-                    // Diagnostics
-                    System.out.println("Base path: " + basePath);
-                    System.out.println("Python executable: " + pythonExePath);
-                    System.out.println("Script path: " + scriptPath);
-                    System.out.println("Python exe exists: " + Files.exists(pythonExePath));
-                    System.out.println("Script exists: " + Files.exists(scriptPath));
-                    
-                    if (!Files.exists(scriptPath)) {
-                        publish("ERROR: retrieve_data.py not found at: " + scriptPath.toString());
-                        return null;
-                    }
+                    java.io.InputStream output = scaleSource.start(macAddresses);
                     
-                    if (!Files.exists(pythonExePath)) {
-                        // Fall back to system Python if venv not found
-                        System.out.println("Python virtual environment not found, falling back to system Python");
-                        pythonExePath = Paths.get("python");
-                    }
-                    
-                    // Start the Python process with unbuffered output (-u flag)
-                    String[] command = {
-                        pythonExePath.toString(),
-                        "-u",
-                        scriptPath.toString(),
-                        macAddress
-                    };
-                    
-                    System.out.println("Command: " + String.join(" ", command));
-                    
-                    ProcessBuilder builder = new ProcessBuilder(command);
-                    builder.redirectErrorStream(true);
-                    
-                    System.out.println("Starting Python process...");
-                    pythonProcess = builder.start();
-                    System.out.println("Python process started");
-                    
-                    // Set initial timestamp
-                    lastDataTimestamp = System.currentTimeMillis();
+                    // Hand the process output to the ingest pipeline; the EDT only observes it
+                    // With several scales the samples are tagged and demultiplexed into their stores
+                    SampleDecoder decoder = scaleSource.createDecoder();
+                    final ScaleIngestPipeline pipeline = macAddresses.size() > 1
+                            ? new ScaleIngestPipeline(devices, decoder)
+                            : new ScaleIngestPipeline(firstStore, decoder);
+                    pipeline.setDuplicateFilter(DuplicateFilter.parse(DEDUP_POLICY));
+                    pipeline.setSmoothingFilter(SmoothingFilter.parse(SMOOTHING));
+                    pipeline.setSettleDetector(SettleDetector.parse(SETTLE));
+                    pipeline.addSampleListener(errorReporter);
+                    ingestPipeline = pipeline;
+                    pipeline.start(output);
+                    System.out.println("Ingest pipeline started");
                     
                     // Start timeout checker
                     timeoutChecker = Executors.newSingleThreadScheduledExecutor();
                     timeoutChecker.scheduleAtFixedRate(() -> {
-                        if (connectionActive.get() && System.currentTimeMillis() - lastDataTimestamp > 5000) {
+                        if (connectionActive.get() && System.currentTimeMillis() - pipeline.getLastDataTimestamp() > 5000) {
                             // Connection timed out
                             connectionActive.set(false);
                             System.out.println("Connection timed out - no data received for 5 seconds");
@@ -312,30 +464,16 @@ public class JFrameWindow extends javax.swing.JFrame {
                         }
                     }, 1, 1, TimeUnit.SECONDS);
                     
-                    // Read data continuously
-                    try (BufferedReader reader = new BufferedReader(new InputStreamReader(pythonProcess.getInputStream()))) {
-                        String line;
-                        System.out.println("Starting to read Python output...");
-                        while (connectionActive.get() && (line = reader.readLine()) != null) {
-                            // Update timestamp when data is received
-                            lastDataTimestamp = System.currentTimeMillis();
-                            System.out.println("Raw data from Python: " + line);
-                            publish(line);
-                        }
-                        System.out.println("Python output reader loop ended");
-                    }
-                    
                     // Check exit code when process completes
-                    if (pythonProcess != null) {
-                        try {
-                            int exitCode = pythonProcess.waitFor();
-                            System.out.println("Python process exited with code: " + exitCode);
-                            if (exitCode != 0 && connectionActive.get()) {
-                                publish("ERROR: Python script exited with code " + exitCode);
-                            }
-                        } catch (InterruptedException e) {
-                            Thread.currentThread().interrupt();
+                    try {
+                        int exitCode = scaleSource.waitFor();
+                        pipeline.awaitTermination(2000);
+                        System.out.println("Scale source exited with code: " + exitCode);
+                        if (exitCode != 0 && connectionActive.get()) {
+                            publish("ERROR: Scale source exited with code " + exitCode);
                         }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
                     }
                     
                 } catch (Exception e) {
@@ -347,54 +485,9 @@ public class JFrameWindow extends javax.swing.JFrame {
             
             @Override
             protected void process(java.util.List<String> chunks) {
-                // Process received data here
+                // Samples reach the table through the logger; only process errors are published here
                 for (String data : chunks) {
-                    // Removed console printing
-                    
-                    if (data.startsWith("ERROR:")) {
-                        // Only print errors to the console
-                        System.err.println(data);
-                        // Handle error if needed
-                    } else {
-                        // Process the data and update the UI
-                        try {
-                            JSONObject jsonData = new JSONObject(data);
-                            long timestamp = jsonData.getLong("timestamp");
-                            double weight = jsonData.getDouble("weight");
-                            
-                            // Convert Unix timestamp to Date
-                            java.util.Date date = new java.util.Date(timestamp * 1000L);
-                            
-                            // Format the date and time
-                            java.text.SimpleDateFormat dateFormat = new java.text.SimpleDateFormat("yyyy-MM-dd");
-                            java.text.SimpleDateFormat timeFormat = new java.text.SimpleDateFormat("HH:mm:ss");
-                            String dateStr = dateFormat.format(date);
-                            String timeStr = timeFormat.format(date);
-                            
-                            // Format weight to 2 decimal places
-                            String weightStr = String.format("%.2f", weight);
-                            
-                            // Get the table model
-                            DefaultTableModel model = (DefaultTableModel) jTable1.getModel();
-                            
-                            // Add a new row to the table
-                            model.addRow(new Object[]{dateStr, timeStr, weightStr});
-                            
-                            // Add to the logger
-                            dataLogger.addRecord(dateStr, timeStr, weight);
-                            
-                            // Make sure the table scrolls to show the last row
-                            int lastRow = jTable1.getRowCount() - 1;
-                            if (lastRow >= 0) {
-                                jTable1.scrollRectToVisible(jTable1.getCellRect(lastRow, 0, true));
-                                // Ensure selection is on the last row to keep focus there
-                                jTable1.setRowSelectionInterval(lastRow, lastRow);
-                            }
-                        } catch (Exception e) {
-                            System.err.println("Error parsing JSON data: " + e.getMessage());
-                            e.printStackTrace();
-                        }
-                    }
+                    System.err.println(data);
                 }
             }
             
@@ -426,28 +519,67 @@ public class JFrameWindow extends javax.swing.JFrame {
 }//GEN-LAST:event_jButton2ActionPerformed
 
     private void jButton4ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButton4ActionPerformed
-        ((DefaultTableModel)jTable1.getModel()).setRowCount(0);
-        // Also clear the logger data
-        dataLogger.clearRecords();
+        // Clearing the logger also clears the table backed by it
+        currentLogger.clearRecords();
+        tableModel.refresh();
     }//GEN-LAST:event_jButton4ActionPerformed
 
     private void jButton5ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButton5ActionPerformed
     JFrameLiveChart chartFrame = new JFrameLiveChart();
-    chartFrame.setDataLogger(dataLogger);
-    chartFrame.setVisible(true);
-    
-    // If there's an active connection, create a listener to update the chart in real-time
-    if (connectionActive.get()) {
-        dataLogger.addDataListener((timestamp, weight) -> {
-            chartFrame.addDataPoint(timestamp, weight);
-        });
+    chartFrame.setDataLogger(currentLogger);
+    if (!currentDeviceName.isEmpty()) {
+        chartFrame.setTitle(chartFrame.getTitle() + " - " + currentDeviceName);
     }
+    chartFrame.setVisible(true);
+    // The chart subscribes to new samples itself and unsubscribes when it is closed
 }//GEN-LAST:event_jButton5ActionPerformed
 
     private void jButton6ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButton6ActionPerformed
-         dataLogger.exportToCSV(this);
+         LogFileDialogs.exportLog(this, currentLogger);
     }//GEN-LAST:event_jButton6ActionPerformed
 
+    private void jButton7ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButton7ActionPerformed
+        if (LogFileDialogs.importArchive(this, currentLogger)) {
+            // Show everything, including the imported records
+            tableModel.setFirstIndex(0);
+        }
+    }//GEN-LAST:event_jButton7ActionPerformed
+
+/**
+ * Streams the given scales through the running sidecar
+ */
+private void connectThroughSidecar(PythonSidecar activeSidecar, java.util.List<String> macAddresses) {
+    final ScaleIngestPipeline pipeline = activeSidecar.getPipeline();
+    ingestPipeline = pipeline;
+    sidecarConnection = true;
+    final long subscribedAt = System.currentTimeMillis();
+    activeSidecar.subscribe(macAddresses).whenComplete((reply, error) -> {
+        if (error != null) {
+            SwingUtilities.invokeLater(() -> {
+                if (connectionActive.get()) {
+                    handleConnectionLost("Sidecar error: " + error.getMessage());
+                }
+            });
+        } else {
+            System.out.println("Subscribed after " + (System.currentTimeMillis() - subscribedAt) + " ms: " + reply);
+        }
+    });
+    
+    // Same 5 second rule as a dedicated process, counted from the subscription
+    timeoutChecker = Executors.newSingleThreadScheduledExecutor();
+    timeoutChecker.scheduleAtFixedRate(() -> {
+        long lastSample = Math.max(subscribedAt, pipeline.getLastSampleTimestamp());
+        if (connectionActive.get() && System.currentTimeMillis() - lastSample > 5000) {
+            connectionActive.set(false);
+            System.out.println("Connection timed out - no data received for 5 seconds");
+            SwingUtilities.invokeLater(() -> {
+                handleConnectionLost("Connection timeout - no data received for 5 seconds");
+            });
+            timeoutChecker.shutdown();
+        }
+    }, 1, 1, TimeUnit.SECONDS);
+}
+
 /**
  * Stops the current connection and cleans up resources
  */
@@ -459,23 +591,47 @@ private void stopConnection() {
         timeoutChecker.shutdown();
     }
     
+    // Stop the ingest pipeline; the sidecar's pipeline keeps running and just stops streaming
+    if (sidecarConnection) {
+        sidecarConnection = false;
+        PythonSidecar activeSidecar = sidecar;
+        if (activeSidecar != null) {
+            activeSidecar.unsubscribeAll();
+        }
+    } else if (ingestPipeline != null) {
+        ingestPipeline.stop();
+    }
+    if (ingestPipeline != null) {
+        DuplicateFilter filter = ingestPipeline.getDuplicateFilter();
+        if (filter != null && filter.getPolicy() != DuplicateFilter.Policy.NONE) {
+            System.out.println("Duplicate filter kept " + filter.getPassedCount()
+                    + " samples, suppressed " + filter.getSuppressedCount());
+        }
+        SettleDetector detector = ingestPipeline.getSettleDetector();
+        if (detector != null) {
+            System.out.println("Settle detector reported " + detector.getSettledCount() + " stable weights");
+        }
+    }
+    
     // Cancel the data worker
     if (dataWorker != null && !dataWorker.isDone()) {
         dataWorker.cancel(true);
     }
     
-    // Stop the Python process
-    if (pythonProcess != null && pythonProcess.isAlive()) {
-        pythonProcess.destroy();
-        try {
-            // Wait briefly for the process to terminate
-            if (!pythonProcess.waitFor(2, TimeUnit.SECONDS)) {
-                pythonProcess.destroyForcibly();
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    // Stop the Python process or the simulator; nothing to do after a sidecar connection
+    scaleSource.stop();
+}
+
+/**
+ * Keeps the last row in view after a frame's worth of rows was appended. Runs on the EDT.
+ */
+private void scrollToLastRow(int firstRow, int lastRow) {
+    if (!connectionActive.get()) {
+        return;
     }
+    jTable1.scrollRectToVisible(jTable1.getCellRect(lastRow, 0, true));
+    // Ensure selection is on the last row to keep focus there
+    jTable1.setRowSelectionInterval(lastRow, lastRow);
 }
 
 /**
@@ -532,6 +688,10 @@ private void handleConnectionLost(String reason) {
                                     String displayText = name + " - " + address;
                                     jComboBox1.addItem(displayText);
                                 }
+                                // Several scales can be followed at once by a single scanner
+                                if (devices.length() > 1) {
+                                    jComboBox1.addItem(ALL_DEVICES + " (" + devices.length() + ")");
+                                }
                                 
                                 // Enable the combo box and connect button
                                 jComboBox1.setEnabled(true);
@@ -603,6 +763,7 @@ private void handleConnectionLost(String reason) {
     private javax.swing.JButton jButton4;
     private javax.swing.JButton jButton5;
     private javax.swing.JButton jButton6;
+    private javax.swing.JButton jButton7;
     private javax.swing.JComboBox<String> jComboBox1;
     private javax.swing.JScrollPane jScrollPane1;
     private javax.swing.JTable jTable1;
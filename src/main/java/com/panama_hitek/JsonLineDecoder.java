@@ -0,0 +1,349 @@
+package com.panama_hitek;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Decodes the JSON line protocol printed by retrieve_data.py:
+ * {"timestamp": 1749098287, "weight": 17.23, "raw": "...", "address": "50:FB:19:8A:A0:C2"}
+ *
+ * This is a byte-level parser for that one flat object shape. Lines are parsed
+ * in place inside the chunk they arrive in (or in a reused buffer when a line
+ * spans two chunks) and the numbers are read as primitives, so no String,
+ * JSONObject or boxed value is created per sample. The "raw" hex field is
+ * skipped without being looked at and the optional "address" is parsed into
+ * a 48-bit number in place. Lines starting with '#' are control replies of
+ * the sidecar and are passed on as text. Strings are only built on the error path.
+ */
+public class JsonLineDecoder implements SampleDecoder {
+
+    private static final byte[] KEY_TIMESTAMP = "timestamp".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEY_WEIGHT = "weight".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEY_RAW = "raw".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEY_ADDRESS = "address".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEY_ERROR = "error".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int MAX_SCALE = 18;
+    private static final long[] LONG_POW10 = new long[MAX_SCALE + 1];
+
+    static {
+        long p = 1;
+        for (int i = 0; i <= MAX_SCALE; i++) {
+            LONG_POW10[i] = p;
+            p *= 10;
+        }
+    }
+
+    // Carry-over for a line split across chunks
+    private byte[] line = new byte[256];
+    private int lineLength = 0;
+
+    // Result of the last parseNumber call: value = mantissa * 10^-scale
+    private long numMantissa;
+    private int numScale;
+
+    @Override
+    public void decode(byte[] buffer, int offset, int length, Sink sink) {
+        int end = offset + length;
+        int start = offset;
+        for (int i = offset; i < end; i++) {
+            if (buffer[i] != '\n') {
+                continue;
+            }
+            if (lineLength > 0) {
+                append(buffer, start, i);
+                parseLine(line, 0, lineLength, sink);
+                lineLength = 0;
+            } else {
+                parseLine(buffer, start, i, sink);
+            }
+            start = i + 1;
+        }
+        if (start < end) {
+            append(buffer, start, end);
+        }
+    }
+
+    @Override
+    public void reset() {
+        lineLength = 0;
+    }
+
+    private void append(byte[] buffer, int from, int to) {
+        int n = to - from;
+        if (lineLength + n > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + n));
+        }
+        System.arraycopy(buffer, from, line, lineLength, n);
+        lineLength += n;
+    }
+
+    /**
+     * Parse one line without its terminating newline
+     */
+    private void parseLine(byte[] b, int from, int to, Sink sink) {
+        if (to > from && b[to - 1] == '\r') {
+            to--;
+        }
+        int i = skipWhitespace(b, from, to);
+        if (i == to) {
+            return; // Blank line
+        }
+        if (b[i] == '#') {
+            sink.onControl(new String(b, i + 1, to - i - 1, StandardCharsets.UTF_8));
+            return;
+        }
+        if (b[i] != '{') {
+            malformed(sink, "Not a JSON object", b, from, to);
+            return;
+        }
+        i++;
+
+        boolean hasTimestamp = false;
+        boolean hasWeight = false;
+        long timestamp = 0;
+        int centigrams = 0;
+        long device = DeviceRegistry.UNTAGGED;
+
+        while (true) {
+            i = skipWhitespace(b, i, to);
+            if (i < to && b[i] == '}') {
+                break;
+            }
+            if (i >= to || b[i] != '"') {
+                malformed(sink, "Expected a key", b, from, to);
+                return;
+            }
+            int keyStart = i + 1;
+            int keyEnd = skipString(b, i, to);
+            if (keyEnd < 0) {
+                malformed(sink, "Unterminated key", b, from, to);
+                return;
+            }
+            i = skipWhitespace(b, keyEnd + 1, to);
+            if (i >= to || b[i] != ':') {
+                malformed(sink, "Expected ':'", b, from, to);
+                return;
+            }
+            i = skipWhitespace(b, i + 1, to);
+
+            if (keyEquals(b, keyStart, keyEnd, KEY_RAW)) {
+                // Fast path: the hex payload is never needed here
+                i = skipValue(b, i, to);
+            } else if (keyEquals(b, keyStart, keyEnd, KEY_TIMESTAMP)) {
+                i = parseNumber(b, i, to);
+                if (i < 0) {
+                    malformed(sink, "Invalid timestamp", b, from, to);
+                    return;
+                }
+                timestamp = toMillis(numMantissa, numScale);
+                hasTimestamp = true;
+            } else if (keyEquals(b, keyStart, keyEnd, KEY_WEIGHT)) {
+                i = parseNumber(b, i, to);
+                if (i < 0) {
+                    malformed(sink, "Invalid weight", b, from, to);
+                    return;
+                }
+                centigrams = toCentigrams(numMantissa, numScale);
+                hasWeight = true;
+            } else if (keyEquals(b, keyStart, keyEnd, KEY_ADDRESS)) {
+                int close = i < to && b[i] == '"' ? skipString(b, i, to) : -1;
+                device = close < 0 ? -1 : DeviceRegistry.parseAddress(b, i + 1, close);
+                if (device < 0) {
+                    malformed(sink, "Invalid address", b, from, to);
+                    return;
+                }
+                i = close + 1;
+            } else if (keyEquals(b, keyStart, keyEnd, KEY_ERROR)) {
+                malformed(sink, "Error reported by script", b, from, to);
+                return;
+            } else {
+                i = skipValue(b, i, to);
+            }
+            if (i < 0) {
+                malformed(sink, "Invalid value", b, from, to);
+                return;
+            }
+
+            i = skipWhitespace(b, i, to);
+            if (i < to && b[i] == ',') {
+                i++;
+            } else if (i < to && b[i] == '}') {
+                break;
+            } else {
+                malformed(sink, "Expected ',' or '}'", b, from, to);
+                return;
+            }
+        }
+
+        if (!hasTimestamp || !hasWeight) {
+            malformed(sink, "Missing timestamp or weight", b, from, to);
+            return;
+        }
+        sink.onSample(device, timestamp, centigrams);
+    }
+
+    /**
+     * Parse a JSON number into numMantissa/numScale
+     * @return Index after the number, or -1 if it is not a number
+     */
+    private int parseNumber(byte[] b, int i, int to) {
+        boolean negative = false;
+        if (i < to && b[i] == '-') {
+            negative = true;
+            i++;
+        }
+        long mantissa = 0;
+        int scale = 0;
+        int digits = 0;
+        boolean fraction = false;
+        for (; i < to; i++) {
+            int c = b[i];
+            if (c >= '0' && c <= '9') {
+                if (digits < MAX_SCALE) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                    if (fraction) {
+                        scale++;
+                    }
+                } else if (!fraction) {
+                    scale--; // Drop insignificant integer digits
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return -1;
+        }
+        if (i < to && (b[i] == 'e' || b[i] == 'E')) {
+            i++;
+            boolean negativeExp = false;
+            if (i < to && (b[i] == '+' || b[i] == '-')) {
+                negativeExp = b[i] == '-';
+                i++;
+            }
+            int exp = 0;
+            int expDigits = 0;
+            for (; i < to && b[i] >= '0' && b[i] <= '9'; i++) {
+                exp = Math.min(exp * 10 + (b[i] - '0'), 1000);
+                expDigits++;
+            }
+            if (expDigits == 0) {
+                return -1;
+            }
+            scale += negativeExp ? exp : -exp;
+        }
+        numMantissa = negative ? -mantissa : mantissa;
+        numScale = scale;
+        return i;
+    }
+
+    /**
+     * Convert a number of seconds since epoch to milliseconds
+     */
+    private static long toMillis(long mantissa, int scale) {
+        int shift = 3 - scale;
+        if (shift >= 0) {
+            return mantissa * LONG_POW10[Math.min(shift, MAX_SCALE)];
+        }
+        return mantissa / LONG_POW10[Math.min(-shift, MAX_SCALE)];
+    }
+
+    /**
+     * Convert a weight in grams to centigrams, rounding half away from zero
+     */
+    private static int toCentigrams(long mantissa, int scale) {
+        int shift = 2 - scale;
+        long value;
+        if (shift >= 0) {
+            value = mantissa * LONG_POW10[Math.min(shift, MAX_SCALE)];
+        } else if (-shift > MAX_SCALE) {
+            value = 0;
+        } else {
+            long divisor = LONG_POW10[-shift];
+            value = (mantissa + (mantissa < 0 ? -divisor / 2 : divisor / 2)) / divisor;
+        }
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+    }
+
+    private static boolean keyEquals(byte[] b, int from, int to, byte[] key) {
+        if (to - from != key.length) {
+            return false;
+        }
+        for (int k = 0; k < key.length; k++) {
+            if (b[from + k] != key[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipWhitespace(byte[] b, int i, int to) {
+        while (i < to && (b[i] == ' ' || b[i] == '\t' || b[i] == '\r' || b[i] == '\n')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @param i Index of the opening quote
+     * @return Index of the closing quote, or -1 if unterminated
+     */
+    private static int skipString(byte[] b, int i, int to) {
+        for (i++; i < to; i++) {
+            if (b[i] == '\\') {
+                i++;
+            } else if (b[i] == '"') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skip any JSON value
+     * @return Index after the value, or -1 if it is malformed
+     */
+    private static int skipValue(byte[] b, int i, int to) {
+        if (i >= to) {
+            return -1;
+        }
+        if (b[i] == '"') {
+            int close = skipString(b, i, to);
+            return close < 0 ? -1 : close + 1;
+        }
+        if (b[i] == '{' || b[i] == '[') {
+            int depth = 0;
+            for (; i < to; i++) {
+                byte c = b[i];
+                if (c == '"') {
+                    i = skipString(b, i, to);
+                    if (i < 0) {
+                        return -1;
+                    }
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    if (--depth == 0) {
+                        return i + 1;
+                    }
+                }
+            }
+            return -1;
+        }
+        // Number, true, false or null
+        int start = i;
+        while (i < to && b[i] != ',' && b[i] != '}' && b[i] != ' ' && b[i] != '\t') {
+            i++;
+        }
+        return i > start ? i : -1;
+    }
+
+    private static void malformed(Sink sink, String reason, byte[] b, int from, int to) {
+        sink.onMalformed("Error parsing JSON data: " + reason + " in: "
+                + new String(b, from, to - from, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,242 @@
+package com.panama_hitek;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import javax.swing.JFileChooser;
+import javax.swing.JFrame;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+/**
+ * Export and import dialogs for a DataLogger. Kept apart from DataLogger so
+ * the store can be used without loading Swing.
+ */
+public class LogFileDialogs {
+
+    // Bucket length of the summary export
+    private static final long SUMMARY_RESOLUTION_MILLIS = 60_000L;
+
+    private LogFileDialogs() {
+    }
+
+    /**
+     * Export data to a CSV file, a per-minute summary CSV read from the rollups,
+     * or a compressed SmartScale archive, depending on the chosen file type. The file is written on a background thread while a
+     * progress dialog with a cancel button is shown; ingest keeps running.
+     * @param parent Parent component for dialog boxes
+     * @param dataLogger Store to export
+     * @return true if export was successful, false otherwise
+     */
+    public static boolean exportLog(JFrame parent, DataLogger dataLogger) {
+        final DataLogger.Snapshot snapshot = dataLogger.snapshot();
+        if (snapshot.size() == 0) {
+            JOptionPane.showMessageDialog(parent, 
+                    "No data to export", 
+                    "Export Error", 
+                    JOptionPane.WARNING_MESSAGE);
+            return false;
+        }
+        
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Save Weight Data");
+        
+        // Set default file name with timestamp
+        SimpleDateFormat formatter = new SimpleDateFormat("yyyyMMdd_HHmmss");
+        String defaultFileName = "weight_data_" + formatter.format(new Date()) + ".csv";
+        fileChooser.setSelectedFile(new File(defaultFileName));
+        
+        // Set filters for CSV files and archives
+        FileNameExtensionFilter csvFilter = new FileNameExtensionFilter("CSV Files (*.csv)", "csv");
+        FileNameExtensionFilter archiveFilter = new FileNameExtensionFilter(
+                "SmartScale Archive (*." + TimeSeriesArchive.EXTENSION + ")", TimeSeriesArchive.EXTENSION);
+        FileNameExtensionFilter summaryFilter = new FileNameExtensionFilter(
+                "CSV Summary, one row per minute (*.csv)", "csv");
+        fileChooser.addChoosableFileFilter(csvFilter);
+        fileChooser.addChoosableFileFilter(summaryFilter);
+        fileChooser.addChoosableFileFilter(archiveFilter);
+        fileChooser.setFileFilter(csvFilter);
+        
+        int userSelection = fileChooser.showSaveDialog(parent);
+        
+        if (userSelection != JFileChooser.APPROVE_OPTION) {
+            return false; // User canceled
+        }
+        File selectedFile = fileChooser.getSelectedFile();
+        String path = selectedFile.getAbsolutePath().toLowerCase();
+        final boolean archive = path.endsWith("." + TimeSeriesArchive.EXTENSION)
+                || (fileChooser.getFileFilter() == archiveFilter && !path.endsWith(".csv"));
+        final boolean summary = !archive && fileChooser.getFileFilter() == summaryFilter;
+        
+        // Add the extension if not already present
+        if (archive) {
+            if (!path.endsWith("." + TimeSeriesArchive.EXTENSION)) {
+                String name = selectedFile.getAbsolutePath();
+                if (path.endsWith(".csv")) {
+                    name = name.substring(0, name.length() - 4);
+                }
+                selectedFile = new File(name + "." + TimeSeriesArchive.EXTENSION);
+            }
+        } else if (!path.endsWith(".csv")) {
+            selectedFile = new File(selectedFile.getAbsolutePath() + ".csv");
+        }
+        final File fileToSave = selectedFile;
+        
+        final CsvExporter exporter = new CsvExporter();
+        final JFrameProgress progress = new JFrameProgress(parent);
+        progress.setTitle("Exporting data...");
+        progress.setLocationRelativeTo(parent);
+        
+        SwingWorker<Boolean, Void> worker = new SwingWorker<Boolean, Void>() {
+            @Override
+            protected Boolean doInBackground() throws Exception {
+                CsvExporter.ProgressListener listener =
+                        (rowsWritten, totalRows) -> setProgress((int) (100L * rowsWritten / totalRows));
+                if (archive) {
+                    return TimeSeriesArchive.write(snapshot, fileToSave.toPath(), listener,
+                            () -> isCancelled() || Thread.currentThread().isInterrupted());
+                }
+                if (summary) {
+                    return exporter.exportSummary(dataLogger, SUMMARY_RESOLUTION_MILLIS, fileToSave.toPath(), listener);
+                }
+                return exporter.export(snapshot, fileToSave.toPath(), listener);
+            }
+            
+            @Override
+            protected void done() {
+                progress.dispose();
+            }
+        };
+        return runWithProgress(parent, worker, progress, exporter::cancel,
+                "Data exported successfully to:\n" + fileToSave.getPath(), "Export");
+    }
+    
+    /**
+     * Load a SmartScale archive and append its records to a logger. The logger
+     * keeps its records in timestamp order, so an archive that starts before
+     * the newest record can only replace the current records.
+     * @param parent Parent component for dialog boxes
+     * @param dataLogger Store receiving the records
+     * @return true if the archive was loaded, false otherwise
+     */
+    public static boolean importArchive(JFrame parent, DataLogger dataLogger) {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Load Weight Data");
+        fileChooser.setFileFilter(new FileNameExtensionFilter(
+                "SmartScale Archive (*." + TimeSeriesArchive.EXTENSION + ")", TimeSeriesArchive.EXTENSION));
+        if (fileChooser.showOpenDialog(parent) != JFileChooser.APPROVE_OPTION) {
+            return false; // User canceled
+        }
+        final File fileToLoad = fileChooser.getSelectedFile();
+        
+        final JFrameProgress progress = new JFrameProgress(parent);
+        progress.setTitle("Loading data...");
+        progress.setLocationRelativeTo(parent);
+        
+        SwingWorker<Boolean, Void> worker = new SwingWorker<Boolean, Void>() {
+            @Override
+            protected Boolean doInBackground() throws Exception {
+                Path source = fileToLoad.toPath();
+                if (TimeSeriesArchive.firstTimestamp(source) < dataLogger.getNewestTimestamp()) {
+                    int[] answer = {JOptionPane.NO_OPTION};
+                    SwingUtilities.invokeAndWait(() -> answer[0] = JOptionPane.showConfirmDialog(parent,
+                            "The archive starts before the newest record in this log.\n"
+                                    + "Replace the current records with the archive?",
+                            "Import", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE));
+                    if (answer[0] != JOptionPane.YES_OPTION) {
+                        return false;
+                    }
+                    dataLogger.clearRecords();
+                }
+                
+                // Streamed in chunks, so a long archive is spilled as it loads instead of held in the heap
+                long[] chunkTimestamps = new long[DataLogger.IMPORT_CHUNK];
+                int[] chunkCentigrams = new int[DataLogger.IMPORT_CHUNK];
+                int[] buffered = {0};
+                long[] loaded = {0};
+                long[] previous = {dataLogger.getNewestTimestamp()};
+                try {
+                    TimeSeriesArchive.readAll(source, (timestamp, weightCentigrams) -> {
+                        if (timestamp < previous[0]) {
+                            throw new IllegalArgumentException("The archive's records are not in time order at record "
+                                    + (loaded[0] + buffered[0]) + "; the first " + loaded[0] + " were loaded");
+                        }
+                        previous[0] = timestamp;
+                        chunkTimestamps[buffered[0]] = timestamp;
+                        chunkCentigrams[buffered[0]] = weightCentigrams;
+                        if (++buffered[0] == DataLogger.IMPORT_CHUNK) {
+                            if (isCancelled()) {
+                                throw new CancellationException();
+                            }
+                            dataLogger.addRecords(chunkTimestamps, chunkCentigrams, buffered[0]);
+                            loaded[0] += buffered[0];
+                            buffered[0] = 0;
+                        }
+                    });
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(e.getMessage(), e);
+                } catch (CancellationException e) {
+                    return false;
+                }
+                dataLogger.addRecords(chunkTimestamps, chunkCentigrams, buffered[0]);
+                return true;
+            }
+            
+            @Override
+            protected void done() {
+                progress.dispose();
+            }
+        };
+        return runWithProgress(parent, worker, progress, null,
+                "Data loaded successfully from:\n" + fileToLoad.getPath(), "Import");
+    }
+    
+    /**
+     * Run a file worker behind a modal progress dialog and report the outcome
+     */
+    private static boolean runWithProgress(JFrame parent, SwingWorker<Boolean, Void> worker,
+            JFrameProgress progress, Runnable onCancel, String successMessage, String operation) {
+        worker.addPropertyChangeListener(evt -> {
+            if ("progress".equals(evt.getPropertyName())) {
+                progress.setProgress((Integer) evt.getNewValue());
+            }
+        });
+        progress.setWorker(worker);
+        worker.execute();
+        if (!worker.isDone()) {
+            // Modal: returns once done() disposes the dialog or the user cancels
+            progress.setVisible(true);
+        }
+        
+        if (worker.isCancelled()) {
+            // The cancel button interrupted the worker; make sure the task stops too
+            if (onCancel != null) {
+                onCancel.run();
+            }
+            return false;
+        }
+        try {
+            if (!worker.get()) {
+                return false;
+            }
+            JOptionPane.showMessageDialog(parent, 
+                    successMessage, 
+                    operation + " Complete", 
+                    JOptionPane.INFORMATION_MESSAGE);
+            return true;
+        } catch (InterruptedException | ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            JOptionPane.showMessageDialog(parent, 
+                    "Error during " + operation.toLowerCase() + ": " + cause.getMessage(), 
+                    operation + " Error", 
+                    JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.panama_hitek;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide metrics registry, published as JMX MBeans under the
+ * com.panama_hitek domain (jconsole, VisualVM, or any JMX client):
+ * type=Pipeline for the acquisition as a whole and type=Device,address=...
+ * for every scale. Recording is always on; it costs a few striped-counter
+ * increments and one histogram update per sample.
+ */
+public final class Metrics {
+
+    private static final String DOMAIN = "com.panama_hitek";
+    private static final Metrics INSTANCE = new Metrics();
+
+    private final PipelineMetrics pipeline = new PipelineMetrics(this);
+    private final Map<Long, DeviceMetrics> devices = new ConcurrentHashMap<>();
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "metrics-ticker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Metrics() {
+        register(pipeline, "type=Pipeline");
+        ticker.scheduleAtFixedRate(() -> devices.values().forEach(DeviceMetrics::tick), 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return Metrics of the acquisition as a whole
+     */
+    public static PipelineMetrics pipeline() {
+        return INSTANCE.pipeline;
+    }
+
+    /**
+     * @param address Device address, or DeviceRegistry.UNTAGGED
+     * @param dataLogger Store of the device
+     * @return Metrics of the device, registered on first use
+     */
+    public static DeviceMetrics device(long address, DataLogger dataLogger) {
+        DeviceMetrics metrics = INSTANCE.devices.get(address);
+        if (metrics != null && metrics.getDataLogger() == dataLogger) {
+            return metrics;
+        }
+        return INSTANCE.registerDevice(address, dataLogger);
+    }
+
+    private synchronized DeviceMetrics registerDevice(long address, DataLogger dataLogger) {
+        DeviceMetrics metrics = devices.get(address);
+        if (metrics != null && metrics.getDataLogger() == dataLogger) {
+            return metrics;
+        }
+        // A different store for the same address replaces the old entry
+        metrics = new DeviceMetrics(address, dataLogger);
+        devices.put(address, metrics);
+        register(metrics, "type=Device,address=" + ObjectName.quote(metrics.getAddress()));
+        return metrics;
+    }
+
+    long getListenerQueueDepth() {
+        long depth = 0;
+        for (DeviceMetrics metrics : devices.values()) {
+            depth += metrics.getListenerQueueDepth();
+        }
+        return depth;
+    }
+
+    private void register(Object mbean, String properties) {
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(mbean, name);
+        } catch (Exception e) {
+            // Metrics keep being recorded, they are just not visible over JMX
+            System.err.println("Could not register metrics " + properties + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.panama_hitek;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms of the acquisition pipeline, shared by every
+ * pipeline in the process. Counters are LongAdders (striped, so concurrent
+ * updates do not contend) and histograms are lock-free.
+ */
+public class PipelineMetrics implements PipelineMetricsMBean {
+
+    private final LongAdder samplesStored = new LongAdder();
+    private final LongAdder parseFailures = new LongAdder();
+    private final LongAdder suppressedSamples = new LongAdder();
+    private final LongAdder listenerDrops = new LongAdder();
+    private final LongAdder readerStalls = new LongAdder();
+    private volatile long lastSampleMillis = 0;
+
+    // Sample timestamp to stored, and to shown in the table
+    private final Histogram ingestLatency = new Histogram();
+    private final Histogram displayLatency = new Histogram();
+    private final Histogram edtDispatch = new Histogram();
+
+    private final Metrics registry;
+
+    PipelineMetrics(Metrics registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * @param timestamp Timestamp carried by the sample
+     * @param now Wall-clock time it was stored
+     */
+    public void recordStored(long timestamp, long now) {
+        samplesStored.increment();
+        lastSampleMillis = now;
+        ingestLatency.record(now - timestamp);
+    }
+
+    /**
+     * @param timestamp Timestamp carried by a sample that just became visible in the table
+     * @param now Wall-clock time
+     */
+    public void recordDisplayed(long timestamp, long now) {
+        displayLatency.record(now - timestamp);
+    }
+
+    /**
+     * @param nanos Time spent dispatching one EDT event
+     */
+    public void recordEdtDispatch(long nanos) {
+        edtDispatch.record(nanos / 1000);
+    }
+
+    public void recordParseFailure() {
+        parseFailures.increment();
+    }
+
+    public void recordSuppressed() {
+        suppressedSamples.increment();
+    }
+
+    public void recordListenerDrop() {
+        listenerDrops.increment();
+    }
+
+    public void recordReaderStall() {
+        readerStalls.increment();
+    }
+
+    @Override
+    public long getSamplesStored() {
+        return samplesStored.sum();
+    }
+
+    @Override
+    public long getParseFailures() {
+        return parseFailures.sum();
+    }
+
+    @Override
+    public long getSuppressedSamples() {
+        return suppressedSamples.sum();
+    }
+
+    @Override
+    public long getListenerDrops() {
+        return listenerDrops.sum();
+    }
+
+    @Override
+    public long getReaderStalls() {
+        return readerStalls.sum();
+    }
+
+    @Override
+    public long getListenerQueueDepth() {
+        return registry.getListenerQueueDepth();
+    }
+
+    @Override
+    public long getMillisSinceLastSample() {
+        long last = lastSampleMillis;
+        return last == 0 ? -1 : System.currentTimeMillis() - last;
+    }
+
+    @Override
+    public long getIngestLatencyP50() {
+        return ingestLatency.getPercentile(50);
+    }
+
+    @Override
+    public long getIngestLatencyP99() {
+        return ingestLatency.getPercentile(99);
+    }
+
+    @Override
+    public long getIngestLatencyMax() {
+        return ingestLatency.getMax();
+    }
+
+    @Override
+    public long getDisplayLatencyP50() {
+        return displayLatency.getPercentile(50);
+    }
+
+    @Override
+    public long getDisplayLatencyP99() {
+        return displayLatency.getPercentile(99);
+    }
+
+    @Override
+    public long getDisplayLatencyMax() {
+        return displayLatency.getMax();
+    }
+
+    @Override
+    public long getEdtDispatchMicrosP50() {
+        return edtDispatch.getPercentile(50);
+    }
+
+    @Override
+    public long getEdtDispatchMicrosP99() {
+        return edtDispatch.getPercentile(99);
+    }
+
+    @Override
+    public long getEdtDispatchMicrosMax() {
+        return edtDispatch.getMax();
+    }
+
+    @Override
+    public long getEdtEvents() {
+        return edtDispatch.getCount();
+    }
+
+    @Override
+    public void resetHistograms() {
+        ingestLatency.reset();
+        displayLatency.reset();
+        edtDispatch.reset();
+    }
+}
@@ -0,0 +1,47 @@
+package com.panama_hitek;
+
+/**
+ * Acquisition health, published as com.panama_hitek:type=Pipeline.
+ * Latencies are in milliseconds, EDT dispatch times in microseconds.
+ */
+public interface PipelineMetricsMBean {
+
+    long getSamplesStored();
+
+    long getParseFailures();
+
+    long getSuppressedSamples();
+
+    long getListenerDrops();
+
+    long getReaderStalls();
+
+    long getListenerQueueDepth();
+
+    long getMillisSinceLastSample();
+
+    long getIngestLatencyP50();
+
+    long getIngestLatencyP99();
+
+    long getIngestLatencyMax();
+
+    long getDisplayLatencyP50();
+
+    long getDisplayLatencyP99();
+
+    long getDisplayLatencyMax();
+
+    long getEdtDispatchMicrosP50();
+
+    long getEdtDispatchMicrosP99();
+
+    long getEdtDispatchMicrosMax();
+
+    long getEdtEvents();
+
+    /**
+     * Start the latency and dispatch-time histograms over
+     */
+    void resetHistograms();
+}
@@ -0,0 +1,169 @@
+package com.panama_hitek;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Real scales through the bundled Python scripts: scan_ble.py for scanning and
+ * one retrieve_data.py process per connection.
+ */
+public class PythonScaleSource implements ScaleSource {
+
+    private final Path basePath;
+    private final boolean binaryFrames;
+    private volatile Process process;
+
+    /**
+     * @param basePath Directory holding the python folder
+     * @param binaryFrames Ask retrieve_data.py for binary frames instead of JSON lines
+     */
+    public PythonScaleSource(Path basePath, boolean binaryFrames) {
+        this.basePath = basePath;
+        this.binaryFrames = binaryFrames;
+    }
+
+    /**
+     * @return Directory of the application JAR (or of the classes when run from the IDE)
+     */
+    public static Path defaultBasePath() {
+        try {
+            return Paths.get(PythonScaleSource.class
+                    .getProtectionDomain()
+                    .getCodeSource()
+                    .getLocation()
+                    .toURI())
+                    .getParent();
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException("Cannot locate the application directory", e);
+        }
+    }
+
+    /**
+     * @param name File name of a script in the python folder
+     * @return Path of the script
+     */
+    public Path getScript(String name) {
+        return basePath.resolve("python").resolve(name);
+    }
+
+    /**
+     * @return Python of the bundled virtual environment, or the system Python if there is none
+     */
+    public Path getPythonExecutable() {
+        Path pythonExePath = basePath.resolve("python").resolve("venv").resolve("python.exe");
+        if (!Files.exists(pythonExePath)) {
+            System.out.println("Python virtual environment not found, falling back to system Python");
+            return Paths.get("python");
+        }
+        return pythonExePath;
+    }
+
+    public boolean isBinaryFrames() {
+        return binaryFrames;
+    }
+
+    @Override
+    public boolean needsPythonEnvironment() {
+        return true;
+    }
+
+    @Override
+    public String scan() throws IOException, InterruptedException {
+        Path scriptPath = getScript("scan_ble.py");
+        if (!Files.exists(scriptPath)) {
+            return "{\"found\": false, \"error\": \"scan_ble.py not found at: " + scriptPath.toString() + "\"}";
+        }
+
+        ProcessBuilder builder = new ProcessBuilder("python", scriptPath.toString());
+        builder.redirectErrorStream(true);
+        Process scan = builder.start();
+
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(scan.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.append(line);
+            }
+        }
+
+        int exitCode = scan.waitFor();
+        if (exitCode != 0) {
+            return "{\"found\": false, \"error\": \"Python script exited with code " + exitCode + "\"}";
+        }
+        return output.toString().trim();
+    }
+
+    @Override
+    public InputStream start(List<String> addresses) throws IOException {
+        Path scriptPath = getScript("retrieve_data.py");
+
+        // Diagnostics
+        System.out.println("Base path: " + basePath);
+        System.out.println("Script path: " + scriptPath);
+        System.out.println("Script exists: " + Files.exists(scriptPath));
+
+        if (!Files.exists(scriptPath)) {
+            throw new IOException("retrieve_data.py not found at: " + scriptPath.toString());
+        }
+        Path pythonExePath = getPythonExecutable();
+        System.out.println("Python executable: " + pythonExePath);
+
+        // Start the Python process with unbuffered output (-u flag)
+        List<String> command = new ArrayList<>(List.of(
+            pythonExePath.toString(),
+            "-u",
+            scriptPath.toString()
+        ));
+        command.addAll(addresses);
+        if (binaryFrames) {
+            command.add("--binary");
+        }
+        System.out.println("Command: " + String.join(" ", command));
+
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+
+        System.out.println("Starting Python process...");
+        process = builder.start();
+        System.out.println("Python process started");
+        return process.getInputStream();
+    }
+
+    @Override
+    public SampleDecoder createDecoder() {
+        return binaryFrames ? new BinaryFrameDecoder() : new JsonLineDecoder();
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+        Process running = process;
+        return running == null ? 0 : running.waitFor();
+    }
+
+    @Override
+    public void stop() {
+        Process running = process;
+        if (running != null && running.isAlive()) {
+            running.destroy();
+            try {
+                // Wait briefly for the process to terminate
+                if (!running.waitFor(2, TimeUnit.SECONDS)) {
+                    running.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                running.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.panama_hitek;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+
+/**
+ * Long-lived sidecar.py process shared by scanning and acquisition.
+ *
+ * The interpreter, bleak and the BLE adapter are initialized once, in the
+ * background, when the application starts. After that a scan answers from a
+ * scanner that is already running, and connecting or reconnecting is a single
+ * "subscribe" line on stdin instead of a new process. Samples and command
+ * replies share stdout; a single ScaleIngestPipeline decodes both, storing the
+ * samples through the DeviceRegistry and handing replies back here, where they
+ * complete the pending commands in the order they were sent.
+ */
+public class PythonSidecar implements AutoCloseable {
+
+    private static final long PING_TIMEOUT_SECONDS = 30;
+
+    private final Process process;
+    private final OutputStream commands;
+    private final ScaleIngestPipeline pipeline;
+
+    // Commands waiting for their reply, oldest first; guarded by itself
+    private final ArrayDeque<CompletableFuture<JSONObject>> pending = new ArrayDeque<>();
+    private volatile boolean closed = false;
+
+    private PythonSidecar(Process process, ScaleIngestPipeline pipeline) {
+        this.process = process;
+        this.commands = process.getOutputStream();
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Start sidecar.py and wait until it answers a ping
+     * @param python Python executable
+     * @param script Path of sidecar.py
+     * @param devices Stores the samples of subscribed scales
+     * @param binaryFrames Ask for binary frames instead of JSON lines
+     * @return The running sidecar
+     * @throws IOException if the process cannot be started or does not answer
+     */
+    public static PythonSidecar launch(Path python, Path script, DeviceRegistry devices, boolean binaryFrames)
+            throws IOException {
+        if (!Files.exists(script)) {
+            throw new IOException("sidecar.py not found at: " + script);
+        }
+        List<String> command = new ArrayList<>(List.of(python.toString(), "-u", script.toString()));
+        if (binaryFrames) {
+            command.add("--binary");
+        }
+        ProcessBuilder builder = new ProcessBuilder(command);
+        // Python errors go to our stderr instead of corrupting the sample stream
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = builder.start();
+
+        SampleDecoder decoder = binaryFrames ? new BinaryFrameDecoder() : new JsonLineDecoder();
+        ScaleIngestPipeline pipeline = new ScaleIngestPipeline(devices, decoder);
+        PythonSidecar sidecar = new PythonSidecar(process, pipeline);
+        pipeline.addSampleListener(sidecar.replyListener);
+        pipeline.start(process.getInputStream());
+
+        try {
+            sidecar.send("ping").get(PING_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            sidecar.close();
+            throw new IOException("Sidecar did not answer: " + e.getMessage(), e);
+        }
+        return sidecar;
+    }
+
+    // Completes pending commands; runs on the pipeline's parser thread
+    private final ScaleIngestPipeline.SampleListener replyListener = new ScaleIngestPipeline.SampleListener() {
+        @Override
+        public void onSample(long timestamp, double weight) {
+        }
+
+        @Override
+        public void onControl(String message) {
+            CompletableFuture<JSONObject> reply;
+            synchronized (pending) {
+                reply = pending.poll();
+            }
+            if (reply == null) {
+                System.err.println("Unexpected sidecar reply: " + message);
+                return;
+            }
+            try {
+                reply.complete(new JSONObject(message));
+            } catch (RuntimeException e) {
+                reply.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void onStreamClosed() {
+            closed = true;
+            failPending(new IOException("Sidecar process exited"));
+        }
+    };
+
+    /**
+     * Send one command line
+     * @param command Command and arguments, e.g. "subscribe 50:FB:19:8A:A0:C2"
+     * @return The reply, completed on the pipeline thread
+     */
+    public CompletableFuture<JSONObject> send(String command) {
+        CompletableFuture<JSONObject> reply = new CompletableFuture<>();
+        synchronized (pending) {
+            if (closed) {
+                reply.completeExceptionally(new IOException("Sidecar is not running"));
+                return reply;
+            }
+            // Queue and write under one lock so replies match the write order
+            pending.add(reply);
+            try {
+                commands.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+                commands.flush();
+            } catch (IOException e) {
+                pending.remove(reply);
+                reply.completeExceptionally(e);
+            }
+        }
+        return reply;
+    }
+
+    /**
+     * Look for scales with the already running scanner
+     * @param timeoutSeconds Longest time to wait when no scale has been seen recently
+     * @return Reply in the format printed by scan_ble.py: found, devices[address, name, rssi]
+     */
+    public CompletableFuture<JSONObject> scan(double timeoutSeconds) {
+        return send("scan " + timeoutSeconds);
+    }
+
+    /**
+     * Start streaming the samples of the given scales
+     * @param addresses MAC addresses
+     * @return Reply listing every subscribed address
+     */
+    public CompletableFuture<JSONObject> subscribe(List<String> addresses) {
+        return send("subscribe " + String.join(" ", addresses));
+    }
+
+    /**
+     * Stop streaming samples of every scale
+     * @return Reply listing the addresses still subscribed
+     */
+    public CompletableFuture<JSONObject> unsubscribeAll() {
+        return send("unsubscribe");
+    }
+
+    /**
+     * @return Pipeline decoding the sidecar output, e.g. to watch for timeouts
+     */
+    public ScaleIngestPipeline getPipeline() {
+        return pipeline;
+    }
+
+    public boolean isAlive() {
+        return !closed && process.isAlive();
+    }
+
+    private void failPending(Exception cause) {
+        synchronized (pending) {
+            CompletableFuture<JSONObject> reply;
+            while ((reply = pending.poll()) != null) {
+                reply.completeExceptionally(cause);
+            }
+        }
+    }
+
+    /**
+     * Ask the sidecar to quit, then stop it
+     */
+    @Override
+    public void close() {
+        synchronized (pending) {
+            if (!closed && process.isAlive()) {
+                try {
+                    commands.write("quit\n".getBytes(StandardCharsets.UTF_8));
+                    commands.flush();
+                } catch (IOException e) {
+                    // Destroyed below anyway
+                }
+            }
+            closed = true;
+        }
+        failPending(new IOException("Sidecar closed"));
+        try {
+            if (!process.waitFor(2, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+        pipeline.stop();
+    }
+}
@@ -0,0 +1,212 @@
+package com.panama_hitek;
+
+import java.util.Arrays;
+import org.jfree.data.DomainOrder;
+import org.jfree.data.xy.AbstractXYDataset;
+
+/**
+ * Single-series XYDataset kept in fixed-capacity circular primitive arrays.
+ *
+ * Samples may be appended from any thread. They land in a small staging
+ * buffer and cost no events; {@link #flush()} moves them into the ring on the
+ * EDT and fires one change event for the whole batch, so the chart only
+ * repaints when there is something new and the data never changes under a
+ * paint in progress. When the ring is full the oldest point is overwritten,
+ * and points older than the optional time window are dropped from the tail,
+ * both in constant time per point.
+ */
+public class RingXYDataset extends AbstractXYDataset {
+
+    private final Comparable<?> seriesKey;
+
+    // Ring, only touched on the EDT
+    private double[] xValues;
+    private double[] yValues;
+    private int start = 0;
+    private int count = 0;
+    private boolean ascending = true;
+    private long timeWindowMillis = 0;
+
+    // Appended since the last flush, guarded by stagingLock
+    private final Object stagingLock = new Object();
+    private long[] stagedX = new long[256];
+    private double[] stagedY = new double[256];
+    private int stagedCount = 0;
+    private boolean clearRequested = false;
+
+    /**
+     * @param seriesKey Name of the series
+     * @param capacity Maximum number of points kept
+     */
+    public RingXYDataset(Comparable<?> seriesKey, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.seriesKey = seriesKey;
+        this.xValues = new double[capacity];
+        this.yValues = new double[capacity];
+    }
+
+    /**
+     * Queue a point; it becomes visible at the next flush. Safe to call from any thread.
+     * @param x Timestamp in milliseconds since epoch
+     * @param y Value
+     */
+    public void append(long x, double y) {
+        synchronized (stagingLock) {
+            if (stagedCount == stagedX.length) {
+                stagedX = Arrays.copyOf(stagedX, stagedCount * 2);
+                stagedY = Arrays.copyOf(stagedY, stagedCount * 2);
+            }
+            stagedX[stagedCount] = x;
+            stagedY[stagedCount] = y;
+            stagedCount++;
+        }
+    }
+
+    /**
+     * Drop every point at the next flush. Safe to call from any thread.
+     */
+    public void clear() {
+        synchronized (stagingLock) {
+            stagedCount = 0;
+            clearRequested = true;
+        }
+    }
+
+    /**
+     * Apply the queued points and fire a single change event if anything changed.
+     * Must be called on the EDT.
+     * @return true if the dataset changed
+     */
+    public boolean flush() {
+        boolean changed;
+        synchronized (stagingLock) {
+            changed = clearRequested || stagedCount > 0;
+            if (clearRequested) {
+                start = 0;
+                count = 0;
+                ascending = true;
+                clearRequested = false;
+            }
+            for (int i = 0; i < stagedCount; i++) {
+                put(stagedX[i], stagedY[i]);
+            }
+            stagedCount = 0;
+        }
+        if (changed) {
+            evictOutsideWindow();
+            fireDatasetChanged();
+        }
+        return changed;
+    }
+
+    private void put(double x, double y) {
+        int capacity = xValues.length;
+        if (count > 0 && x < xValues[(start + count - 1) % capacity]) {
+            ascending = false;
+        }
+        int slot = (start + count) % capacity;
+        xValues[slot] = x;
+        yValues[slot] = y;
+        if (count == capacity) {
+            start = (start + 1) % capacity;
+        } else {
+            count++;
+        }
+    }
+
+    private void evictOutsideWindow() {
+        if (timeWindowMillis <= 0 || count == 0) {
+            return;
+        }
+        int capacity = xValues.length;
+        double cutoff = xValues[(start + count - 1) % capacity] - timeWindowMillis;
+        while (count > 1 && xValues[start] < cutoff) {
+            start = (start + 1) % capacity;
+            count--;
+        }
+    }
+
+    /**
+     * Change the number of points kept, preserving the newest ones. Must be called on the EDT.
+     * @param capacity Maximum number of points kept
+     */
+    public void setCapacity(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        double[] x = new double[capacity];
+        double[] y = new double[capacity];
+        int kept = Math.min(count, capacity);
+        for (int i = 0; i < kept; i++) {
+            int slot = (start + count - kept + i) % xValues.length;
+            x[i] = xValues[slot];
+            y[i] = yValues[slot];
+        }
+        xValues = x;
+        yValues = y;
+        start = 0;
+        count = kept;
+        fireDatasetChanged();
+    }
+
+    public int getCapacity() {
+        return xValues.length;
+    }
+
+    /**
+     * Keep only points within this span of the newest one. Must be called on the EDT.
+     * @param millis Window length in milliseconds, 0 to disable
+     */
+    public void setTimeWindow(long millis) {
+        this.timeWindowMillis = Math.max(0, millis);
+        evictOutsideWindow();
+        fireDatasetChanged();
+    }
+
+    public long getTimeWindow() {
+        return timeWindowMillis;
+    }
+
+    @Override
+    public int getSeriesCount() {
+        return 1;
+    }
+
+    @Override
+    public Comparable<?> getSeriesKey(int series) {
+        return seriesKey;
+    }
+
+    @Override
+    public DomainOrder getDomainOrder() {
+        // Lets the renderer binary-search the visible range instead of scanning every point
+        return ascending ? DomainOrder.ASCENDING : DomainOrder.NONE;
+    }
+
+    @Override
+    public int getItemCount(int series) {
+        return count;
+    }
+
+    @Override
+    public double getXValue(int series, int item) {
+        return xValues[(start + item) % xValues.length];
+    }
+
+    @Override
+    public double getYValue(int series, int item) {
+        return yValues[(start + item) % yValues.length];
+    }
+
+    @Override
+    public Number getX(int series, int item) {
+        return getXValue(series, item);
+    }
+
+    @Override
+    public Number getY(int series, int item) {
+        return getYValue(series, item);
+    }
+}
@@ -0,0 +1,273 @@
+package com.panama_hitek;
+
+import java.util.Arrays;
+
+/**
+ * Precomputed aggregates of the stored samples at several time resolutions.
+ *
+ * Every sample updates one bucket per level (1 s, 10 s, 1 min and 10 min), so
+ * maintaining the pyramid is O(levels) per sample. A range query then reads
+ * the coarsest level that still resolves what the caller needs, which costs
+ * O(buckets in range) instead of O(samples in range). Buckets only exist for
+ * periods that received samples.
+ *
+ * The 1 s level costs 56 bytes per second of data, which adds up over a long
+ * session. DataLogger therefore drops its buckets for the period that was
+ * spilled to disk with {@link #dropFinest}; the coarser levels still cover it.
+ *
+ * Not thread safe; DataLogger guards it with its own lock.
+ */
+public class RollupPyramid {
+
+    // Receives one aggregated bucket
+    public interface BucketConsumer {
+        void onBucket(long start, long minTimestamp, int minCentigrams, long maxTimestamp, int maxCentigrams,
+                double meanCentigrams, int count, int lastCentigrams);
+    }
+
+    /** Bucket length of every level in milliseconds, finest first */
+    public static final long[] LEVEL_MILLIS = {1_000L, 10_000L, 60_000L, 600_000L};
+
+    private final Level[] levels = new Level[LEVEL_MILLIS.length];
+
+    public RollupPyramid() {
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = new Level(LEVEL_MILLIS[i]);
+        }
+    }
+
+    /**
+     * Add a sample to every level
+     * @param timestamp Timestamp in milliseconds since epoch
+     * @param centigrams Weight in hundredths of a gram
+     */
+    public void add(long timestamp, int centigrams) {
+        for (Level level : levels) {
+            level.add(timestamp, centigrams);
+        }
+    }
+
+    /**
+     * Drop all buckets
+     */
+    public void clear() {
+        for (Level level : levels) {
+            level.clear();
+        }
+    }
+
+    /**
+     * Pick the coarsest level whose buckets are not longer than the requested resolution
+     * @param resolutionMillis Longest usable bucket, e.g. the time covered by one pixel
+     * @return Level index, or -1 if even the finest level is too coarse
+     */
+    public int levelFor(long resolutionMillis) {
+        for (int i = levels.length - 1; i >= 0; i--) {
+            if (LEVEL_MILLIS[i] <= resolutionMillis) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param level Level index
+     * @return Number of buckets at that level
+     */
+    public int bucketCount(int level) {
+        return levels[level].size;
+    }
+
+    /**
+     * @return Start of the oldest bucket of the coarsest level, no later than the oldest sample;
+     *         Long.MAX_VALUE if there is none
+     */
+    public long firstBucketStart() {
+        Level coarsest = levels[levels.length - 1];
+        return coarsest.size == 0 ? Long.MAX_VALUE : coarsest.start[0];
+    }
+
+    /**
+     * @return Start of the oldest bucket still held by the finest level; Long.MAX_VALUE if there is none
+     */
+    public long finestStart() {
+        return levels[0].size == 0 ? Long.MAX_VALUE : levels[0].start[0];
+    }
+
+    /**
+     * Drop the buckets of the finest level that end at or before a time.
+     * Queries at that level return nothing for the dropped period.
+     * @param before Time in milliseconds since epoch, e.g. the oldest sample still in the heap
+     */
+    public void dropFinest(long before) {
+        levels[0].dropBefore(before);
+    }
+
+    /**
+     * Read the buckets of one level overlapping from &lt;= t &lt; to, in time order
+     * @param level Level index
+     * @param from Inclusive lower bound in milliseconds since epoch
+     * @param to Exclusive upper bound in milliseconds since epoch
+     * @param consumer Receiver of the buckets
+     * @return Number of buckets read
+     */
+    public int query(int level, long from, long to, BucketConsumer consumer) {
+        Level l = levels[level];
+        // Rounding the smallest longs down to a bucket start would overflow
+        int i = from < Long.MIN_VALUE + l.width ? 0 : l.indexOf(Math.floorDiv(from, l.width) * l.width);
+        int read = 0;
+        for (; i < l.size && l.start[i] < to; i++) {
+            consumer.onBucket(l.start[i], l.minTime[i], l.min[i], l.maxTime[i], l.max[i],
+                    (double) l.sum[i] / l.count[i], l.count[i], l.last[i]);
+            read++;
+        }
+        return read;
+    }
+
+    /**
+     * One resolution, stored as growable primitive columns sorted by bucket start
+     */
+    private static final class Level {
+        private static final int INITIAL_CAPACITY = 256;
+
+        final long width;
+        long[] start = new long[INITIAL_CAPACITY];
+        long[] minTime = new long[INITIAL_CAPACITY];
+        long[] maxTime = new long[INITIAL_CAPACITY];
+        long[] lastTime = new long[INITIAL_CAPACITY];
+        long[] sum = new long[INITIAL_CAPACITY];
+        int[] min = new int[INITIAL_CAPACITY];
+        int[] max = new int[INITIAL_CAPACITY];
+        int[] last = new int[INITIAL_CAPACITY];
+        int[] count = new int[INITIAL_CAPACITY];
+        int size = 0;
+
+        Level(long width) {
+            this.width = width;
+        }
+
+        void add(long timestamp, int centigrams) {
+            long bucket = Math.floorDiv(timestamp, width) * width;
+            int i;
+            if (size > 0 && start[size - 1] == bucket) {
+                // Common case: the sample falls into the newest bucket
+                i = size - 1;
+            } else if (size == 0 || start[size - 1] < bucket) {
+                i = open(size, bucket);
+            } else {
+                // Out-of-order sample; DataLogger keeps its records sorted, but callers need not
+                i = indexOf(bucket);
+                if (i == size || start[i] != bucket) {
+                    i = open(i, bucket);
+                }
+            }
+
+            if (count[i] == 0) {
+                minTime[i] = maxTime[i] = lastTime[i] = timestamp;
+                min[i] = max[i] = last[i] = centigrams;
+            } else {
+                if (centigrams < min[i]) {
+                    min[i] = centigrams;
+                    minTime[i] = timestamp;
+                }
+                if (centigrams > max[i]) {
+                    max[i] = centigrams;
+                    maxTime[i] = timestamp;
+                }
+                if (timestamp >= lastTime[i]) {
+                    last[i] = centigrams;
+                    lastTime[i] = timestamp;
+                }
+            }
+            sum[i] += centigrams;
+            count[i]++;
+        }
+
+        // Insert an empty bucket at position i
+        private int open(int i, long bucket) {
+            if (size == start.length) {
+                resize(size * 2);
+            }
+            if (i < size) {
+                int moved = size - i;
+                System.arraycopy(start, i, start, i + 1, moved);
+                System.arraycopy(minTime, i, minTime, i + 1, moved);
+                System.arraycopy(maxTime, i, maxTime, i + 1, moved);
+                System.arraycopy(lastTime, i, lastTime, i + 1, moved);
+                System.arraycopy(sum, i, sum, i + 1, moved);
+                System.arraycopy(min, i, min, i + 1, moved);
+                System.arraycopy(max, i, max, i + 1, moved);
+                System.arraycopy(last, i, last, i + 1, moved);
+                System.arraycopy(count, i, count, i + 1, moved);
+            }
+            start[i] = bucket;
+            sum[i] = 0;
+            count[i] = 0;
+            size++;
+            return i;
+        }
+
+        // Remove the buckets ending at or before the given time, and give back
+        // capacity the level no longer needs
+        void dropBefore(long time) {
+            int dropped = indexOf(Math.floorDiv(time, width) * width);
+            if (dropped == 0) {
+                return;
+            }
+            int kept = size - dropped;
+            System.arraycopy(start, dropped, start, 0, kept);
+            System.arraycopy(minTime, dropped, minTime, 0, kept);
+            System.arraycopy(maxTime, dropped, maxTime, 0, kept);
+            System.arraycopy(lastTime, dropped, lastTime, 0, kept);
+            System.arraycopy(sum, dropped, sum, 0, kept);
+            System.arraycopy(min, dropped, min, 0, kept);
+            System.arraycopy(max, dropped, max, 0, kept);
+            System.arraycopy(last, dropped, last, 0, kept);
+            System.arraycopy(count, dropped, count, 0, kept);
+            size = kept;
+            if (start.length > INITIAL_CAPACITY && size * 4 < start.length) {
+                resize(Math.max(INITIAL_CAPACITY, size * 2));
+            }
+        }
+
+        private void resize(int capacity) {
+            start = Arrays.copyOf(start, capacity);
+            minTime = Arrays.copyOf(minTime, capacity);
+            maxTime = Arrays.copyOf(maxTime, capacity);
+            lastTime = Arrays.copyOf(lastTime, capacity);
+            sum = Arrays.copyOf(sum, capacity);
+            min = Arrays.copyOf(min, capacity);
+            max = Arrays.copyOf(max, capacity);
+            last = Arrays.copyOf(last, capacity);
+            count = Arrays.copyOf(count, capacity);
+        }
+
+        // First bucket starting at or after the given time
+        int indexOf(long bucket) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (start[mid] < bucket) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        void clear() {
+            start = new long[INITIAL_CAPACITY];
+            minTime = new long[INITIAL_CAPACITY];
+            maxTime = new long[INITIAL_CAPACITY];
+            lastTime = new long[INITIAL_CAPACITY];
+            sum = new long[INITIAL_CAPACITY];
+            min = new int[INITIAL_CAPACITY];
+            max = new int[INITIAL_CAPACITY];
+            last = new int[INITIAL_CAPACITY];
+            count = new int[INITIAL_CAPACITY];
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.panama_hitek;
+
+/**
+ * Session and sliding-window statistics maintained as samples are appended.
+ *
+ * The session part is Welford's online mean and variance plus min and max.
+ * The window covers the samples no older than the window length before the
+ * newest one: a FIFO of the samples in the window carries the running sum and
+ * sum of squares, and two monotonic deques carry the minimum and maximum, so
+ * every append costs amortized O(1) and reading a {@link Summary} costs O(1)
+ * however long the session is. Assumes samples arrive in timestamp order,
+ * which DataLogger guarantees. Not thread-safe; DataLogger updates and reads it
+ * under its own lock.
+ */
+public class RunningStats {
+
+    private final long windowMillis;
+
+    // Session, Welford's algorithm
+    private long count = 0;
+    private double mean = 0;
+    private double m2 = 0;
+    private int min = Integer.MAX_VALUE;
+    private int max = Integer.MIN_VALUE;
+
+    // Window: sums of deviations from the first sample, which keeps them small and exact
+    private final Deque window = new Deque();
+    private final Deque windowMin = new Deque();
+    private final Deque windowMax = new Deque();
+    private long origin = 0;
+    private long windowSum = 0;
+    private long windowSumOfSquares = 0;
+    private long newest = Long.MIN_VALUE;
+
+    /**
+     * @param windowMillis Length of the sliding window in milliseconds
+     */
+    public RunningStats(long windowMillis) {
+        if (windowMillis <= 0) {
+            throw new IllegalArgumentException("Window must be positive: " + windowMillis);
+        }
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Add a sample
+     * @param timestamp Timestamp in milliseconds since epoch
+     * @param centigrams Weight in hundredths of a gram
+     */
+    public void add(long timestamp, int centigrams) {
+        if (count == 0) {
+            origin = centigrams;
+        }
+        count++;
+        double delta = centigrams - mean;
+        mean += delta / count;
+        m2 += delta * (centigrams - mean);
+        min = Math.min(min, centigrams);
+        max = Math.max(max, centigrams);
+
+        newest = Math.max(newest, timestamp);
+        long cutoff = newest - windowMillis;
+        while (!window.isEmpty() && window.firstTimestamp() < cutoff) {
+            long deviation = window.firstValue() - origin;
+            windowSum -= deviation;
+            windowSumOfSquares -= deviation * deviation;
+            window.removeFirst();
+        }
+        while (!windowMin.isEmpty() && windowMin.firstTimestamp() < cutoff) {
+            windowMin.removeFirst();
+        }
+        while (!windowMax.isEmpty() && windowMax.firstTimestamp() < cutoff) {
+            windowMax.removeFirst();
+        }
+
+        long deviation = centigrams - origin;
+        windowSum += deviation;
+        windowSumOfSquares += deviation * deviation;
+        window.addLast(timestamp, centigrams);
+        // A sample can never be the minimum again once a newer one is not larger
+        while (!windowMin.isEmpty() && windowMin.lastValue() >= centigrams) {
+            windowMin.removeLast();
+        }
+        windowMin.addLast(timestamp, centigrams);
+        while (!windowMax.isEmpty() && windowMax.lastValue() <= centigrams) {
+            windowMax.removeLast();
+        }
+        windowMax.addLast(timestamp, centigrams);
+    }
+
+    /**
+     * Forget every sample
+     */
+    public void clear() {
+        count = 0;
+        mean = 0;
+        m2 = 0;
+        min = Integer.MAX_VALUE;
+        max = Integer.MIN_VALUE;
+        window.clear();
+        windowMin.clear();
+        windowMax.clear();
+        windowSum = 0;
+        windowSumOfSquares = 0;
+        newest = Long.MIN_VALUE;
+    }
+
+    /**
+     * @return Current values
+     */
+    public Summary summary() {
+        int n = window.size();
+        double windowMean = 0;
+        double windowVariance = 0;
+        if (n > 0) {
+            double meanDeviation = (double) windowSum / n;
+            windowMean = origin + meanDeviation;
+            windowVariance = n > 1
+                    ? Math.max(0, (windowSumOfSquares - meanDeviation * windowSum) / (n - 1)) : 0;
+        }
+        return new Summary(count, min, max, mean, count > 1 ? m2 / (count - 1) : 0,
+                windowMillis, n,
+                n > 0 ? windowMin.firstValue() : 0, n > 0 ? windowMax.firstValue() : 0,
+                windowMean, windowVariance);
+    }
+
+    /**
+     * Immutable statistics in grams. Min, max and mean are 0 while there are no samples.
+     */
+    public static final class Summary {
+        private final long count;
+        private final int min;
+        private final int max;
+        private final double mean;
+        private final double variance;
+        private final long windowMillis;
+        private final int windowCount;
+        private final int windowMin;
+        private final int windowMax;
+        private final double windowMean;
+        private final double windowVariance;
+
+        private Summary(long count, int min, int max, double mean, double variance, long windowMillis,
+                int windowCount, int windowMin, int windowMax, double windowMean, double windowVariance) {
+            this.count = count;
+            this.min = count > 0 ? min : 0;
+            this.max = count > 0 ? max : 0;
+            this.mean = mean;
+            this.variance = variance;
+            this.windowMillis = windowMillis;
+            this.windowCount = windowCount;
+            this.windowMin = windowMin;
+            this.windowMax = windowMax;
+            this.windowMean = windowMean;
+            this.windowVariance = windowVariance;
+        }
+
+        /**
+         * @return Samples in the session
+         */
+        public long getCount() {
+            return count;
+        }
+
+        public double getMin() {
+            return min / 100.0;
+        }
+
+        public double getMax() {
+            return max / 100.0;
+        }
+
+        public double getMean() {
+            return mean / 100.0;
+        }
+
+        /**
+         * @return Sample standard deviation over the session in grams
+         */
+        public double getStdDev() {
+            return Math.sqrt(variance) / 100.0;
+        }
+
+        /**
+         * @return Length of the sliding window in milliseconds
+         */
+        public long getWindowMillis() {
+            return windowMillis;
+        }
+
+        /**
+         * @return Samples in the window ending at the newest sample
+         */
+        public int getWindowCount() {
+            return windowCount;
+        }
+
+        public double getWindowMin() {
+            return windowMin / 100.0;
+        }
+
+        public double getWindowMax() {
+            return windowMax / 100.0;
+        }
+
+        public double getWindowMean() {
+            return windowMean / 100.0;
+        }
+
+        /**
+         * @return Sample standard deviation over the window in grams
+         */
+        public double getWindowStdDev() {
+            return Math.sqrt(windowVariance) / 100.0;
+        }
+    }
+
+    // Growable ring of (timestamp, centigrams) pairs
+    private static final class Deque {
+        private long[] timestamps = new long[64];
+        private int[] values = new int[64];
+        private int head = 0;
+        private int size = 0;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long firstTimestamp() {
+            return timestamps[head];
+        }
+
+        int firstValue() {
+            return values[head];
+        }
+
+        int lastValue() {
+            return values[(head + size - 1) & (values.length - 1)];
+        }
+
+        void addLast(long timestamp, int value) {
+            if (size == values.length) {
+                grow();
+            }
+            int slot = (head + size) & (values.length - 1);
+            timestamps[slot] = timestamp;
+            values[slot] = value;
+            size++;
+        }
+
+        void removeFirst() {
+            head = (head + 1) & (values.length - 1);
+            size--;
+        }
+
+        void removeLast() {
+            size--;
+        }
+
+        void clear() {
+            head = 0;
+            size = 0;
+        }
+
+        private void grow() {
+            int capacity = values.length * 2;
+            long[] newTimestamps = new long[capacity];
+            int[] newValues = new int[capacity];
+            for (int i = 0; i < size; i++) {
+                int slot = (head + i) & (values.length - 1);
+                newTimestamps[i] = timestamps[slot];
+                newValues[i] = values[slot];
+            }
+            timestamps = newTimestamps;
+            values = newValues;
+            head = 0;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.panama_hitek;
+
+/**
+ * Turns raw bytes read from the acquisition process into weight samples.
+ * Implementations are stateful (a sample may span several chunks) and are
+ * only ever driven by the pipeline's parser thread.
+ */
+public interface SampleDecoder {
+
+    /**
+     * Receives decoded samples
+     */
+    interface Sink {
+        /**
+         * @param device 48-bit Bluetooth address of the reporting scale, or DeviceRegistry.UNTAGGED
+         * @param timestamp Sample timestamp in milliseconds since epoch
+         * @param centigrams Weight in hundredths of a gram, the scale's native resolution
+         */
+        void onSample(long device, long timestamp, int centigrams);
+
+        /**
+         * @param reason Description of the input that could not be decoded
+         */
+        void onMalformed(String reason);
+
+        /**
+         * @param message Reply of the acquisition process to a command, JSON text
+         */
+        default void onControl(String message) {
+        }
+    }
+
+    /**
+     * Decode the next chunk of the stream
+     * @param buffer Chunk bytes
+     * @param offset Start of valid bytes
+     * @param length Number of valid bytes
+     * @param sink Receiver of decoded samples
+     */
+    void decode(byte[] buffer, int offset, int length, Sink sink);
+
+    /**
+     * Forget any partially decoded input
+     */
+    void reset();
+}
@@ -0,0 +1,315 @@
+package com.panama_hitek;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, crash-safe journal of weight samples backed by memory-mapped,
+ * fixed-size segment files.
+ *
+ * Every sample is a fixed-width 32-byte record written straight into the
+ * mapping, so appending costs no write() syscall; the OS flushes dirty pages
+ * and {@link #force()} is called at most once per flush interval. The OS may
+ * write those pages back in any order and only partly, so every record carries
+ * {@link #FLAG_VALID} and a CRC32 of its data. After a crash or power loss
+ * replay stops cleanly at the first record that is unmarked or torn.
+ *
+ * Segment layout: 32-byte header (magic, version, record size) followed by
+ * records of: timestamp (int64 ms), centigrams (int32), low 32 bits of the
+ * device address (int32), flags (int32), high 16 bits of the device address
+ * (int32), CRC32 of the preceding 24 bytes (int32), reserved (int32). All
+ * values are little-endian. Version 1 segments hold 24-byte records without
+ * the checksum; they are still replayed, and appending continues in a new
+ * segment after them.
+ */
+public class SampleJournal implements AutoCloseable {
+
+    // Receives records during replay
+    public interface RecordConsumer {
+        void onRecord(long timestamp, int centigrams, long device, int flags);
+    }
+
+    public static final int MAGIC = 0x314A5353; // "SSJ1"
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_SIZE = 32;
+    // Version 1 records: the same fields up to the device address, no checksum
+    private static final int LEGACY_RECORD_SIZE = 24;
+    // Bytes of a record covered by its checksum
+    private static final int CHECKED_SIZE = 24;
+    public static final int FLAG_VALID = 1;
+    /** Loaded from an archive rather than captured live */
+    public static final int FLAG_IMPORTED = 2;
+    /** Weight is the output of a SmoothingFilter, not the raw reading */
+    public static final int FLAG_SMOOTHED = 4;
+    /** Not a sample: the device's records before this one were cleared */
+    public static final int FLAG_CLEARED = 8;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".ssj";
+    private static final int DEFAULT_RECORDS_PER_SEGMENT = 1 << 20;
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+
+    private final Path directory;
+    private final int recordsPerSegment;
+    private final long segmentSize;
+    private final long flushIntervalMillis;
+
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private int segmentIndex = 0;
+    private int segmentRecords = 0;
+    private long lastForce = 0;
+    private long recordCount = 0;
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Open (or create) a journal in the given directory
+     * @param directory Directory holding the segment files
+     * @throws IOException if the directory or a segment cannot be opened
+     */
+    public SampleJournal(File directory) throws IOException {
+        this(directory, DEFAULT_RECORDS_PER_SEGMENT, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Open (or create) a journal in the given directory
+     * @param directory Directory holding the segment files
+     * @param recordsPerSegment Capacity of every segment before rolling to the next one
+     * @param flushIntervalMillis Minimum time between two forced flushes to disk
+     * @throws IOException if the directory or a segment cannot be opened
+     */
+    public SampleJournal(File directory, int recordsPerSegment, long flushIntervalMillis) throws IOException {
+        this.directory = directory.toPath();
+        this.recordsPerSegment = recordsPerSegment;
+        this.segmentSize = HEADER_SIZE + (long) recordsPerSegment * RECORD_SIZE;
+        this.flushIntervalMillis = flushIntervalMillis;
+        Files.createDirectories(this.directory);
+    }
+
+    /**
+     * Map every segment in order and hand its valid records to the consumer, then
+     * position the journal for appending after the last valid record.
+     * Must be called once before the first {@link #append}.
+     * @param consumer Receiver of the recovered records, may be null
+     * @return Number of records recovered
+     * @throws IOException if a segment cannot be read
+     */
+    public synchronized long replay(RecordConsumer consumer) throws IOException {
+        List<Path> segments = listSegments();
+        recordCount = 0;
+        boolean fresh = segments.isEmpty();
+        for (Path path : segments) {
+            int index = segmentIndexOf(path);
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+                if (ch.size() < HEADER_SIZE) {
+                    continue;
+                }
+                MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                map.order(ByteOrder.LITTLE_ENDIAN);
+                int recordSize = map.getInt(8);
+                if (map.getInt(0) != MAGIC || (recordSize != RECORD_SIZE && recordSize != LEGACY_RECORD_SIZE)) {
+                    System.out.println("Skipping unrecognized journal segment: " + path);
+                    continue;
+                }
+                boolean legacy = recordSize == LEGACY_RECORD_SIZE;
+                int capacity = (int) ((ch.size() - HEADER_SIZE) / recordSize);
+                int valid = 0;
+                while (valid < capacity) {
+                    int pos = HEADER_SIZE + valid * recordSize;
+                    int flags = map.getInt(pos + 16);
+                    if ((flags & FLAG_VALID) == 0) {
+                        break;
+                    }
+                    if (!legacy && map.getInt(pos + CHECKED_SIZE) != checksum(map, pos)) {
+                        System.out.println("Journal record " + valid + " of " + path.getFileName()
+                                + " is torn, recovery stops there");
+                        break;
+                    }
+                    if (consumer != null) {
+                        long device = (map.getInt(pos + 12) & 0xFFFFFFFFL) | ((long) map.getInt(pos + 20) << 32);
+                        consumer.onRecord(map.getLong(pos), map.getInt(pos + 8), device, flags);
+                    }
+                    valid++;
+                }
+                recordCount += valid;
+                segmentIndex = index;
+                segmentRecords = valid;
+                fresh = false;
+                if (legacy || capacity != recordsPerSegment) {
+                    // Written with another record or segment size: continue in a new segment
+                    segmentIndex++;
+                    segmentRecords = 0;
+                    fresh = true;
+                }
+            }
+        }
+        openSegment(segmentIndex, fresh);
+        // Records after a torn one are dropped with it; unmark them before they are overwritten
+        for (int i = segmentRecords; i < recordsPerSegment; i++) {
+            int pos = HEADER_SIZE + i * RECORD_SIZE + 16;
+            if (segment.getInt(pos) == 0) {
+                break;
+            }
+            segment.putInt(pos, 0);
+        }
+        return recordCount;
+    }
+
+    /**
+     * Append a record. Stores of several devices may share a journal; the
+     * records of one device keep their order as long as it appends from a
+     * single thread or under its own lock.
+     * @param timestamp Timestamp in milliseconds since epoch
+     * @param centigrams Weight in hundredths of a gram
+     * @param device Source device address, or DeviceRegistry.UNTAGGED
+     * @param flags Record flags, {@link #FLAG_VALID} is added automatically
+     * @throws IOException if the journal is not open or the next segment cannot be created
+     */
+    public synchronized void append(long timestamp, int centigrams, long device, int flags) throws IOException {
+        if (segment == null) {
+            throw new IOException("Journal not replayed or already closed");
+        }
+        if (segmentRecords == recordsPerSegment) {
+            segment.force();
+            segmentIndex++;
+            segmentRecords = 0;
+            openSegment(segmentIndex, true);
+        }
+        int pos = HEADER_SIZE + segmentRecords * RECORD_SIZE;
+        segment.putLong(pos, timestamp);
+        segment.putInt(pos + 8, centigrams);
+        segment.putInt(pos + 12, (int) device);
+        segment.putInt(pos + 20, (int) (device >>> 32));
+        segment.putInt(pos + 16, flags | FLAG_VALID);
+        // Replay only trusts the flags if the checksum matches all of the data
+        segment.putInt(pos + CHECKED_SIZE, checksum(segment, pos));
+        segmentRecords++;
+        recordCount++;
+
+        long now = System.currentTimeMillis();
+        if (now - lastForce >= flushIntervalMillis) {
+            segment.force();
+            lastForce = now;
+        }
+    }
+
+    /**
+     * Flush all appended records to the storage device
+     */
+    public synchronized void force() {
+        if (segment != null) {
+            segment.force();
+            lastForce = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Delete every segment and start again from an empty journal. If a segment
+     * cannot be deleted, appending continues in a new segment after it.
+     * @throws IOException if a segment cannot be deleted or the new one created
+     */
+    public synchronized void clear() throws IOException {
+        closeSegment();
+        try {
+            for (Path path : listSegments()) {
+                Files.deleteIfExists(path);
+            }
+        } finally {
+            // Never overwrite a segment that survived, e.g. one still mapped on Windows
+            int next = 0;
+            for (Path path : listSegments()) {
+                next = Math.max(next, segmentIndexOf(path) + 1);
+            }
+            segmentIndex = next;
+            segmentRecords = 0;
+            recordCount = 0;
+            openSegment(next, true);
+        }
+    }
+
+    /**
+     * @return Number of records in the journal
+     */
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return Directory holding the segment files
+     */
+    public File getDirectory() {
+        return directory.toFile();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (segment != null) {
+            segment.force();
+        }
+        closeSegment();
+    }
+
+    // CRC32 of the checked bytes of the record at pos, read through the buffer's position and limit
+    private int checksum(MappedByteBuffer map, int pos) {
+        crc.reset();
+        map.limit(pos + CHECKED_SIZE).position(pos);
+        crc.update(map);
+        map.clear();
+        return (int) crc.getValue();
+    }
+
+    private void openSegment(int index, boolean fresh) throws IOException {
+        closeSegment();
+        Path path = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        if (fresh || segment.getInt(0) != MAGIC) {
+            segment.putInt(0, MAGIC);
+            segment.putInt(4, VERSION);
+            segment.putInt(8, RECORD_SIZE);
+            segment.putInt(12, recordsPerSegment);
+        }
+    }
+
+    private void closeSegment() {
+        segment = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.out.println("Failed to close journal segment: " + e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        // Zero-padded names sort in segment order
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static int segmentIndexOf(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
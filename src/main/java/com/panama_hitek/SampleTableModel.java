@@ -0,0 +1,180 @@
+package com.panama_hitek;
+
+import java.util.concurrent.ExecutionException;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Table model that reads straight from the DataLogger columns.
+ *
+ * Cells are formatted only when the table asks for them, which in practice
+ * means the visible rows. New samples are not pushed one by one: a Swing timer
+ * polls the logger at frame rate and fires a single rowsInserted event for
+ * everything that arrived since the previous frame. Rows spilled to disk are
+ * shown as placeholders while a background worker decodes their segment; the
+ * EDT never reads a segment file.
+ */
+public class SampleTableModel extends AbstractTableModel {
+
+    // Called once per frame after rows were appended, on the EDT
+    public interface AppendListener {
+        void onRowsAppended(int firstRow, int lastRow);
+    }
+
+    private static final String[] COLUMNS = {"Date", "Time", "Weight"};
+    private static final int FRAME_MILLIS = 33; // ~30 Hz
+    private static final String LOADING = "...";
+
+    private final DataLogger dataLogger;
+    private final Timer frameTimer;
+    private AppendListener appendListener;
+
+    // Only touched on the EDT
+    private DataLogger.Snapshot snapshot;
+    private int firstIndex = 0;
+    private boolean loading = false;
+    private final PipelineMetrics metrics = Metrics.pipeline();
+
+    /**
+     * @param dataLogger Store backing the table
+     */
+    public SampleTableModel(DataLogger dataLogger) {
+        this.dataLogger = dataLogger;
+        this.snapshot = dataLogger.snapshot();
+        this.frameTimer = new Timer(FRAME_MILLIS, e -> refresh());
+        this.frameTimer.setCoalesce(true);
+    }
+
+    /**
+     * Start polling the logger for new rows
+     */
+    public void start() {
+        frameTimer.start();
+    }
+
+    /**
+     * Stop polling the logger for new rows
+     */
+    public void stop() {
+        frameTimer.stop();
+    }
+
+    public void setAppendListener(AppendListener listener) {
+        this.appendListener = listener;
+    }
+
+    /**
+     * Show only records stored from the given logger index onwards
+     * @param index Index of the first record to show
+     */
+    public void setFirstIndex(int index) {
+        snapshot = dataLogger.snapshot();
+        firstIndex = Math.max(0, Math.min(index, snapshot.size()));
+        fireTableDataChanged();
+    }
+
+    /**
+     * Pick up records appended since the last frame and fire one event for them
+     */
+    public void refresh() {
+        int oldRows = getRowCount();
+        DataLogger.Snapshot latest = dataLogger.snapshot();
+        if (latest.getGeneration() != snapshot.getGeneration()) {
+            // The logger was cleared
+            snapshot = latest;
+            firstIndex = 0;
+            fireTableDataChanged();
+            return;
+        }
+        snapshot = latest;
+        int newRows = getRowCount();
+        if (newRows > oldRows) {
+            // End-to-end latency: sample timestamp to the frame that shows its row
+            long now = System.currentTimeMillis();
+            for (int row = oldRows; row < newRows; row++) {
+                // Rows already spilled were bulk-loaded, not received live
+                if (snapshot.isInMemory(firstIndex + row)) {
+                    metrics.recordDisplayed(snapshot.getTimestamp(firstIndex + row), now);
+                }
+            }
+            fireTableRowsInserted(oldRows, newRows - 1);
+            if (appendListener != null) {
+                appendListener.onRowsAppended(oldRows, newRows - 1);
+            }
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return snapshot.size() - firstIndex;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int index = firstIndex + row;
+        if (!snapshot.isInMemory(index)) {
+            load(index);
+            return LOADING;
+        }
+        switch (column) {
+            case 0:
+                return WeightRecord.formatDate(snapshot.getTimestamp(index));
+            case 1:
+                return WeightRecord.formatTime(snapshot.getTimestamp(index));
+            default:
+                return WeightRecord.formatWeight(snapshot.getCentigrams(index));
+        }
+    }
+    
+    /**
+     * Decode the spilled segment holding a record in the background, then
+     * repaint. One segment at a time; the next visible one is requested by the
+     * repaint that follows.
+     */
+    private void load(int index) {
+        if (loading) {
+            return;
+        }
+        loading = true;
+        final DataLogger.Snapshot source = snapshot;
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() {
+                // Reading one record decodes and caches its whole segment
+                source.getTimestamp(index);
+                return null;
+            }
+            
+            @Override
+            protected void done() {
+                loading = false;
+                try {
+                    get();
+                } catch (InterruptedException | ExecutionException e) {
+                    // Not repainted, so a failing segment is only retried when the user scrolls
+                    System.out.println("Cannot read spilled rows: " + e.getMessage());
+                    return;
+                }
+                if (getRowCount() > 0) {
+                    fireTableRowsUpdated(0, getRowCount() - 1);
+                }
+            }
+        }.execute();
+    }
+}
@@ -0,0 +1,375 @@
+package com.panama_hitek;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Headless acquisition pipeline:
+ * reader thread -> lock-free ring buffer -> parser -> duplicate filter -> smoothing -> DataLogger -> subscribers,
+ * with an optional settle detector reporting stable weights after the store.
+ *
+ * With a DeviceRegistry the stream may interleave several scales; samples are
+ * demultiplexed by their device address into one DataLogger per scale.
+ *
+ * The reader thread does nothing but drain the process output into the ring, so
+ * the Python stdout pipe never backs up because of slow consumers. Nothing in
+ * here touches Swing; user interfaces observe the pipeline through
+ * {@link SampleListener} and hop to the EDT themselves.
+ */
+public class ScaleIngestPipeline {
+
+    // Interface for pipeline subscribers, called on the parser thread
+    public interface SampleListener {
+        void onSample(long timestamp, double weight);
+
+        default void onError(String message) {
+        }
+
+        default void onStreamClosed() {
+        }
+
+        /**
+         * @param message Reply of the acquisition process to a command
+         */
+        default void onControl(String message) {
+        }
+
+        /**
+         * A load has come to rest, reported once per settle by the SettleDetector
+         * @param device Device address, or DeviceRegistry.UNTAGGED
+         * @param timestamp Timestamp of the sample that completed the steady window
+         * @param weight Mean weight over the window in grams
+         */
+        default void onSettled(long device, long timestamp, double weight) {
+        }
+    }
+
+    private static final int RING_SLOTS = 256;
+    private static final int CHUNK_SIZE = 4096;
+    private static final long IDLE_PARK_NANOS = 1_000_000L;
+    private static final long FULL_PARK_NANOS = 50_000L;
+
+    private final DataLogger dataLogger;
+    private final DeviceRegistry devices;
+    private final SampleDecoder decoder;
+    private final ByteChunkRing ring = new ByteChunkRing(RING_SLOTS, CHUNK_SIZE);
+    private final List<SampleListener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile boolean running = false;
+    private volatile boolean endOfStream = false;
+    private volatile long lastDataTimestamp = 0;
+    private volatile long lastSampleTimestamp = 0;
+    private volatile long overflowWaits = 0;
+
+    private volatile DuplicateFilter duplicateFilter;
+    private volatile SmoothingFilter smoothingFilter;
+    private volatile SettleDetector settleDetector;
+    private InputStream input;
+    private Thread readerThread;
+    private Thread parserThread;
+
+    // Owned by the parser thread; samples arrive in runs, so the last lookup is cached
+    private long cachedDevice = DeviceRegistry.UNTAGGED;
+    private DataLogger cachedLogger;
+    private DeviceMetrics cachedMetrics;
+    // System.nanoTime() at which the chunk being decoded was read
+    private long chunkReceivedNanos;
+    private final PipelineMetrics metrics = Metrics.pipeline();
+
+    private final SampleDecoder.Sink sink = new SampleDecoder.Sink() {
+        @Override
+        public void onSample(long device, long timestamp, int centigrams) {
+            DuplicateFilter filter = duplicateFilter;
+            if (filter != null && !filter.accept(device, timestamp, centigrams)) {
+                metrics.recordSuppressed();
+                return;
+            }
+            SmoothingFilter smoothing = smoothingFilter;
+            int flags = 0;
+            if (smoothing != null && smoothing.getKind() != SmoothingFilter.Kind.NONE) {
+                centigrams = smoothing.apply(device, centigrams);
+                flags = SampleJournal.FLAG_SMOOTHED;
+            }
+            store(loggerFor(device), timestamp, centigrams, flags);
+
+            SettleDetector detector = settleDetector;
+            if (detector != null) {
+                int settled = detector.update(device, centigrams);
+                if (settled != SettleDetector.NOT_SETTLED) {
+                    double weight = settled / 100.0;
+                    for (SampleListener listener : listeners) {
+                        listener.onSettled(device, timestamp, weight);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void onMalformed(String reason) {
+            metrics.recordParseFailure();
+            for (SampleListener listener : listeners) {
+                listener.onError(reason);
+            }
+        }
+
+        @Override
+        public void onControl(String message) {
+            for (SampleListener listener : listeners) {
+                listener.onControl(message);
+            }
+        }
+    };
+
+    /**
+     * Create a pipeline that stores samples into the given data logger
+     * @param dataLogger Destination store
+     * @param decoder Decoder for the process output format
+     */
+    public ScaleIngestPipeline(DataLogger dataLogger, SampleDecoder decoder) {
+        this.dataLogger = dataLogger;
+        this.devices = null;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Create a pipeline that stores the samples of every device into that device's store
+     * @param devices Registry providing one data logger per device address
+     * @param decoder Decoder for the process output format
+     */
+    public ScaleIngestPipeline(DeviceRegistry devices, SampleDecoder decoder) {
+        this.dataLogger = devices.getPrimary();
+        this.devices = devices;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Add a subscriber to be notified of every stored sample
+     * @param listener The listener to add
+     */
+    public void addSampleListener(SampleListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a subscriber
+     * @param listener The listener to remove
+     */
+    public void removeSampleListener(SampleListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Install the change-detection stage applied before samples are stored
+     * @param filter The filter, or null to keep every sample
+     */
+    public void setDuplicateFilter(DuplicateFilter filter) {
+        this.duplicateFilter = filter;
+    }
+
+    public DuplicateFilter getDuplicateFilter() {
+        return duplicateFilter;
+    }
+
+    /**
+     * Install the smoothing stage applied to kept samples before they are stored
+     * @param filter The filter, or null to store measured weights
+     */
+    public void setSmoothingFilter(SmoothingFilter filter) {
+        this.smoothingFilter = filter;
+    }
+
+    public SmoothingFilter getSmoothingFilter() {
+        return smoothingFilter;
+    }
+
+    /**
+     * Install the stable-weight detector fed with every stored sample
+     * @param detector The detector, or null to report no settled weights
+     */
+    public void setSettleDetector(SettleDetector detector) {
+        this.settleDetector = detector;
+    }
+
+    public SettleDetector getSettleDetector() {
+        return settleDetector;
+    }
+
+    /**
+     * Start reading and parsing the given stream on background threads
+     * @param in Output stream of the acquisition process
+     */
+    public synchronized void start(InputStream in) {
+        if (running) {
+            throw new IllegalStateException("Pipeline already running");
+        }
+        input = in;
+        running = true;
+        endOfStream = false;
+        lastDataTimestamp = System.currentTimeMillis();
+        decoder.reset();
+        cachedLogger = null;
+        DuplicateFilter filter = duplicateFilter;
+        if (filter != null) {
+            filter.reset();
+        }
+        SmoothingFilter smoothing = smoothingFilter;
+        if (smoothing != null) {
+            smoothing.reset();
+        }
+        SettleDetector detector = settleDetector;
+        if (detector != null) {
+            detector.reset();
+        }
+
+        parserThread = new Thread(this::parseLoop, "scale-ingest-parser");
+        parserThread.setDaemon(true);
+        readerThread = new Thread(this::readLoop, "scale-ingest-reader");
+        readerThread.setDaemon(true);
+        parserThread.start();
+        readerThread.start();
+    }
+
+    /**
+     * Stop both pipeline threads. Samples already in the ring are discarded.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            input.close();
+        } catch (IOException e) {
+            // Reader thread will notice running == false anyway
+        }
+        LockSupport.unpark(parserThread);
+        LockSupport.unpark(readerThread);
+    }
+
+    /**
+     * Wait until the parser has consumed everything the reader produced
+     * @param timeoutMillis Maximum time to wait
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitTermination(long timeoutMillis) throws InterruptedException {
+        Thread parser;
+        synchronized (this) {
+            parser = parserThread;
+        }
+        if (parser != null) {
+            parser.join(timeoutMillis);
+        }
+    }
+
+    /**
+     * @return Wall-clock time in milliseconds of the last bytes received from the process
+     */
+    public long getLastDataTimestamp() {
+        return lastDataTimestamp;
+    }
+
+    /**
+     * @return Wall-clock time in milliseconds of the last sample stored, 0 if none yet
+     */
+    public long getLastSampleTimestamp() {
+        return lastSampleTimestamp;
+    }
+
+    /**
+     * @return How many times the reader had to wait because the ring was full
+     */
+    public long getOverflowWaits() {
+        return overflowWaits;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void readLoop() {
+        try {
+            while (running) {
+                byte[] slot = ring.claim();
+                if (slot == null) {
+                    // Parser is behind; it never blocks on the UI so this is short
+                    overflowWaits++;
+                    metrics.recordReaderStall();
+                    LockSupport.parkNanos(FULL_PARK_NANOS);
+                    continue;
+                }
+                int n = input.read(slot, 0, slot.length);
+                if (n < 0) {
+                    break;
+                }
+                if (n > 0) {
+                    // Receive stamp for every sample in the chunk, taken as close to the pipe as possible
+                    long received = System.nanoTime();
+                    lastDataTimestamp = System.currentTimeMillis();
+                    ring.publish(n, received);
+                    LockSupport.unpark(parserThread);
+                }
+            }
+        } catch (IOException e) {
+            if (running) {
+                sink.onMalformed("Error reading process output: " + e.getMessage());
+            }
+        } finally {
+            endOfStream = true;
+            LockSupport.unpark(parserThread);
+        }
+    }
+
+    private void parseLoop() {
+        while (true) {
+            byte[] chunk = ring.poll();
+            if (chunk != null) {
+                chunkReceivedNanos = ring.polledNanos();
+                decoder.decode(chunk, 0, ring.polledLength(), sink);
+                ring.release();
+                continue;
+            }
+            if (!running) {
+                break;
+            }
+            if (endOfStream) {
+                // Drain whatever was published before the reader finished
+                if (ring.size() == 0) {
+                    break;
+                }
+                continue;
+            }
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        running = false;
+        for (SampleListener listener : listeners) {
+            listener.onStreamClosed();
+        }
+    }
+
+    private DataLogger loggerFor(long device) {
+        if (cachedLogger == null || (devices != null && device != cachedDevice)) {
+            cachedLogger = devices == null ? dataLogger : devices.loggerFor(device);
+            cachedDevice = devices == null ? DeviceRegistry.UNTAGGED : device;
+            cachedMetrics = Metrics.device(cachedDevice, cachedLogger);
+        }
+        return cachedLogger;
+    }
+
+    // Called right after loggerFor, so the cached metrics belong to the target
+    private void store(DataLogger target, long timestamp, int centigrams, int flags) {
+        // Untagged for a single-store pipeline, so the journal uses the store's own address
+        target.addRecord(timestamp, centigrams, chunkReceivedNanos, cachedDevice, flags);
+        long now = System.currentTimeMillis();
+        lastSampleTimestamp = now;
+        cachedMetrics.recordStored();
+        metrics.recordStored(timestamp, now);
+
+        double weight = centigrams / 100.0;
+        for (SampleListener listener : listeners) {
+            listener.onSample(timestamp, weight);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.panama_hitek;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Where samples come from: a process talking to real scales, or an in-process
+ * simulator.
+ *
+ * A source finds scales and then streams their samples as bytes in the format
+ * of its decoder; the caller feeds that stream to a ScaleIngestPipeline. When
+ * the stream tags samples with the scale's address, it should only do so when
+ * more than one scale is streamed, like retrieve_data.py does.
+ */
+public interface ScaleSource {
+
+    /**
+     * Look for scales
+     * @return Result in the format printed by scan_ble.py: found, devices[address, name, rssi], error
+     * @throws IOException if the scan cannot be run
+     * @throws InterruptedException if interrupted while scanning
+     */
+    String scan() throws IOException, InterruptedException;
+
+    /**
+     * Start streaming the samples of the given scales
+     * @param addresses MAC addresses
+     * @return Stream to decode with a decoder from {@link #createDecoder()}
+     * @throws IOException if the source cannot be started
+     */
+    InputStream start(List<String> addresses) throws IOException;
+
+    /**
+     * @return A new decoder for the stream returned by start
+     */
+    SampleDecoder createDecoder();
+
+    /**
+     * Wait until the stream has ended
+     * @return Exit code, 0 if the source ended normally or was stopped
+     * @throws InterruptedException if interrupted while waiting
+     */
+    int waitFor() throws InterruptedException;
+
+    /**
+     * Stop streaming; the stream returned by start ends
+     */
+    void stop();
+
+    /**
+     * @return true if the source needs the bundled Python environment
+     */
+    default boolean needsPythonEnvironment() {
+        return false;
+    }
+
+    /**
+     * Create the source selected with -Dsmartscale.source, by default the Python scripts
+     * @return The configured source
+     */
+    static ScaleSource fromSystemProperties() {
+        return parse(System.getProperty("smartscale.source", "python"),
+                Boolean.getBoolean("smartscale.binaryFrames"));
+    }
+
+    /**
+     * Create a source from a specification such as "python" or "sim:rate=20000,devices=8"
+     * @param spec Source name, optionally followed by ':' and comma-separated options
+     * @param binaryFrames Ask the Python scripts for binary frames instead of JSON lines
+     * @return The source
+     */
+    static ScaleSource parse(String spec, boolean binaryFrames) {
+        String name = spec.trim();
+        String options = "";
+        int colon = name.indexOf(':');
+        if (colon >= 0) {
+            options = name.substring(colon + 1);
+            name = name.substring(0, colon);
+        }
+        switch (name.toLowerCase()) {
+            case "python":
+                return new PythonScaleSource(PythonScaleSource.defaultBasePath(), binaryFrames);
+            case "sim":
+                return SimulatedScaleSource.parse(options);
+            default:
+                throw new IllegalArgumentException("Unknown scale source: " + spec);
+        }
+    }
+}
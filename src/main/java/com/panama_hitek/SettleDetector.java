@@ -0,0 +1,144 @@
+package com.panama_hitek;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stable-weight detection at ingest.
+ *
+ * Keeps a running sum and sum of squares over the last window samples of
+ * every device, so the window variance costs O(1) per sample and is exact in
+ * integer centigrams. When a full window's standard deviation drops to the
+ * threshold the weight has settled and its mean is reported once. The detector
+ * re-arms only after the standard deviation rises above twice the threshold,
+ * so noise around the threshold does not report the same load again. Driven
+ * only by the pipeline's parser thread.
+ */
+public class SettleDetector {
+
+    /** Returned by {@link #update} while no new settled weight is available */
+    public static final int NOT_SETTLED = Integer.MIN_VALUE;
+
+    // Keeps window * sum of squares of 16-bit weights within a long
+    private static final int MAX_WINDOW = 1024;
+
+    private final int window;
+    // Thresholds on window * sum of squared deviations, in centigrams squared
+    private final double settleLimit;
+    private final double rearmLimit;
+
+    // Per-device state; the most recent device is cached since samples come in runs
+    private final Map<Long, DeviceState> devices = new HashMap<>();
+    private long cachedDevice = DeviceRegistry.UNTAGGED;
+    private DeviceState cached;
+
+    private volatile long settledCount = 0;
+
+    /**
+     * @param window Number of samples the weight must stay steady for
+     * @param maxStdDev Largest standard deviation over the window still considered steady, in grams
+     */
+    public SettleDetector(int window, double maxStdDev) {
+        if (window < 2 || window > MAX_WINDOW) {
+            throw new IllegalArgumentException("Window must be between 2 and " + MAX_WINDOW + ": " + window);
+        }
+        if (!(maxStdDev >= 0)) {
+            throw new IllegalArgumentException("Standard deviation must not be negative: " + maxStdDev);
+        }
+        this.window = window;
+        double variance = maxStdDev * 100 * maxStdDev * 100;
+        this.settleLimit = variance * window * window;
+        this.rearmLimit = 4 * settleLimit;
+        reset();
+    }
+
+    /**
+     * Build a detector from a specification such as "10:0.05"
+     * @param spec Window in samples and standard deviation in grams, or "none"
+     * @return The configured detector, or null for "none"
+     */
+    public static SettleDetector parse(String spec) {
+        if (spec == null || spec.isBlank() || spec.trim().equalsIgnoreCase("none")) {
+            return null;
+        }
+        String[] parts = spec.trim().split(":", 2);
+        int window = Integer.parseInt(parts[0].trim());
+        double maxStdDev = parts.length > 1 ? Double.parseDouble(parts[1].trim()) : 0.05;
+        return new SettleDetector(window, maxStdDev);
+    }
+
+    /**
+     * Add a sample
+     * @param device Device address, or DeviceRegistry.UNTAGGED
+     * @param centigrams Weight in hundredths of a gram
+     * @return Mean of the window in centigrams if the weight just settled, otherwise {@link #NOT_SETTLED}
+     */
+    public int update(long device, int centigrams) {
+        if (device != cachedDevice) {
+            cached = devices.computeIfAbsent(device, d -> new DeviceState(window));
+            cachedDevice = device;
+        }
+        DeviceState state = cached;
+        int[] ring = state.ring;
+        if (state.count == window) {
+            long old = ring[state.next];
+            state.sum -= old;
+            state.sumOfSquares -= old * old;
+        } else {
+            state.count++;
+        }
+        ring[state.next] = centigrams;
+        state.sum += centigrams;
+        state.sumOfSquares += (long) centigrams * centigrams;
+        state.next = state.next + 1 == window ? 0 : state.next + 1;
+        if (state.count < window) {
+            return NOT_SETTLED;
+        }
+
+        // window^2 * variance, exact in integer arithmetic
+        long spread = window * state.sumOfSquares - state.sum * state.sum;
+        if (state.settled) {
+            if (spread > rearmLimit) {
+                state.settled = false;
+            }
+            return NOT_SETTLED;
+        }
+        if (spread > settleLimit) {
+            return NOT_SETTLED;
+        }
+        state.settled = true;
+        settledCount++;
+        return (int) Math.round((double) state.sum / window);
+    }
+
+    /**
+     * Forget the history of every device, e.g. on a new connection
+     */
+    public void reset() {
+        devices.clear();
+        cachedDevice = DeviceRegistry.UNTAGGED;
+        cached = new DeviceState(window);
+        devices.put(cachedDevice, cached);
+    }
+
+    /**
+     * @return Number of settled weights reported
+     */
+    public long getSettledCount() {
+        return settledCount;
+    }
+
+    private static final class DeviceState {
+        final int[] ring;
+        int next = 0;
+        int count = 0;
+        long sum = 0;
+        long sumOfSquares = 0;
+        // A settled weight was reported and the load has not moved since
+        boolean settled = false;
+
+        DeviceState(int window) {
+            ring = new int[window];
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package com.panama_hitek;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process scale simulator for load testing without BLE hardware.
+ *
+ * Every virtual scale follows a load that changes at random intervals; the
+ * reading settles towards it exponentially, with gaussian noise, and each
+ * payload is re-broadcast a few times like a real scale's advertisements.
+ * Samples are written in the same binary frames (or JSON lines) as
+ * retrieve_data.py, so the decoder, duplicate filter and stores are exercised
+ * exactly as in production. The total rate is paced against the clock and
+ * spread round-robin over the scales.
+ *
+ * Options, e.g. -Dsmartscale.source=sim:rate=20000,devices=8:
+ * rate (samples per second, all scales together), devices (scales reported by
+ * a scan), noise (standard deviation in centigrams), settle (time constant in
+ * ms), step (mean ms between load changes), max (largest load in centigrams),
+ * repeat (broadcasts per payload), format (binary or json), seed.
+ */
+public class SimulatedScaleSource implements ScaleSource {
+
+    private static final String NAME = "SC02";
+    // First octet of the virtual addresses: locally administered
+    private static final long ADDRESS_BASE = 0x02_5A_00_00_00_00L;
+    private static final int CHUNK_SIZE = 4096;
+    private static final int QUEUED_CHUNKS = 64;
+    private static final long TICK_NANOS = 1_000_000L;
+    // Samples generated at most per tick; a source that falls further behind skips ahead
+    private static final int MAX_BURST = 1 << 16;
+
+    private double rate = 50;
+    private int deviceCount = 1;
+    private double noise = 2;
+    private long settleMillis = 400;
+    private long stepMillis = 5000;
+    private int maxLoad = 50000;
+    private int repeat = 3;
+    private boolean json = false;
+    private long seed = System.nanoTime();
+
+    private volatile boolean running = false;
+    private Thread generator;
+    private ChunkStream stream;
+    private CountDownLatch stopped = new CountDownLatch(0);
+
+    /**
+     * @param options Comma-separated key=value pairs, see the class description
+     * @return The configured simulator
+     */
+    public static SimulatedScaleSource parse(String options) {
+        SimulatedScaleSource source = new SimulatedScaleSource();
+        for (String option : options.split(",")) {
+            if (option.isBlank()) {
+                continue;
+            }
+            int eq = option.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected key=value: " + option);
+            }
+            String key = option.substring(0, eq).trim();
+            String value = option.substring(eq + 1).trim();
+            switch (key) {
+                case "rate":
+                    source.rate = Double.parseDouble(value);
+                    break;
+                case "devices":
+                    source.deviceCount = Integer.parseInt(value);
+                    break;
+                case "noise":
+                    source.noise = Double.parseDouble(value);
+                    break;
+                case "settle":
+                    source.settleMillis = Long.parseLong(value);
+                    break;
+                case "step":
+                    source.stepMillis = Long.parseLong(value);
+                    break;
+                case "max":
+                    source.maxLoad = Math.min(0xFFFF, Integer.parseInt(value));
+                    break;
+                case "repeat":
+                    source.repeat = Integer.parseInt(value);
+                    break;
+                case "format":
+                    source.json = "json".equalsIgnoreCase(value);
+                    break;
+                case "seed":
+                    source.seed = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown simulator option: " + key);
+            }
+        }
+        if (source.rate <= 0 || source.deviceCount <= 0 || source.repeat <= 0
+                || source.settleMillis <= 0 || source.stepMillis <= 0) {
+            throw new IllegalArgumentException("Simulator options must be positive: " + options);
+        }
+        return source;
+    }
+
+    @Override
+    public String scan() {
+        StringBuilder result = new StringBuilder("{\"found\": true, \"devices\": [");
+        for (int i = 1; i <= deviceCount; i++) {
+            if (i > 1) {
+                result.append(", ");
+            }
+            result.append("{\"address\": \"").append(DeviceRegistry.formatAddress(ADDRESS_BASE + i))
+                    .append("\", \"name\": \"").append(NAME).append("\", \"rssi\": -40}");
+        }
+        return result.append("]}").toString();
+    }
+
+    @Override
+    public synchronized InputStream start(List<String> addresses) {
+        if (running) {
+            throw new IllegalStateException("Simulator already running");
+        }
+        Random random = new Random(seed);
+        VirtualScale[] scales = new VirtualScale[addresses.size()];
+        boolean tagged = addresses.size() > 1;
+        for (int i = 0; i < scales.length; i++) {
+            long address = DeviceRegistry.parseAddress(addresses.get(i));
+            scales[i] = new VirtualScale(tagged ? address : DeviceRegistry.UNTAGGED, random);
+        }
+        System.out.println("Simulating " + scales.length + " scales at " + rate + " samples/s");
+
+        stream = new ChunkStream();
+        stopped = new CountDownLatch(1);
+        running = true;
+        generator = new Thread(() -> generate(scales, stream), "scale-simulator");
+        generator.setDaemon(true);
+        generator.start();
+        return stream;
+    }
+
+    @Override
+    public SampleDecoder createDecoder() {
+        return json ? new JsonLineDecoder() : new BinaryFrameDecoder();
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+        stopped.await();
+        return 0;
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    private void generate(VirtualScale[] scales, ChunkStream out) {
+        long startNanos = System.nanoTime();
+        long produced = 0;
+        int next = 0;
+        try {
+            while (running && !out.isClosed()) {
+                long due = (long) ((System.nanoTime() - startNanos) * rate / 1e9);
+                if (due - produced > MAX_BURST) {
+                    produced = due - MAX_BURST;
+                }
+                long now = System.currentTimeMillis();
+                while (produced < due && running) {
+                    scales[next].emit(now, out);
+                    if (++next == scales.length) {
+                        next = 0;
+                    }
+                    produced++;
+                }
+                out.flush();
+                LockSupport.parkNanos(TICK_NANOS);
+            }
+        } catch (InterruptedException e) {
+            // Stopped while the consumer was behind
+        } finally {
+            out.close();
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * One simulated scale: load steps, settling, noise and repeated broadcasts
+     */
+    private final class VirtualScale {
+        private final long address;
+        private final Random random;
+        private final byte[] payload = new byte[BinaryFrameDecoder.PAYLOAD_LENGTH];
+        private double load = 0;
+        private double reading = 0;
+        private long lastMillis = 0;
+        private long nextStepMillis = 0;
+        private int broadcastsLeft = 0;
+
+        VirtualScale(long address, Random random) {
+            this.address = address;
+            this.random = random;
+        }
+
+        void emit(long now, ChunkStream out) throws InterruptedException {
+            if (broadcastsLeft == 0) {
+                measure(now);
+                broadcastsLeft = repeat;
+            }
+            broadcastsLeft--;
+            if (json) {
+                writeLine(now, out);
+            } else {
+                writeFrame(now, out);
+            }
+        }
+
+        private void measure(long now) {
+            if (now >= nextStepMillis) {
+                // Something put on or taken off: empty, or a random load
+                load = random.nextInt(3) == 0 ? 0 : random.nextInt(maxLoad + 1);
+                nextStepMillis = now + (long) (-Math.log(1 - random.nextDouble()) * stepMillis);
+            }
+            long dt = lastMillis == 0 ? 0 : now - lastMillis;
+            lastMillis = now;
+            reading += (load - reading) * (1 - Math.exp(-dt / (double) settleMillis));
+            long value = Math.round(reading + random.nextGaussian() * noise);
+            int centigrams = (int) Math.max(0, Math.min(0xFFFF, value));
+
+            payload[4] = (byte) (centigrams >> 8);
+            payload[5] = (byte) centigrams;
+            int checksum = 0x10;
+            for (int i = 0; i < payload.length - 1; i++) {
+                checksum ^= payload[i];
+            }
+            payload[payload.length - 1] = (byte) checksum;
+        }
+
+        private void writeFrame(long now, ChunkStream out) throws InterruptedException {
+            boolean tagged = address != DeviceRegistry.UNTAGGED;
+            int header = tagged ? BinaryFrameDecoder.ADDRESS_LENGTH : 0;
+            byte[] b = out.reserve(4 + header + Long.BYTES + payload.length);
+            int p = out.position();
+            b[p++] = (byte) BinaryFrameDecoder.SYNC_1;
+            b[p++] = (byte) BinaryFrameDecoder.SYNC_2;
+            b[p++] = (byte) (tagged ? BinaryFrameDecoder.TYPE_DEVICE_SAMPLE : BinaryFrameDecoder.TYPE_SAMPLE);
+            b[p++] = (byte) (header + Long.BYTES + payload.length);
+            for (int shift = (header - 1) * 8; shift >= 0; shift -= 8) {
+                b[p++] = (byte) (address >>> shift);
+            }
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                b[p++] = (byte) (now >>> shift);
+            }
+            System.arraycopy(payload, 0, b, p, payload.length);
+            out.advance(p + payload.length);
+        }
+
+        private void writeLine(long now, ChunkStream out) throws InterruptedException {
+            // Same shape as parse_smartchef_payload in retrieve_data.py; only used at modest rates
+            int centigrams = ((payload[4] & 0xFF) << 8) | (payload[5] & 0xFF);
+            StringBuilder line = new StringBuilder(128)
+                    .append("{\"timestamp\": ").append(now / 1000).append('.')
+                    .append((char) ('0' + now / 100 % 10)).append((char) ('0' + now / 10 % 10))
+                    .append((char) ('0' + now % 10))
+                    .append(", \"weight\": ").append(WeightRecord.formatWeight(centigrams))
+                    .append(", \"raw\": \"");
+            for (byte value : payload) {
+                line.append(Character.forDigit((value >> 4) & 0xF, 16)).append(Character.forDigit(value & 0xF, 16));
+            }
+            line.append('"');
+            if (address != DeviceRegistry.UNTAGGED) {
+                line.append(", \"address\": \"").append(DeviceRegistry.formatAddress(address)).append('"');
+            }
+            byte[] text = line.append("}\n").toString().getBytes(StandardCharsets.US_ASCII);
+            byte[] b = out.reserve(text.length);
+            System.arraycopy(text, 0, b, out.position(), text.length);
+            out.advance(out.position() + text.length);
+        }
+    }
+
+    /**
+     * In-memory pipe from the generator thread to the pipeline's reader thread.
+     * Chunks are recycled, and the generator waits when the reader is behind,
+     * like a process writing to a full pipe.
+     */
+    private static final class ChunkStream extends InputStream {
+        private static final Chunk END = new Chunk();
+
+        private final BlockingQueue<Chunk> filled = new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+        private final BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(QUEUED_CHUNKS + 2);
+        private volatile boolean closed = false;
+
+        // Writer side, generator thread only
+        private Chunk writing;
+
+        // Reader side, reader thread only
+        private Chunk reading;
+        private int readPosition;
+
+        byte[] reserve(int length) throws InterruptedException {
+            if (writing != null && writing.length + length > CHUNK_SIZE) {
+                flush();
+            }
+            if (writing == null) {
+                writing = free.poll();
+                if (writing == null) {
+                    writing = new Chunk();
+                }
+                writing.length = 0;
+            }
+            return writing.data;
+        }
+
+        int position() {
+            return writing.length;
+        }
+
+        void advance(int position) {
+            writing.length = position;
+        }
+
+        void flush() throws InterruptedException {
+            if (writing == null || writing.length == 0) {
+                return;
+            }
+            while (!closed) {
+                if (filled.offer(writing, 100, TimeUnit.MILLISECONDS)) {
+                    writing = null;
+                    return;
+                }
+            }
+            // Nobody reads anymore
+            writing.length = 0;
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            try {
+                while (reading == null || readPosition == reading.length) {
+                    if (reading != null) {
+                        free.offer(reading);
+                        reading = null;
+                    }
+                    Chunk next = filled.poll(100, TimeUnit.MILLISECONDS);
+                    if (next == END || (next == null && closed)) {
+                        return -1;
+                    }
+                    reading = next;
+                    readPosition = 0;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted", e);
+            }
+            int n = Math.min(len, reading.length - readPosition);
+            System.arraycopy(reading.data, readPosition, b, off, n);
+            readPosition += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            filled.offer(END);
+        }
+    }
+
+    private static final class Chunk {
+        final byte[] data = new byte[CHUNK_SIZE];
+        int length;
+    }
+}
@@ -3,13 +3,14 @@ package com.panama_hitek;
 public class SmartScale {
 
     public static void main(String[] args) {
-
-        try {
-            javax.swing.UIManager.setLookAndFeel(javax.swing.UIManager.getSystemLookAndFeelClassName());
-        } catch (Exception e) {
-            // Ignore and use default look and feel
+        for (String arg : args) {
+            if (arg.equals("--headless")) {
+                // Collection without a display; no Swing or chart classes are loaded
+                HeadlessRunner.main(args);
+                return;
+            }
         }
-        EnvironmentChecker.checkEnvironment();
-        new JFrameWindow().setVisible(true);
+        // The window opens while the Python environment is checked in the background
+        new StartupOrchestrator().start();
     }
 }
@@ -0,0 +1,305 @@
+package com.panama_hitek;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Smoothing stage between the duplicate filter and the data logger.
+ *
+ * Replaces every sample's weight with the output of a streaming operator:
+ * moving average, rolling median, exponential smoothing or a 1-D Kalman
+ * filter. Operators keep their state in arrays allocated when a device is
+ * first seen, so the per-sample work allocates nothing. Every device is
+ * filtered separately. Driven only by the pipeline's parser thread.
+ */
+public class SmoothingFilter {
+
+    public enum Kind {
+        /** Pass weights through unchanged */
+        NONE,
+        /** Mean of the last window samples */
+        MOVING_AVERAGE,
+        /** Median of the last window samples, which ignores single-sample spikes */
+        MEDIAN,
+        /** Exponentially weighted moving average */
+        EXPONENTIAL,
+        /** 1-D Kalman filter for a constant weight disturbed by process and measurement noise */
+        KALMAN
+    }
+
+    private final Kind kind;
+    private final int window;
+    private final double alpha;
+    private final double processVariance;
+    private final double measurementVariance;
+
+    // Per-device operators; the most recent device is cached since samples come in runs
+    private final Map<Long, Operator> devices = new HashMap<>();
+    private long cachedDevice = DeviceRegistry.UNTAGGED;
+    private Operator cached;
+
+    private SmoothingFilter(Kind kind, int window, double alpha, double processVariance, double measurementVariance) {
+        this.kind = kind;
+        this.window = window;
+        this.alpha = alpha;
+        this.processVariance = processVariance;
+        this.measurementVariance = measurementVariance;
+        reset();
+    }
+
+    /**
+     * @return Filter that leaves weights unchanged
+     */
+    public static SmoothingFilter none() {
+        return new SmoothingFilter(Kind.NONE, 1, 1, 0, 0);
+    }
+
+    /**
+     * @param window Number of samples averaged
+     * @return Moving average filter
+     */
+    public static SmoothingFilter movingAverage(int window) {
+        checkWindow(window);
+        return new SmoothingFilter(Kind.MOVING_AVERAGE, window, 0, 0, 0);
+    }
+
+    /**
+     * @param window Number of samples, odd values give a true middle sample
+     * @return Rolling median filter
+     */
+    public static SmoothingFilter median(int window) {
+        checkWindow(window);
+        return new SmoothingFilter(Kind.MEDIAN, window, 0, 0, 0);
+    }
+
+    /**
+     * @param alpha Weight of the newest sample, in (0, 1]
+     * @return Exponential smoothing filter
+     */
+    public static SmoothingFilter exponential(double alpha) {
+        if (!(alpha > 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("Alpha must be in (0, 1]: " + alpha);
+        }
+        return new SmoothingFilter(Kind.EXPONENTIAL, 1, alpha, 0, 0);
+    }
+
+    /**
+     * @param processNoise Expected change of the true weight between two samples, standard deviation in grams
+     * @param measurementNoise Scale noise, standard deviation in grams
+     * @return Kalman filter
+     */
+    public static SmoothingFilter kalman(double processNoise, double measurementNoise) {
+        if (!(processNoise > 0) || !(measurementNoise > 0)) {
+            throw new IllegalArgumentException("Kalman noise must be positive: " + processNoise + ", " + measurementNoise);
+        }
+        // Internally in centigrams
+        double q = processNoise * 100;
+        double r = measurementNoise * 100;
+        return new SmoothingFilter(Kind.KALMAN, 1, 0, q * q, r * r);
+    }
+
+    /**
+     * Build a filter from a specification such as "mean:5", "median:5",
+     * "ema:0.3", "kalman:0.5:0.05" or "none"
+     * @param spec Filter name and its parameters, see the factory methods
+     * @return The configured filter
+     */
+    public static SmoothingFilter parse(String spec) {
+        if (spec == null || spec.isBlank() || spec.trim().equalsIgnoreCase("none")) {
+            return none();
+        }
+        String[] parts = spec.trim().split(":");
+        switch (parts[0].trim().toLowerCase()) {
+            case "mean":
+                return movingAverage(parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 5);
+            case "median":
+                return median(parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 5);
+            case "ema":
+                return exponential(parts.length > 1 ? Double.parseDouble(parts[1].trim()) : 0.3);
+            case "kalman":
+                return kalman(parts.length > 1 ? Double.parseDouble(parts[1].trim()) : 0.5,
+                        parts.length > 2 ? Double.parseDouble(parts[2].trim()) : 0.05);
+            default:
+                throw new IllegalArgumentException("Unknown smoothing filter: " + parts[0]);
+        }
+    }
+
+    private static void checkWindow(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be at least 1: " + window);
+        }
+    }
+
+    /**
+     * Filter a sample
+     * @param device Device address, or DeviceRegistry.UNTAGGED
+     * @param centigrams Measured weight in hundredths of a gram
+     * @return Smoothed weight in hundredths of a gram
+     */
+    public int apply(long device, int centigrams) {
+        if (kind == Kind.NONE) {
+            return centigrams;
+        }
+        if (device != cachedDevice) {
+            cached = devices.computeIfAbsent(device, d -> newOperator());
+            cachedDevice = device;
+        }
+        return cached.apply(centigrams);
+    }
+
+    /**
+     * Forget the history of every device, e.g. on a new connection
+     */
+    public void reset() {
+        devices.clear();
+        cachedDevice = DeviceRegistry.UNTAGGED;
+        cached = newOperator();
+        devices.put(cachedDevice, cached);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    private Operator newOperator() {
+        switch (kind) {
+            case MOVING_AVERAGE:
+                return new MovingAverage(window);
+            case MEDIAN:
+                return new RollingMedian(window);
+            case EXPONENTIAL:
+                return new Exponential(alpha);
+            case KALMAN:
+                return new Kalman(processVariance, measurementVariance);
+            default:
+                return centigrams -> centigrams;
+        }
+    }
+
+    // Streaming operator for one device
+    private interface Operator {
+        int apply(int centigrams);
+    }
+
+    // Running sum over a ring of the last samples
+    private static final class MovingAverage implements Operator {
+        private final int[] ring;
+        private int next = 0;
+        private int count = 0;
+        private long sum = 0;
+
+        MovingAverage(int window) {
+            ring = new int[window];
+        }
+
+        @Override
+        public int apply(int centigrams) {
+            if (count == ring.length) {
+                sum -= ring[next];
+            } else {
+                count++;
+            }
+            ring[next] = centigrams;
+            sum += centigrams;
+            next = next + 1 == ring.length ? 0 : next + 1;
+            return (int) Math.round((double) sum / count);
+        }
+    }
+
+    // Ring in arrival order plus the same values kept sorted. Replacing the
+    // oldest value shifts at most the window, which for the handful of samples
+    // used to reject spikes is cheaper than maintaining two heaps.
+    private static final class RollingMedian implements Operator {
+        private final int[] ring;
+        private final int[] sorted;
+        private int next = 0;
+        private int count = 0;
+
+        RollingMedian(int window) {
+            ring = new int[window];
+            sorted = new int[window];
+        }
+
+        @Override
+        public int apply(int centigrams) {
+            int slot;
+            if (count == ring.length) {
+                // Reuse the slot of the oldest value
+                slot = Arrays.binarySearch(sorted, 0, count, ring[next]);
+            } else {
+                slot = count++;
+            }
+            ring[next] = centigrams;
+            next = next + 1 == ring.length ? 0 : next + 1;
+
+            // Slide the free slot to where the new value belongs
+            while (slot > 0 && sorted[slot - 1] > centigrams) {
+                sorted[slot] = sorted[slot - 1];
+                slot--;
+            }
+            while (slot < count - 1 && sorted[slot + 1] < centigrams) {
+                sorted[slot] = sorted[slot + 1];
+                slot++;
+            }
+            sorted[slot] = centigrams;
+
+            int middle = count >>> 1;
+            if ((count & 1) == 1) {
+                return sorted[middle];
+            }
+            return (int) Math.round((sorted[middle - 1] + (double) sorted[middle]) / 2);
+        }
+    }
+
+    private static final class Exponential implements Operator {
+        private final double alpha;
+        private double value;
+        private boolean primed = false;
+
+        Exponential(double alpha) {
+            this.alpha = alpha;
+        }
+
+        @Override
+        public int apply(int centigrams) {
+            if (primed) {
+                value += alpha * (centigrams - value);
+            } else {
+                value = centigrams;
+                primed = true;
+            }
+            return (int) Math.round(value);
+        }
+    }
+
+    // Random-walk model: the weight stays put apart from process noise q,
+    // every reading adds measurement noise r. Variances in centigrams squared.
+    private static final class Kalman implements Operator {
+        private final double q;
+        private final double r;
+        private double estimate;
+        private double variance;
+        private boolean primed = false;
+
+        Kalman(double q, double r) {
+            this.q = q;
+            this.r = r;
+        }
+
+        @Override
+        public int apply(int centigrams) {
+            if (!primed) {
+                estimate = centigrams;
+                variance = r;
+                primed = true;
+                return centigrams;
+            }
+            double predicted = variance + q;
+            double gain = predicted / (predicted + r);
+            estimate += gain * (centigrams - estimate);
+            variance = (1 - gain) * predicted;
+            return (int) Math.round(estimate);
+        }
+    }
+}
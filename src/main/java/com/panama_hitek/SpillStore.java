@@ -0,0 +1,376 @@
+package com.panama_hitek;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cold tier of a DataLogger: samples moved out of the heap into compressed
+ * segment files.
+ *
+ * Every segment is a small {@link TimeSeriesArchive} file holding a run of
+ * consecutive records. The list of segments with their first and last
+ * timestamps stays in memory, so a time lookup decodes a single segment. The
+ * few most recently read segments are kept decoded, which makes sequential
+ * reads (export, decimation) and scrolling through the table cheap. Segments
+ * keep the receive stamps too, so spilled records read back exactly as they
+ * were stored.
+ *
+ * Snapshots keep the segments they were taken with, even after the logger
+ * dropped them on a clear or a journal recovery. A segment file is therefore
+ * deleted only once no segment list refers to it any more, by a Cleaner.
+ */
+public class SpillStore {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final int CACHED_SEGMENTS = 4;
+    // Deletes the files of unreachable segments
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    // Default location: one directory per process under the temporary directory, removed on exit
+    private static final AtomicInteger STORE_IDS = new AtomicInteger();
+    private static Path defaultRoot;
+
+    private final Path directory;
+    private final AtomicInteger segmentIds = new AtomicInteger();
+
+    // Decoded segments by file, least recently used first; guarded by itself. Keyed by
+    // path so the cache does not keep a dropped segment, and with it its file, alive.
+    private final Map<Path, Decoded> cache = new LinkedHashMap<Path, Decoded>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Decoded> eldest) {
+            return size() > CACHED_SEGMENTS;
+        }
+    };
+
+    /**
+     * @param directory Directory for the segment files, created if missing
+     * @throws IOException if the directory cannot be created
+     */
+    public SpillStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Create a store in its own subdirectory of -Dsmartscale.spillDir, or of a
+     * temporary directory that is deleted when the JVM exits
+     * @return The new store
+     * @throws IOException if the directory cannot be created
+     */
+    public static SpillStore createDefault() throws IOException {
+        return new SpillStore(defaultRoot().resolve("store-" + STORE_IDS.incrementAndGet()));
+    }
+
+    private static synchronized Path defaultRoot() throws IOException {
+        if (defaultRoot == null) {
+            String configured = System.getProperty("smartscale.spillDir");
+            if (configured != null) {
+                defaultRoot = Path.of(configured).resolve("spill-" + ProcessHandle.current().pid());
+            } else {
+                defaultRoot = Files.createTempDirectory("smartscale-spill-");
+            }
+            Files.createDirectories(defaultRoot);
+            Path root = defaultRoot;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> deleteTree(root), "spill-cleanup"));
+        }
+        return defaultRoot;
+    }
+
+    /**
+     * Write records to a new segment
+     * @param records Consecutive records, in timestamp order
+     * @return The written segment
+     * @throws IOException if the file cannot be written
+     */
+    public Segment write(DataLogger.Snapshot records) throws IOException {
+        if (records.size() == 0) {
+            throw new IllegalArgumentException("Nothing to spill");
+        }
+        Path path = directory.resolve(String.format("%s%08d.%s", SEGMENT_PREFIX, segmentIds.incrementAndGet(),
+                TimeSeriesArchive.EXTENSION));
+        TimeSeriesArchive.write(records, path, null, null, true);
+        return new Segment(path, records.getTimestamp(0), records.getTimestamp(records.size() - 1), records.size(),
+                cache);
+    }
+
+    /**
+     * Delete a segment right away. Only for a segment that was never added to
+     * a segment list, since snapshots may still read any other one.
+     * @param segment Segment to delete
+     */
+    public void delete(Segment segment) {
+        segment.cleanable.clean();
+    }
+
+    /**
+     * Forget the decoded segments after the logger dropped its segment list.
+     * The files go once the snapshots still reading them are gone.
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private boolean isCached(Segment segment, int start) {
+        synchronized (cache) {
+            Decoded decoded = cache.get(segment.path);
+            return decoded != null && decoded.start == start;
+        }
+    }
+
+    private Decoded decode(Segment segment, int start) {
+        synchronized (cache) {
+            Decoded decoded = cache.get(segment.path);
+            if (decoded != null && decoded.start == start) {
+                return decoded;
+            }
+        }
+        long[] timestamps = new long[segment.count];
+        int[] centigrams = new int[segment.count];
+        long[] receivedNanos = new long[segment.count];
+        int[] n = {0};
+        try {
+            TimeSeriesArchive.readAll(segment.path, (timestamp, weightCentigrams, receiveNanos) -> {
+                timestamps[n[0]] = timestamp;
+                centigrams[n[0]] = weightCentigrams;
+                receivedNanos[n[0]] = receiveNanos;
+                n[0]++;
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read spilled samples from " + segment.path, e);
+        }
+        Decoded decoded = new Decoded(start, timestamps, centigrams, receivedNanos);
+        synchronized (cache) {
+            cache.put(segment.path, decoded);
+        }
+        return decoded;
+    }
+
+    private static void deleteTree(Path root) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root)) {
+            for (Path path : stream) {
+                if (Files.isDirectory(path)) {
+                    deleteTree(path);
+                } else {
+                    Files.deleteIfExists(path);
+                }
+            }
+            Files.deleteIfExists(root);
+        } catch (IOException e) {
+            // Best effort on the way out
+        }
+    }
+
+    /**
+     * One segment file
+     */
+    public static final class Segment {
+        private final Path path;
+        private final long firstTimestamp;
+        private final long lastTimestamp;
+        private final int count;
+        private final Cleaner.Cleanable cleanable;
+
+        private Segment(Path path, long firstTimestamp, long lastTimestamp, int count, Map<Path, Decoded> cache) {
+            this.path = path;
+            this.firstTimestamp = firstTimestamp;
+            this.lastTimestamp = lastTimestamp;
+            this.count = count;
+            this.cleanable = CLEANER.register(this, new FileDeleter(path, cache));
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    // Cleaning action of a segment; must not refer to the segment itself
+    private static final class FileDeleter implements Runnable {
+        private final Path path;
+        private final Map<Path, Decoded> cache;
+
+        FileDeleter(Path path, Map<Path, Decoded> cache) {
+            this.path = path;
+            this.cache = cache;
+        }
+
+        @Override
+        public void run() {
+            synchronized (cache) {
+                cache.remove(path);
+            }
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                System.out.println("Failed to delete spill segment: " + e.getMessage());
+            }
+        }
+    }
+
+    // Records of a segment, immutable once built
+    private static final class Decoded {
+        // Index of the first record within the Segments it was read through
+        final int start;
+        final long[] timestamps;
+        final int[] centigrams;
+        final long[] receivedNanos;
+
+        Decoded(int start, long[] timestamps, int[] centigrams, long[] receivedNanos) {
+            this.start = start;
+            this.timestamps = timestamps;
+            this.centigrams = centigrams;
+            this.receivedNanos = receivedNanos;
+        }
+    }
+
+    /**
+     * Immutable, ordered list of segments, indexed like the records they hold.
+     * Appending returns a new list, so a snapshot keeps the segments it was taken with.
+     */
+    public static final class Segments {
+
+        /** No spilled records */
+        public static final Segments EMPTY = new Segments(null, new Segment[0], new int[] {0});
+
+        private final SpillStore store;
+        private final Segment[] segments;
+        // starts[i] is the index of the first record of segments[i]; starts[length] the total
+        private final int[] starts;
+        // Last segment read through this list; a single reference, so racing readers see a consistent one
+        private Decoded recent;
+
+        private Segments(SpillStore store, Segment[] segments, int[] starts) {
+            this.store = store;
+            this.segments = segments;
+            this.starts = starts;
+        }
+
+        /**
+         * @param owner Store the segment was written to
+         * @param segment Segment following every segment in this list
+         * @return New list ending with the segment
+         */
+        public Segments append(SpillStore owner, Segment segment) {
+            Segment[] grown = Arrays.copyOf(segments, segments.length + 1);
+            grown[segments.length] = segment;
+            int[] grownStarts = Arrays.copyOf(starts, starts.length + 1);
+            grownStarts[starts.length] = count() + segment.count;
+            return new Segments(owner, grown, grownStarts);
+        }
+
+        /**
+         * @return Number of records in every segment
+         */
+        public int count() {
+            return starts[segments.length];
+        }
+
+        /**
+         * @return Number of segments
+         */
+        public int size() {
+            return segments.length;
+        }
+
+        public Segment get(int index) {
+            return segments[index];
+        }
+
+        public long getTimestamp(int index) {
+            Decoded decoded = segmentOf(index);
+            return decoded.timestamps[index - decoded.start];
+        }
+
+        public int getCentigrams(int index) {
+            Decoded decoded = segmentOf(index);
+            return decoded.centigrams[index - decoded.start];
+        }
+
+        public long getReceiveNanos(int index) {
+            Decoded decoded = segmentOf(index);
+            return decoded.receivedNanos[index - decoded.start];
+        }
+
+        /**
+         * Find a time within records [from, to), which are in timestamp order like every DataLogger record.
+         * Segments are skipped by their timestamp range, so at most one is decoded.
+         * @return Index of the first record at or after the timestamp, to if there is none
+         */
+        public int indexOf(long timestamp, int from, int to) {
+            int low = segmentIndex(from);
+            int high = to > from ? segmentIndex(to - 1) + 1 : low;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (segments[mid].lastTimestamp < timestamp) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            if (low == segments.length || starts[low] >= to) {
+                return to;
+            }
+            int first = Math.max(from, starts[low]);
+            if (segments[low].firstTimestamp >= timestamp) {
+                return first;
+            }
+            Decoded decoded = segmentOf(first);
+            int lowIndex = first;
+            int highIndex = Math.min(to, starts[low + 1]);
+            while (lowIndex < highIndex) {
+                int mid = (lowIndex + highIndex) >>> 1;
+                if (decoded.timestamps[mid - decoded.start] < timestamp) {
+                    lowIndex = mid + 1;
+                } else {
+                    highIndex = mid;
+                }
+            }
+            return lowIndex;
+        }
+
+        /**
+         * @param index Record index
+         * @return true if the record can be read without decoding a segment file
+         */
+        public boolean isDecoded(int index) {
+            Decoded decoded = recent;
+            if (decoded != null && index >= decoded.start && index - decoded.start < decoded.timestamps.length) {
+                return true;
+            }
+            Objects.checkIndex(index, count());
+            int segment = segmentIndex(index);
+            return store.isCached(segments[segment], starts[segment]);
+        }
+
+        private int segmentIndex(int index) {
+            int found = Arrays.binarySearch(starts, 0, segments.length, index);
+            return found >= 0 ? found : -found - 2;
+        }
+
+        private Decoded segmentOf(int index) {
+            Decoded decoded = recent;
+            if (decoded != null && index >= decoded.start && index - decoded.start < decoded.timestamps.length) {
+                return decoded;
+            }
+            Objects.checkIndex(index, count());
+            int segment = segmentIndex(index);
+            decoded = store.decode(segments[segment], starts[segment]);
+            recent = decoded;
+            return decoded;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.panama_hitek;
+
+import java.util.concurrent.CompletableFuture;
+import javax.swing.SwingUtilities;
+
+/**
+ * Brings the application up without making the first window wait.
+ *
+ * The main window is built on the EDT straight away. Meanwhile the Python
+ * environment is extracted and validated, and the JFreeChart classes are
+ * loaded, each on its own background thread. Scanning stays disabled until the
+ * environment check completes; the sidecar warm-up starts right after it. The
+ * time to the first window and to an interactive window is printed.
+ */
+public class StartupOrchestrator {
+
+    // JFreeChart classes the Live Chart needs; loading them takes a noticeable moment
+    private static final String[] CHART_CLASSES = {
+        "org.jfree.chart.ChartFactory",
+        "org.jfree.chart.JFreeChart",
+        "org.jfree.chart.ChartPanel",
+        "org.jfree.chart.plot.XYPlot",
+        "org.jfree.chart.axis.DateAxis",
+        "org.jfree.chart.axis.NumberAxis",
+        "org.jfree.chart.renderer.xy.XYLineAndShapeRenderer",
+        "org.jfree.chart.StandardChartTheme",
+        "com.panama_hitek.WeightChartPanel"
+    };
+
+    private final long startNanos = System.nanoTime();
+    private final ScaleSource scaleSource = ScaleSource.fromSystemProperties();
+    private volatile long windowShownMillis = -1;
+    private JFrameWindow window;
+
+    /**
+     * Show the window and prepare everything else in the background
+     */
+    public void start() {
+        TimedEventQueue.install();
+        SwingUtilities.invokeLater(() -> {
+            try {
+                javax.swing.UIManager.setLookAndFeel(javax.swing.UIManager.getSystemLookAndFeelClassName());
+            } catch (Exception e) {
+                // Ignore and use default look and feel
+            }
+            window = new JFrameWindow(scaleSource);
+            window.setVisible(true);
+            windowShownMillis = elapsedMillis();
+            System.out.println("Startup: window shown after " + windowShownMillis + " ms");
+        });
+
+        // The simulator runs without the Python environment
+        CompletableFuture<Long> environment = scaleSource.needsPythonEnvironment()
+                ? timed("startup-environment", EnvironmentChecker::checkEnvironment)
+                : CompletableFuture.completedFuture(0L);
+        CompletableFuture<Long> charts = timed("startup-charts", StartupOrchestrator::preloadCharts);
+        // Queued on the EDT after the window was, so the window exists when readiness is signalled
+        environment.thenAccept(environmentMillis -> SwingUtilities.invokeLater(() -> {
+            window.onEnvironmentReady();
+            System.out.println("Startup: interactive after " + elapsedMillis() + " ms (window "
+                    + windowShownMillis + " ms, environment check " + environmentMillis + " ms)");
+        }));
+        charts.thenAccept(chartMillis -> System.out.println("Startup: chart classes loaded in " + chartMillis + " ms"));
+    }
+
+    /**
+     * Run a step on its own daemon thread
+     * @return Duration of the step in milliseconds, once it finished
+     */
+    private static CompletableFuture<Long> timed(String name, Runnable step) {
+        CompletableFuture<Long> done = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            long start = System.nanoTime();
+            try {
+                step.run();
+                done.complete((System.nanoTime() - start) / 1_000_000);
+            } catch (Throwable t) {
+                System.out.println(name + " failed: " + t.getMessage());
+                done.completeExceptionally(t);
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+        return done;
+    }
+
+    private static void preloadCharts() {
+        ClassLoader loader = StartupOrchestrator.class.getClassLoader();
+        for (String name : CHART_CLASSES) {
+            try {
+                Class.forName(name, true, loader);
+            } catch (ClassNotFoundException | LinkageError e) {
+                System.out.println("Could not preload " + name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private long elapsedMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+}
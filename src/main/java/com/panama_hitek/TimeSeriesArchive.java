@@ -0,0 +1,457 @@
+package com.panama_hitek;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Compressed binary archive for weight history (*.ssa).
+ *
+ * Samples are grouped in blocks. Inside a block timestamps are stored as
+ * delta-of-deltas and weights as zigzag deltas, both with Gorilla-style
+ * variable-width bit codes, so a steady advertisement rate and an unchanged
+ * weight cost two bits per sample. A small index of block start times at the
+ * end of the file allows seeking to a time range without decoding everything
+ * in front of it.
+ *
+ * Version 2, used for the spill segments of a DataLogger, adds the receive
+ * stamp of every sample as a third delta-of-delta column. Receive stamps are
+ * System.nanoTime() values that mean nothing to another process, so exported
+ * archives stay at version 1.
+ *
+ * File layout (big-endian):
+ *   header: magic "SSA1", version, samples per block
+ *   blocks: sample count, first timestamp, first centigrams, first receive
+ *           stamp (version 2 only), bit length, bits
+ *   index:  per block first timestamp, last timestamp, file offset, sample count
+ *   footer: index offset, block count, magic
+ */
+public class TimeSeriesArchive {
+
+    // Receives decoded samples
+    public interface SampleConsumer {
+        void onSample(long timestamp, int centigrams);
+    }
+    
+    // Receives decoded samples with their receive stamp, DataLogger.NOT_RECEIVED in version 1 archives
+    interface StampedSampleConsumer {
+        void onSample(long timestamp, int centigrams, long receiveNanos);
+    }
+
+    public static final String EXTENSION = "ssa";
+
+    private static final int MAGIC = 0x53534131; // "SSA1"
+    private static final int VERSION = 1;
+    private static final int VERSION_RECEIVE_STAMPS = 2;
+    private static final int DEFAULT_BLOCK_SIZE = 4096;
+    private static final int FOOTER_SIZE = 16;
+    private static final int INDEX_ENTRY_SIZE = 28;
+
+    private TimeSeriesArchive() {
+    }
+
+    /**
+     * Write a snapshot to an archive file
+     * @param snapshot Records to archive, in timestamp order
+     * @param target Destination file, replaced if it exists
+     * @param progress Progress callback, may be null
+     * @param cancelled Checked between blocks; the export stops when it returns true, may be null
+     * @return true if the archive was written, false if it was cancelled
+     * @throws IOException if the file cannot be written
+     */
+    public static boolean write(DataLogger.Snapshot snapshot, Path target,
+            CsvExporter.ProgressListener progress, BooleanSupplier cancelled) throws IOException {
+        return write(snapshot, target, progress, cancelled, false);
+    }
+    
+    /**
+     * Write a snapshot to an archive file, optionally with the receive stamps
+     * @param snapshot Records to archive, in timestamp order
+     * @param target Destination file, replaced if it exists
+     * @param progress Progress callback, may be null
+     * @param cancelled Checked between blocks; the export stops when it returns true, may be null
+     * @param receiveStamps true to write a version 2 archive holding the receive stamps
+     * @return true if the archive was written, false if it was cancelled
+     * @throws IOException if the file cannot be written
+     */
+    static boolean write(DataLogger.Snapshot snapshot, Path target, CsvExporter.ProgressListener progress,
+            BooleanSupplier cancelled, boolean receiveStamps) throws IOException {
+        Path partial = target.resolveSibling(target.getFileName() + ".part");
+        int total = snapshot.size();
+        int blockCount = (total + DEFAULT_BLOCK_SIZE - 1) / DEFAULT_BLOCK_SIZE;
+        boolean completed = false;
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(partial), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(receiveStamps ? VERSION_RECEIVE_STAMPS : VERSION);
+            out.writeInt(DEFAULT_BLOCK_SIZE);
+            long offset = 12;
+
+            ByteBuffer index = ByteBuffer.allocate(blockCount * INDEX_ENTRY_SIZE);
+            BitWriter bits = new BitWriter();
+            for (int block = 0; block < blockCount; block++) {
+                if (cancelled != null && cancelled.getAsBoolean()) {
+                    return false;
+                }
+                int from = block * DEFAULT_BLOCK_SIZE;
+                int to = Math.min(total, from + DEFAULT_BLOCK_SIZE);
+                encodeBlock(snapshot, from, to, receiveStamps, bits);
+
+                index.putLong(snapshot.getTimestamp(from));
+                index.putLong(snapshot.getTimestamp(to - 1));
+                index.putLong(offset);
+                index.putInt(to - from);
+
+                out.writeInt(to - from);
+                out.writeLong(snapshot.getTimestamp(from));
+                out.writeInt(snapshot.getCentigrams(from));
+                if (receiveStamps) {
+                    out.writeLong(snapshot.getReceiveNanos(from));
+                }
+                out.writeLong(bits.bitLength());
+                bits.writeTo(out);
+                offset += blockHeaderSize(receiveStamps) + bits.byteLength();
+
+                if (progress != null) {
+                    progress.onProgress(to, total);
+                }
+            }
+
+            out.write(index.array());
+            out.writeLong(offset);
+            out.writeInt(blockCount);
+            out.writeInt(MAGIC);
+            completed = true;
+        } finally {
+            if (!completed) {
+                Files.deleteIfExists(partial);
+            }
+        }
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    /**
+     * Decode every sample of an archive
+     * @param source Archive file
+     * @param consumer Receiver of the samples, in order
+     * @return Number of samples read
+     * @throws IOException if the file cannot be read or is not an archive
+     */
+    public static long readAll(Path source, SampleConsumer consumer) throws IOException {
+        return read(source, Long.MIN_VALUE, Long.MAX_VALUE, consumer);
+    }
+    
+    /**
+     * Decode every sample of an archive with its receive stamp
+     * @param source Archive file
+     * @param consumer Receiver of the samples, in order
+     * @return Number of samples read
+     * @throws IOException if the file cannot be read or is not an archive
+     */
+    static long readAll(Path source, StampedSampleConsumer consumer) throws IOException {
+        return read(source, Long.MIN_VALUE, Long.MAX_VALUE, consumer);
+    }
+
+    /**
+     * Decode the samples with from &lt;= timestamp &lt; to, using the block index
+     * to skip blocks outside the range
+     * @param source Archive file
+     * @param from Inclusive lower bound in milliseconds since epoch
+     * @param to Exclusive upper bound in milliseconds since epoch
+     * @param consumer Receiver of the samples, in order
+     * @return Number of samples read
+     * @throws IOException if the file cannot be read or is not an archive
+     */
+    public static long read(Path source, long from, long to, SampleConsumer consumer) throws IOException {
+        return read(source, from, to, (StampedSampleConsumer) (timestamp, centigrams, receiveNanos)
+                -> consumer.onSample(timestamp, centigrams));
+    }
+    
+    /**
+     * Read the time of the first sample from the block index, without decoding any block
+     * @param source Archive file
+     * @return Timestamp in milliseconds since epoch, Long.MAX_VALUE if the archive is empty
+     * @throws IOException if the file cannot be read or is not an archive
+     */
+    public static long firstTimestamp(Path source) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            readVersion(channel, source);
+            ByteBuffer index = readIndex(channel, source);
+            return index.limit() > 0 ? index.getLong(0) : Long.MAX_VALUE;
+        }
+    }
+    
+    private static long read(Path source, long from, long to, StampedSampleConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            boolean receiveStamps = readVersion(channel, source) == VERSION_RECEIVE_STAMPS;
+            ByteBuffer index = readIndex(channel, source);
+            int blockCount = index.limit() / INDEX_ENTRY_SIZE;
+
+            long count = 0;
+            ByteBuffer blockHeader = ByteBuffer.allocate(blockHeaderSize(receiveStamps));
+            for (int block = 0; block < blockCount; block++) {
+                int entry = block * INDEX_ENTRY_SIZE;
+                long first = index.getLong(entry);
+                long last = index.getLong(entry + 8);
+                if (last < from || first >= to) {
+                    continue;
+                }
+                long offset = index.getLong(entry + 16);
+                blockHeader.clear();
+                readFully(channel, blockHeader, offset);
+                long firstReceive = receiveStamps ? blockHeader.getLong(16) : DataLogger.NOT_RECEIVED;
+                long bitLength = blockHeader.getLong(blockHeader.limit() - 8);
+                ByteBuffer body = ByteBuffer.allocate((int) ((bitLength + 7) / 8));
+                readFully(channel, body, offset + blockHeader.limit());
+                count += decodeBlock(blockHeader.getInt(0), blockHeader.getLong(4), blockHeader.getInt(12),
+                        receiveStamps, firstReceive, body.array(), from, to, consumer);
+            }
+            return count;
+        }
+    }
+
+    private static int readVersion(FileChannel channel, Path source) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(12);
+        readFully(channel, head, 0);
+        int version = head.getInt(4);
+        if (head.getInt(0) != MAGIC || (version != VERSION && version != VERSION_RECEIVE_STAMPS)) {
+            throw new IOException("Not a SmartScale archive: " + source);
+        }
+        return version;
+    }
+    
+    private static ByteBuffer readIndex(FileChannel channel, Path source) throws IOException {
+        ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+        readFully(channel, footer, channel.size() - FOOTER_SIZE);
+        long indexOffset = footer.getLong(0);
+        int blockCount = footer.getInt(8);
+        if (footer.getInt(12) != MAGIC) {
+            throw new IOException("Archive is truncated: " + source);
+        }
+        ByteBuffer index = ByteBuffer.allocate(blockCount * INDEX_ENTRY_SIZE);
+        readFully(channel, index, indexOffset);
+        return index;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of archive");
+            }
+        }
+        buffer.flip();
+    }
+
+    // Count, first timestamp, first centigrams, [first receive stamp,] bit length
+    private static int blockHeaderSize(boolean receiveStamps) {
+        return receiveStamps ? 32 : 24;
+    }
+    
+    private static void encodeBlock(DataLogger.Snapshot snapshot, int from, int to, boolean receiveStamps,
+            BitWriter bits) {
+        bits.reset();
+        long previousTimestamp = snapshot.getTimestamp(from);
+        long previousDelta = 0;
+        int previousCentigrams = snapshot.getCentigrams(from);
+        long previousReceive = snapshot.getReceiveNanos(from);
+        long previousReceiveDelta = 0;
+        for (int i = from + 1; i < to; i++) {
+            long timestamp = snapshot.getTimestamp(i);
+            long delta = timestamp - previousTimestamp;
+            writeDeltaOfDelta(bits, delta - previousDelta);
+            previousDelta = delta;
+            previousTimestamp = timestamp;
+
+            int centigrams = snapshot.getCentigrams(i);
+            writeWeightDelta(bits, (long) centigrams - previousCentigrams);
+            previousCentigrams = centigrams;
+            
+            if (receiveStamps) {
+                // Wraps around for NOT_RECEIVED, which decoding undoes the same way
+                long receive = snapshot.getReceiveNanos(i);
+                long receiveDelta = receive - previousReceive;
+                writeDeltaOfDelta(bits, receiveDelta - previousReceiveDelta);
+                previousReceiveDelta = receiveDelta;
+                previousReceive = receive;
+            }
+        }
+    }
+
+    private static int decodeBlock(int count, long firstTimestamp, int firstCentigrams, boolean receiveStamps,
+            long firstReceive, byte[] body, long from, long to, StampedSampleConsumer consumer) {
+        BitReader bits = new BitReader(body);
+        long timestamp = firstTimestamp;
+        long delta = 0;
+        int centigrams = firstCentigrams;
+        long receive = firstReceive;
+        long receiveDelta = 0;
+        int emitted = 0;
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                delta += readDeltaOfDelta(bits);
+                timestamp += delta;
+                centigrams += (int) readWeightDelta(bits);
+                if (receiveStamps) {
+                    receiveDelta += readDeltaOfDelta(bits);
+                    receive += receiveDelta;
+                }
+            }
+            if (timestamp >= from && timestamp < to) {
+                consumer.onSample(timestamp, centigrams, receive);
+                emitted++;
+            }
+        }
+        return emitted;
+    }
+
+    // Timestamp codes: 0 | 10+7 | 110+9 | 1110+12 | 11110+32 | 11111+64 bits (zigzag)
+    private static void writeDeltaOfDelta(BitWriter bits, long dod) {
+        // Compared unsigned: jumps to and from NOT_RECEIVED zigzag past Long.MAX_VALUE
+        long z = zigzag(dod);
+        if (z == 0) {
+            bits.write(0, 1);
+        } else if (z >>> 7 == 0) {
+            bits.write(0b10, 2);
+            bits.write(z, 7);
+        } else if (z >>> 9 == 0) {
+            bits.write(0b110, 3);
+            bits.write(z, 9);
+        } else if (z >>> 12 == 0) {
+            bits.write(0b1110, 4);
+            bits.write(z, 12);
+        } else if (z >>> 32 == 0) {
+            bits.write(0b11110, 5);
+            bits.write(z, 32);
+        } else {
+            bits.write(0b11111, 5);
+            bits.write(z, 64);
+        }
+    }
+
+    private static long readDeltaOfDelta(BitReader bits) {
+        if (bits.read(1) == 0) {
+            return 0;
+        }
+        if (bits.read(1) == 0) {
+            return unzigzag(bits.read(7));
+        }
+        if (bits.read(1) == 0) {
+            return unzigzag(bits.read(9));
+        }
+        if (bits.read(1) == 0) {
+            return unzigzag(bits.read(12));
+        }
+        if (bits.read(1) == 0) {
+            return unzigzag(bits.read(32));
+        }
+        return unzigzag(bits.read(64));
+    }
+
+    // Weight codes: 0 (unchanged) | 10+6 | 110+12 | 111+33 bits (zigzag delta)
+    private static void writeWeightDelta(BitWriter bits, long delta) {
+        long z = zigzag(delta);
+        if (z == 0) {
+            bits.write(0, 1);
+        } else if (z < (1L << 6)) {
+            bits.write(0b10, 2);
+            bits.write(z, 6);
+        } else if (z < (1L << 12)) {
+            bits.write(0b110, 3);
+            bits.write(z, 12);
+        } else {
+            bits.write(0b111, 3);
+            bits.write(z, 33);
+        }
+    }
+
+    private static long readWeightDelta(BitReader bits) {
+        if (bits.read(1) == 0) {
+            return 0;
+        }
+        if (bits.read(1) == 0) {
+            return unzigzag(bits.read(6));
+        }
+        if (bits.read(1) == 0) {
+            return unzigzag(bits.read(12));
+        }
+        return unzigzag(bits.read(33));
+    }
+
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unzigzag(long z) {
+        return (z >>> 1) ^ -(z & 1);
+    }
+
+    /**
+     * MSB-first bit sink backed by a growable byte array
+     */
+    private static final class BitWriter {
+        private byte[] bytes = new byte[1 << 12];
+        private long bitLength = 0;
+
+        void reset() {
+            Arrays.fill(bytes, 0, byteLength(), (byte) 0);
+            bitLength = 0;
+        }
+
+        void write(long value, int width) {
+            for (int i = width - 1; i >= 0; i--) {
+                int byteIndex = (int) (bitLength >>> 3);
+                if (byteIndex == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                }
+                if (((value >>> i) & 1) != 0) {
+                    bytes[byteIndex] |= (byte) (0x80 >>> (bitLength & 7));
+                }
+                bitLength++;
+            }
+        }
+
+        long bitLength() {
+            return bitLength;
+        }
+
+        int byteLength() {
+            return (int) ((bitLength + 7) >>> 3);
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.write(bytes, 0, byteLength());
+        }
+    }
+
+    /**
+     * MSB-first bit source over a byte array
+     */
+    private static final class BitReader {
+        private final byte[] bytes;
+        private long position = 0;
+
+        BitReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long read(int width) {
+            long value = 0;
+            for (int i = 0; i < width; i++) {
+                int bit = (bytes[(int) (position >>> 3)] >>> (7 - (position & 7))) & 1;
+                value = (value << 1) | bit;
+                position++;
+            }
+            return value;
+        }
+    }
+}
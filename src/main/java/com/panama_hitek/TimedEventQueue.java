@@ -0,0 +1,31 @@
+package com.panama_hitek;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+
+/**
+ * Event queue that records how long every EDT event takes to dispatch, so
+ * work that stalls the UI shows up in the EDT dispatch-time metrics.
+ */
+public class TimedEventQueue extends EventQueue {
+
+    private final PipelineMetrics metrics = Metrics.pipeline();
+
+    /**
+     * Replace the system event queue with a timed one
+     */
+    public static void install() {
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(new TimedEventQueue());
+    }
+
+    @Override
+    protected void dispatchEvent(AWTEvent event) {
+        long start = System.nanoTime();
+        try {
+            super.dispatchEvent(event);
+        } finally {
+            metrics.recordEdtDispatch(System.nanoTime() - start);
+        }
+    }
+}
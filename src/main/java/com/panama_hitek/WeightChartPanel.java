@@ -6,32 +6,76 @@ import org.jfree.chart.ChartPanel;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.DateAxis;
 import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.event.AxisChangeEvent;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
-import org.jfree.data.time.Millisecond;
-import org.jfree.data.time.TimeSeries;
-import org.jfree.data.time.TimeSeriesCollection;
+import org.jfree.chart.title.TextTitle;
 import java.awt.BorderLayout;
 import java.awt.Color;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 
 /**
  * A JPanel that displays a real-time chart of weight measurements over time.
+ *
+ * Points are kept in a fixed-capacity ring; adding one costs no chart events.
+ * A frame timer publishes whatever arrived since the last frame with a single
+ * change event, so the chart repaints at most FRAME_MILLIS apart and only when
+ * something changed.
+ *
+ * When linked to a DataLogger, the full history is drawn as a second series
+ * decimated to about one point per pixel. It is recomputed from the store
+ * when the user zooms or pans, and bulk-loaded with a single change event.
+ * Long ranges are read from the logger's rollup pyramid rather than the raw
+ * samples. The history is computed by a background worker, since the raw
+ * samples of a range may have been spilled to disk; the EDT only swaps in the
+ * result. A subtitle shows the logger's running statistics.
  */
 public class WeightChartPanel extends JPanel {
     
-    private TimeSeries series;
-    private TimeSeriesCollection dataset;
+    private static final int FRAME_MILLIS = 33; // ~30 Hz
+    
+    // Maximum number of points shown, and optional time span in milliseconds (0 = unlimited)
+    private static final int DEFAULT_MAX_POINTS = Integer.getInteger("smartscale.chartPoints", 100);
+    private static final long DEFAULT_WINDOW_MILLIS = Long.getLong("smartscale.chartWindowMs", 0L);
+    
+    // How long zoom and pan events are coalesced before the history is decimated again
+    private static final int DECIMATION_DELAY_MILLIS = 100;
+    // How often the full-range history follows new data while the chart auto-ranges
+    private static final long HISTORY_REFRESH_MILLIS = 1000;
+    // How often the statistics subtitle is updated while samples arrive
+    private static final long STATS_REFRESH_MILLIS = 250;
+    private static final Decimator.Mode DECIMATION_MODE =
+            "minmax".equalsIgnoreCase(System.getProperty("smartscale.chartDecimation"))
+                    ? Decimator.Mode.MIN_MAX : Decimator.Mode.LTTB;
+    
+    private RingXYDataset dataset;
+    private final HistoryXYDataset history = new HistoryXYDataset("History");
     private JFreeChart chart;
-    private int maxDataPoints = 100; // Maximum number of data points to prevent memory issues
+    private final TextTitle statsTitle = new TextTitle("");
+    private final ChartPanel chartPanel;
+    private final Timer frameTimer;
+    private final Timer decimationTimer;
+    
+    private DataLogger dataLogger;
+    private boolean historyZoomed = false;
+    private long historyLoadedAt = 0;
+    private int historyLoadedSize = -1;
+    private long statsShownAt = 0;
+    private int statsShownSize = -1;
+    // At most one history load runs; requests made meanwhile start one more afterwards
+    private SwingWorker<HistoryPoints, Void> historyWorker;
+    private boolean historyReloadRequested = false;
     
     public WeightChartPanel() {
         super(new BorderLayout());
         
         // Create dataset
-        series = new TimeSeries("Weight");
-        dataset = new TimeSeriesCollection(series);
+        dataset = new RingXYDataset("Weight", DEFAULT_MAX_POINTS);
+        dataset.setTimeWindow(DEFAULT_WINDOW_MILLIS);
         
         // Create chart
         chart = ChartFactory.createTimeSeriesChart(
@@ -44,6 +88,8 @@ public class WeightChartPanel extends JPanel {
                 false                 // urls
         );
         
+        chart.addSubtitle(statsTitle);
+        
         // Customize chart
         XYPlot plot = (XYPlot) chart.getPlot();
         plot.setBackgroundPaint(Color.WHITE);
@@ -57,35 +103,211 @@ public class WeightChartPanel extends JPanel {
         renderer.setSeriesLinesVisible(0, true);
         plot.setRenderer(renderer);
         
-        // Format the time axis
+        // Decimated history, drawn behind the live points
+        XYLineAndShapeRenderer historyRenderer = new XYLineAndShapeRenderer(true, false);
+        historyRenderer.setSeriesPaint(0, new Color(120, 150, 230));
+        historyRenderer.setSeriesVisibleInLegend(0, false);
+        plot.setDataset(1, history);
+        plot.setRenderer(1, historyRenderer);
+        
+        // Tick labels follow the tick size, down to HH:mm:ss.SSS when zoomed into a second
         DateAxis dateAxis = (DateAxis) plot.getDomainAxis();
-        dateAxis.setDateFormatOverride(new SimpleDateFormat("HH:mm:ss"));
         
         // Format the weight axis
         NumberAxis weightAxis = (NumberAxis) plot.getRangeAxis();
         weightAxis.setAutoRangeIncludesZero(false);
         
         // Add chart to panel
-        ChartPanel chartPanel = new ChartPanel(chart);
+        chartPanel = new ChartPanel(chart);
         chartPanel.setPreferredSize(new java.awt.Dimension(600, 270));
         chartPanel.setDomainZoomable(true);
         chartPanel.setRangeZoomable(true);
         
         add(chartPanel, BorderLayout.CENTER);
+        
+        frameTimer = new Timer(FRAME_MILLIS, e -> onFrame());
+        frameTimer.setCoalesce(true);
+        
+        decimationTimer = new Timer(DECIMATION_DELAY_MILLIS, e -> reloadHistory());
+        decimationTimer.setRepeats(false);
+        dateAxis.addChangeListener(this::onDomainAxisChanged);
+    }
+    
+    /**
+     * Draw the stored history behind the live points
+     * @param dataLogger Store to read the history from, null to show live points only
+     */
+    public void setDataLogger(DataLogger dataLogger) {
+        this.dataLogger = dataLogger;
+        statsShownSize = -1;
+        if (dataLogger == null) {
+            statsTitle.setText("");
+        }
+        reloadHistory();
+    }
+    
+    private void onFrame() {
+        dataset.flush();
+        // Keep the full-range history in step with the store while nothing is zoomed
+        if (dataLogger != null && !historyZoomed
+                && System.currentTimeMillis() - historyLoadedAt >= HISTORY_REFRESH_MILLIS
+                && dataLogger.size() != historyLoadedSize) {
+            reloadHistory();
+        }
+        if (dataLogger != null && System.currentTimeMillis() - statsShownAt >= STATS_REFRESH_MILLIS
+                && dataLogger.size() != statsShownSize) {
+            updateStatsTitle();
+        }
+    }
+    
+    private void updateStatsTitle() {
+        statsShownAt = System.currentTimeMillis();
+        statsShownSize = dataLogger.size();
+        RunningStats.Summary stats = dataLogger.getStatistics();
+        if (stats.getCount() == 0) {
+            statsTitle.setText("");
+            return;
+        }
+        statsTitle.setText(String.format("Last %d s: mean %.2f, min %.2f, max %.2f, sd %.2f"
+                + "    Session: %d samples, mean %.2f, min %.2f, max %.2f, sd %.2f",
+                stats.getWindowMillis() / 1000, stats.getWindowMean(), stats.getWindowMin(),
+                stats.getWindowMax(), stats.getWindowStdDev(), stats.getCount(), stats.getMean(),
+                stats.getMin(), stats.getMax(), stats.getStdDev()));
+    }
+    
+    private void onDomainAxisChanged(AxisChangeEvent event) {
+        DateAxis axis = (DateAxis) event.getAxis();
+        // Auto-range changes caused by new data need no work unless we are leaving a zoomed view
+        if (!axis.isAutoRange() || historyZoomed) {
+            decimationTimer.restart();
+        }
+    }
+    
+    /**
+     * Decimate the visible part of the stored history to the plot width in the
+     * background and replace the history series with it
+     */
+    private void reloadHistory() {
+        if (dataLogger == null) {
+            return;
+        }
+        if (historyWorker != null) {
+            historyReloadRequested = true;
+            return;
+        }
+        final DataLogger logger = dataLogger;
+        final DataLogger.Snapshot snapshot = logger.snapshot();
+        DateAxis axis = (DateAxis) ((XYPlot) chart.getPlot()).getDomainAxis();
+        historyZoomed = !axis.isAutoRange();
+        final boolean zoomed = historyZoomed;
+        final long lower = (long) Math.floor(axis.getLowerBound());
+        final long upper = (long) Math.ceil(axis.getUpperBound());
+        Rectangle2D dataArea = chartPanel.getScreenDataArea();
+        final int pixels = dataArea.getWidth() > 0 ? (int) dataArea.getWidth() : Math.max(getWidth(), 600);
+        // Counted from the request, so the frame timer does not queue loads while this one runs
+        historyLoadedAt = System.currentTimeMillis();
+        historyLoadedSize = snapshot.size();
+        
+        historyWorker = new SwingWorker<HistoryPoints, Void>() {
+            @Override
+            protected HistoryPoints doInBackground() {
+                return HistoryPoints.load(logger, snapshot, zoomed, lower, upper, pixels);
+            }
+            
+            @Override
+            protected void done() {
+                historyWorker = null;
+                try {
+                    HistoryPoints points = get();
+                    if (logger == dataLogger) {
+                        history.setPoints(points.x, points.y, points.count);
+                    }
+                } catch (InterruptedException | ExecutionException e) {
+                    System.out.println("Cannot load the chart history: " + e.getMessage());
+                }
+                if (historyReloadRequested) {
+                    historyReloadRequested = false;
+                    reloadHistory();
+                }
+            }
+        };
+        historyWorker.execute();
+    }
+    
+    // Decimated history of one load, built off the EDT
+    private static final class HistoryPoints implements RollupPyramid.BucketConsumer {
+        double[] x;
+        double[] y;
+        int count = 0;
+        
+        private HistoryPoints(int capacity) {
+            x = new double[capacity];
+            y = new double[capacity];
+        }
+        
+        static HistoryPoints load(DataLogger dataLogger, DataLogger.Snapshot snapshot, boolean zoomed,
+                long lower, long upper, int pixels) {
+            int from = 0;
+            int to = snapshot.size();
+            if (zoomed) {
+                // One extra point on each side keeps the line running to the plot edges
+                from = Math.max(0, snapshot.indexOf(lower) - 1);
+                to = Math.min(snapshot.size(), snapshot.indexOf(upper + 1) + 1);
+            }
+            HistoryPoints points = new HistoryPoints(Decimator.maxOutput(DECIMATION_MODE, pixels));
+            
+            // Long ranges are drawn from the rollup pyramid: one min/max pair per bucket
+            // instead of a pass over every sample
+            long bucketMillis = 0;
+            if (to - from > pixels * 2) {
+                long first = snapshot.getTimestamp(from);
+                long last = snapshot.getTimestamp(to - 1);
+                bucketMillis = dataLogger.readRollups((last - first) / pixels, first, last + 1, points);
+            }
+            if (bucketMillis == 0) {
+                points.count = Decimator.decimate(DECIMATION_MODE, snapshot, from, to, pixels, points.x, points.y);
+            }
+            return points;
+        }
+        
+        // Keeps the extremes of every bucket in time order
+        @Override
+        public void onBucket(long start, long minTimestamp, int minCentigrams, long maxTimestamp, int maxCentigrams,
+                double meanCentigrams, int samples, int lastCentigrams) {
+            if (count + 2 > x.length) {
+                x = Arrays.copyOf(x, x.length * 2);
+                y = Arrays.copyOf(y, y.length * 2);
+            }
+            boolean minFirst = minTimestamp <= maxTimestamp;
+            x[count] = minFirst ? minTimestamp : maxTimestamp;
+            y[count++] = (minFirst ? minCentigrams : maxCentigrams) / 100.0;
+            if (minTimestamp != maxTimestamp) {
+                x[count] = minFirst ? maxTimestamp : minTimestamp;
+                y[count++] = (minFirst ? maxCentigrams : minCentigrams) / 100.0;
+            }
+        }
+    }
+    
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        frameTimer.start();
+    }
+    
+    @Override
+    public void removeNotify() {
+        frameTimer.stop();
+        super.removeNotify();
     }
     
     /**
-     * Add a new data point to the chart
+     * Add a new data point to the chart. Safe to call from any thread; the
+     * point is drawn with the next frame.
      * @param timestamp The timestamp in milliseconds
      * @param weight The weight measurement
      */
     public void addDataPoint(long timestamp, double weight) {
-        series.addOrUpdate(new Millisecond(new Date(timestamp)), weight);
-        
-        // Limit the number of points to prevent memory issues
-        while (series.getItemCount() > maxDataPoints) {
-            series.delete(0, 0);
-        }
+        dataset.append(timestamp, weight);
     }
     
     /**
@@ -101,13 +323,21 @@ public class WeightChartPanel extends JPanel {
      * @param max Maximum number of data points
      */
     public void setMaxDataPoints(int max) {
-        this.maxDataPoints = max;
+        dataset.setCapacity(max);
+    }
+    
+    /**
+     * Only display points within this span of the newest one
+     * @param millis Window length in milliseconds, 0 to show up to the maximum number of points
+     */
+    public void setTimeWindow(long millis) {
+        dataset.setTimeWindow(millis);
     }
     
     /**
      * Clear all data points from the chart
      */
     public void clearChart() {
-        series.clear();
+        dataset.clear();
     }
 }
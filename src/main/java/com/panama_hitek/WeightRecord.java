@@ -1,65 +1,111 @@
 package com.panama_hitek;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 
 /**
- * Class representing a weight measurement record
+ * Class representing a weight measurement record.
+ *
+ * Records are lightweight views over the DataLogger columns: they only hold the
+ * epoch timestamp and the weight in centigrams. The date and time strings are
+ * formatted on demand for display and export.
  */
 public class WeightRecord {
-    private final String date;
-    private final String time;
-    private final double weight;
-    
+
+    public static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    public static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss.SSS");
+
+    private final long timestamp;
+    private final int centigrams;
+
     /**
      * Create a new weight record
-     * @param date Date string in format yyyy-MM-dd
-     * @param time Time string in format HH:mm:ss
-     * @param weight Weight measurement
+     * @param timestamp Timestamp in milliseconds since epoch
+     * @param centigrams Weight in hundredths of a gram
      */
-    public WeightRecord(String date, String time, double weight) {
-        this.date = date;
-        this.time = time;
-        this.weight = weight;
+    public WeightRecord(long timestamp, int centigrams) {
+        this.timestamp = timestamp;
+        this.centigrams = centigrams;
     }
-    
+
     /**
      * Get the date string
      * @return Date in format yyyy-MM-dd
      */
     public String getDate() {
-        return date;
+        return formatDate(timestamp);
     }
-    
+
     /**
      * Get the time string
-     * @return Time in format HH:mm:ss
+     * @return Time in format HH:mm:ss.SSS
      */
     public String getTime() {
-        return time;
+        return formatTime(timestamp);
     }
-    
+
     /**
      * Get the weight value
      * @return Weight measurement
      */
     public double getWeight() {
-        return weight;
+        return centigrams / 100.0;
     }
-    
+
+    /**
+     * Get the weight at the scale's native resolution
+     * @return Weight in hundredths of a gram
+     */
+    public int getCentigrams() {
+        return centigrams;
+    }
+
     /**
      * Get timestamp in milliseconds
      * @return Timestamp in milliseconds since epoch
      */
     public long getTimestampInMillis() {
-        try {
-            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-            Date dateObj = format.parse(date + " " + time);
-            return dateObj.getTime();
-        } catch (ParseException e) {
-            // If parsing fails, return current time
-            return System.currentTimeMillis();
+        return timestamp;
+    }
+
+    // For CSV formatting
+    @Override
+    public String toString() {
+        return getDate() + "," + getTime() + "," + formatWeight(centigrams);
+    }
+
+    /**
+     * @param timestamp Timestamp in milliseconds since epoch
+     * @return Local date in format yyyy-MM-dd
+     */
+    public static String formatDate(long timestamp) {
+        return DATE_FORMAT.format(Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()));
+    }
+
+    /**
+     * @param timestamp Timestamp in milliseconds since epoch
+     * @return Local time in format HH:mm:ss.SSS
+     */
+    public static String formatTime(long timestamp) {
+        return TIME_FORMAT.format(Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()));
+    }
+
+    /**
+     * @param centigrams Weight in hundredths of a gram
+     * @return Weight with two decimals, e.g. 17.23
+     */
+    public static String formatWeight(int centigrams) {
+        StringBuilder sb = new StringBuilder(8);
+        int abs = Math.abs(centigrams);
+        if (centigrams < 0) {
+            sb.append('-');
+        }
+        sb.append(abs / 100).append('.');
+        int fraction = abs % 100;
+        if (fraction < 10) {
+            sb.append('0');
         }
+        return sb.append(fraction).toString();
     }
 }
@@ -2,10 +2,18 @@
 import asyncio
 import sys
 import json
+import struct
 import time
 from bleak import BleakScanner
 
-def parse_smartchef_payload(data: bytes):
+# Binary frame: A5 5A | type | body length | body
+# Sample body: receive timestamp (int64 ms, big-endian) + raw manufacturer payload
+# Device sample body: 6-byte device address + sample body
+FRAME_SYNC = b"\xa5\x5a"
+FRAME_SAMPLE = 0x01
+FRAME_DEVICE_SAMPLE = 0x02
+
+def parse_smartchef_payload(data: bytes, address=None):
     try:
         if len(data) < 6:
             return {"error": "Payload too short"}
@@ -16,23 +24,47 @@ def parse_smartchef_payload(data: bytes):
         weight_raw = b04 * 256 + b05
         weight = weight_raw / 100.0  # Convert to grams
 
-        return {
-            "timestamp": int(time.time()),
+        parsed = {
+            "timestamp": round(time.time(), 3),
             "weight": round(weight, 2),
             "raw": data.hex()
         }
+        if address is not None:
+            parsed["address"] = address
+        return parsed
     except Exception as e:
         return {
-            "timestamp": int(time.time()),
+            "timestamp": round(time.time(), 3),
             "error": f"Parse failed: {str(e)}"
         }
 
-async def scan_for_smartchef(target_addr):
+def write_frame(out, payload: bytes, address=None):
+    # Decoding and checksum validation happen on the Java side
+    body = struct.pack(">q", int(time.time() * 1000)) + payload
+    frame_type = FRAME_SAMPLE
+    if address is not None:
+        body = bytes.fromhex(address.replace(":", "").replace("-", "")) + body
+        frame_type = FRAME_DEVICE_SAMPLE
+    out.write(FRAME_SYNC + bytes((frame_type, len(body))) + body)
+    out.flush()
+
+async def scan_for_smartchef(target_addrs, binary=False):
+    # One scanner serves every target; samples are tagged with their address
+    # when more than one scale is followed
+    out = sys.stdout.buffer
+    targets = {addr.upper() for addr in target_addrs}
+    tagged = len(targets) > 1
+
     def detection_callback(device, adv_data):
-        if device.address.upper() == target_addr.upper():
+        address = device.address.upper()
+        if address in targets:
+            tag = address if tagged else None
             for _, payload in adv_data.manufacturer_data.items():
-                parsed = parse_smartchef_payload(payload)
-                print(json.dumps(parsed))
+                if binary:
+                    write_frame(out, payload, tag)
+                else:
+                    parsed = parse_smartchef_payload(payload, tag)
+                    print(json.dumps(parsed))
 
     scanner = BleakScanner(detection_callback)
     await scanner.start()
@@ -46,5 +78,6 @@ if __name__ == "__main__":
     if len(sys.argv) < 2:
         sys.exit(1)
 
-    target_mac = sys.argv[1]
-    asyncio.run(scan_for_smartchef(target_mac))
+    target_macs = [arg for arg in sys.argv[1:] if not arg.startswith("--")]
+    binary_mode = "--binary" in sys.argv[1:]
+    asyncio.run(scan_for_smartchef(target_macs, binary_mode))
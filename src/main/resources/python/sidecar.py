@@ -0,0 +1,133 @@
+# sidecar.py
+#
+# Long-lived BLE helper started once by the Java application. A single
+# BleakScanner runs for the whole session; the application drives it with
+# one command per line on stdin:
+#
+#   ping                       -> {"reply": "pong"}
+#   scan [timeout]             -> {"reply": "scan", "found": ..., "devices": [...]}
+#   subscribe <MAC> [<MAC>...] -> {"reply": "subscribed", "addresses": [...]}
+#   unsubscribe [<MAC>...]     -> {"reply": "unsubscribed", "addresses": [...]}
+#   quit
+#
+# Samples of subscribed scales are written to stdout exactly like
+# retrieve_data.py does, always tagged with the device address. Replies are
+# written in command order as "#" + JSON lines, or with --binary as one or more
+# type 0x03 frames carrying the JSON text and a terminating newline.
+import asyncio
+import json
+import sys
+import time
+import warnings
+
+from bleak import BleakScanner
+
+from retrieve_data import FRAME_SYNC, parse_smartchef_payload, write_frame
+
+warnings.filterwarnings("ignore", category=FutureWarning)
+
+TARGET_NAME = "SC02"
+SCAN_TIMEOUT = 5.0
+# Devices seen this recently are reported without waiting
+SEEN_WINDOW = 10.0
+# After the first new device appears, wait this long for more
+SCAN_GRACE = 1.0
+FRAME_CONTROL = 0x03
+MAX_FRAME_BODY = 255
+
+
+class Sidecar:
+    def __init__(self, binary):
+        self.binary = binary
+        self.out = sys.stdout.buffer
+        self.targets = set()
+        self.seen = {}  # address -> (name, rssi, last seen)
+
+    def detection_callback(self, device, adv_data):
+        address = device.address.upper()
+        name = device.name or adv_data.local_name
+        if name:
+            self.seen[address] = (name, adv_data.rssi, time.monotonic())
+        if address in self.targets:
+            for _, payload in adv_data.manufacturer_data.items():
+                if self.binary:
+                    write_frame(self.out, payload, address)
+                else:
+                    parsed = parse_smartchef_payload(payload, address)
+                    self.out.write((json.dumps(parsed) + "\n").encode("utf-8"))
+                    self.out.flush()
+
+    def reply(self, message):
+        text = (json.dumps(message) + "\n").encode("utf-8")
+        if self.binary:
+            for i in range(0, len(text), MAX_FRAME_BODY):
+                chunk = text[i:i + MAX_FRAME_BODY]
+                self.out.write(FRAME_SYNC + bytes((FRAME_CONTROL, len(chunk))) + chunk)
+        else:
+            self.out.write(b"#" + text)
+        self.out.flush()
+
+    def matching_devices(self, since):
+        return [
+            {"address": address, "name": name, "rssi": rssi}
+            for address, (name, rssi, seen_at) in self.seen.items()
+            if seen_at >= since and (TARGET_NAME is None or name == TARGET_NAME)
+        ]
+
+    async def scan(self, timeout):
+        # The scanner is already warm: answer from what it has seen recently,
+        # otherwise wait for the first scale plus a short grace period
+        start = time.monotonic()
+        devices = self.matching_devices(start - SEEN_WINDOW)
+        deadline = start + timeout
+        while not devices and time.monotonic() < deadline:
+            await asyncio.sleep(0.1)
+            if self.matching_devices(start - SEEN_WINDOW):
+                deadline = min(deadline, time.monotonic() + SCAN_GRACE)
+                while time.monotonic() < deadline:
+                    await asyncio.sleep(0.1)
+                devices = self.matching_devices(start - SEEN_WINDOW)
+        return {"reply": "scan", "found": bool(devices), "devices": devices}
+
+    async def handle(self, line):
+        parts = line.split()
+        if not parts:
+            return True
+        command, args = parts[0].lower(), parts[1:]
+        if command == "ping":
+            self.reply({"reply": "pong"})
+        elif command == "scan":
+            timeout = float(args[0]) if args else SCAN_TIMEOUT
+            self.reply(await self.scan(timeout))
+        elif command == "subscribe":
+            self.targets.update(a.upper() for a in args)
+            self.reply({"reply": "subscribed", "addresses": sorted(self.targets)})
+        elif command == "unsubscribe":
+            if args:
+                self.targets.difference_update(a.upper() for a in args)
+            else:
+                self.targets.clear()
+            self.reply({"reply": "unsubscribed", "addresses": sorted(self.targets)})
+        elif command == "quit":
+            return False
+        else:
+            self.reply({"reply": "error", "error": "Unknown command: " + command})
+        return True
+
+    async def run(self):
+        scanner = BleakScanner(self.detection_callback)
+        await scanner.start()
+        loop = asyncio.get_running_loop()
+        try:
+            while True:
+                line = await loop.run_in_executor(None, sys.stdin.readline)
+                if not line:
+                    break  # The application went away
+                if not await self.handle(line):
+                    break
+        finally:
+            await scanner.stop()
+
+
+if __name__ == "__main__":
+    asyncio.run(Sidecar("--binary" in sys.argv[1:]).run())